@@ -0,0 +1,143 @@
+package com.logomaker.app.editor.views;
+
+import static org.junit.Assert.assertTrue;
+
+import android.app.Instrumentation;
+import android.content.Context;
+import android.content.Intent;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.MotionEvent;
+import android.view.View;
+
+import androidx.test.core.app.ActivityScenario;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.logomaker.app.R;
+import com.logomaker.app.editor.LogoEditorActivity;
+import com.logomaker.app.model.Logo;
+import com.logomaker.app.model.ShapeElement;
+import com.logomaker.app.model.TextElement;
+import com.logomaker.app.util.DataManager;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Drags an element across a heavy logo in both editor canvas modes and
+ * reports the input latency of each. Run it on a device and read the
+ * results from logcat under the tag EditorCanvasLatency.
+ */
+@RunWith(AndroidJUnit4.class)
+public class EditorCanvasLatencyTest {
+
+    private static final String TAG = "EditorCanvasLatency";
+    private static final int SIZE = 500;
+    private static final int ELEMENT_COUNT = 300;
+    private static final int DRAG_STEPS = 200;
+    private static final long STEP_MILLIS = 4;
+    private static final long SETTLE_MILLIS = 500;
+
+    // Where the dragged element starts, in logo coordinates
+    private static final float DRAG_START = 100;
+
+    @Test
+    public void compareDragLatency() {
+        String mainThread = measureDrag(false);
+        String renderThread = measureDrag(true);
+
+        Log.i(TAG, "Main thread canvas: " + mainThread);
+        Log.i(TAG, "Render thread canvas: " + renderThread);
+    }
+
+    /**
+     * Open the editor in one canvas mode and drag the top element
+     * @param renderThread True to draw on a render thread
+     * @return The measured latency
+     */
+    private String measureDrag(boolean renderThread) {
+        Instrumentation instrumentation = InstrumentationRegistry.getInstrumentation();
+        Context context = instrumentation.getTargetContext();
+        DataManager dataManager = DataManager.getInstance(context);
+        boolean previousMode = dataManager.isRenderThreadEnabled();
+        dataManager.setRenderThreadEnabled(renderThread);
+
+        Intent intent = new Intent(context, LogoEditorActivity.class);
+        intent.putExtra(LogoEditorActivity.EXTRA_LOGO, createHeavyLogo());
+        try (ActivityScenario<LogoEditorActivity> scenario = ActivityScenario.launch(intent)) {
+            instrumentation.waitForIdleSync();
+
+            View[] canvasView = new View[1];
+            int[] location = new int[2];
+            scenario.onActivity(activity -> {
+                canvasView[0] = activity.findViewById(R.id.logoCanvas);
+                canvasView[0].getLocationOnScreen(location);
+            });
+            assertTrue("Canvas mode", (canvasView[0] instanceof LogoSurfaceView) == renderThread);
+            InputLatencyTracker latency = ((EditorCanvas) canvasView[0]).getInputLatency();
+            latency.reset();
+
+            // Send moves faster than frames are drawn, as a quick drag does
+            float x = location[0] + DRAG_START;
+            float y = location[1] + DRAG_START;
+            long downTime = SystemClock.uptimeMillis();
+            sendPointer(instrumentation, downTime, MotionEvent.ACTION_DOWN, x, y);
+            for (int i = 1; i <= DRAG_STEPS; i++) {
+                SystemClock.sleep(STEP_MILLIS);
+                sendPointer(instrumentation, downTime, MotionEvent.ACTION_MOVE, x + i, y + i);
+            }
+            sendPointer(instrumentation, downTime, MotionEvent.ACTION_UP, x + DRAG_STEPS, y + DRAG_STEPS);
+
+            // Let the last frames reach the display
+            instrumentation.waitForIdleSync();
+            SystemClock.sleep(SETTLE_MILLIS);
+
+            assertTrue("Frames drawn during the drag", latency.getSampleCount() > 0);
+            return latency.toString();
+        } finally {
+            dataManager.setRenderThreadEnabled(previousMode);
+        }
+    }
+
+    private static void sendPointer(Instrumentation instrumentation, long downTime, int action,
+                                    float x, float y) {
+        MotionEvent event = MotionEvent.obtain(downTime, SystemClock.uptimeMillis(), action, x, y, 0);
+        try {
+            instrumentation.sendPointerSync(event);
+        } finally {
+            event.recycle();
+        }
+    }
+
+    /**
+     * Build a logo that is slow to draw, with the element to drag on top
+     */
+    private static Logo createHeavyLogo() {
+        Logo logo = new Logo(SIZE, SIZE);
+        for (int i = 0; i < ELEMENT_COUNT; i++) {
+            float x = (i * 37) % SIZE;
+            float y = (i * 53) % SIZE;
+            if (i % 2 == 0) {
+                TextElement text = new TextElement();
+                text.setText("Logo " + i);
+                text.setUnderlined(true);
+                text.setPosition(x, y);
+                text.setRotation(i % 360);
+                logo.addElement(text);
+            } else {
+                ShapeElement star = new ShapeElement(ShapeElement.SHAPE_STAR);
+                star.setPosition(x, y);
+                star.setSize(80, 80);
+                star.setHasStroke(true);
+                logo.addElement(star);
+            }
+        }
+
+        ShapeElement dragged = new ShapeElement(ShapeElement.SHAPE_RECTANGLE);
+        dragged.setPosition(DRAG_START, DRAG_START);
+        dragged.setSize(60, 60);
+        logo.addElement(dragged);
+        return logo;
+    }
+}
@@ -0,0 +1,91 @@
+package com.logomaker.app.editor.views;
+
+import static org.junit.Assert.assertEquals;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.os.Debug;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.logomaker.app.model.ImageElement;
+import com.logomaker.app.model.Logo;
+import com.logomaker.app.model.ShapeElement;
+import com.logomaker.app.model.TextElement;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Checks that drawing the editor canvas allocates nothing once its caches are warm
+ */
+@RunWith(AndroidJUnit4.class)
+public class LogoCanvasViewAllocationTest {
+
+    private static final int SIZE = 500;
+    private static final int WARMUP_FRAMES = 5;
+    private static final int MEASURED_FRAMES = 20;
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void steadyStateFramesDoNotAllocate() {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(() -> {
+            Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+            LogoCanvasView view = new LogoCanvasView(context);
+            Logo logo = createLogo();
+            view.setLogo(logo);
+            view.setSelectedElement(logo.getElements().get(0));
+            view.measure(SIZE, SIZE);
+            view.layout(0, 0, SIZE, SIZE);
+
+            Bitmap frame = Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888);
+            Canvas canvas = new Canvas(frame);
+            for (int i = 0; i < WARMUP_FRAMES; i++) {
+                view.onDraw(canvas);
+            }
+
+            Debug.resetThreadAllocCount();
+            Debug.startAllocCounting();
+            try {
+                for (int i = 0; i < MEASURED_FRAMES; i++) {
+                    view.onDraw(canvas);
+                }
+            } finally {
+                Debug.stopAllocCounting();
+            }
+            int allocations = Debug.getThreadAllocCount();
+            frame.recycle();
+
+            assertEquals("Objects allocated in " + MEASURED_FRAMES + " frames", 0, allocations);
+        });
+    }
+
+    private static Logo createLogo() {
+        Logo logo = new Logo(SIZE, SIZE);
+
+        TextElement text = new TextElement();
+        text.setText("Logo");
+        text.setUnderlined(true);
+        text.setPosition(250, 100);
+        text.setRotation(15);
+        logo.addElement(text);
+
+        ShapeElement star = new ShapeElement(ShapeElement.SHAPE_STAR);
+        star.setPosition(100, 300);
+        star.setSize(120, 120);
+        star.setHasStroke(true);
+        logo.addElement(star);
+
+        Bitmap bitmap = Bitmap.createBitmap(64, 64, Bitmap.Config.ARGB_8888);
+        bitmap.eraseColor(Color.RED);
+        ImageElement image = new ImageElement(bitmap);
+        image.setPosition(350, 350);
+        image.setSize(100, 100);
+        image.setHasFilter(true);
+        logo.addElement(image);
+        return logo;
+    }
+}
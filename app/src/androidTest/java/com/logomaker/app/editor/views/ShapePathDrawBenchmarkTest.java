@@ -0,0 +1,119 @@
+package com.logomaker.app.editor.views;
+
+import static org.junit.Assert.assertEquals;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.os.Debug;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import com.logomaker.app.model.ShapeElement;
+import com.logomaker.app.render.ShapePathCache;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Locale;
+
+/**
+ * Measures the cost and allocations of drawing a star with its outline
+ * taken from the element, looked up in {@link ShapePathCache}, and rebuilt
+ * on every draw as shapes did before the cache. Run it on a device and read
+ * the results from logcat under the tag ShapePathDrawBenchmark.
+ */
+@RunWith(AndroidJUnit4.class)
+public class ShapePathDrawBenchmarkTest {
+
+    private static final String TAG = "ShapePathDrawBenchmark";
+    private static final int SIZE = 200;
+    private static final int WARMUP_DRAWS = 200;
+    private static final int MEASURED_DRAWS = 5000;
+
+    @Test
+    public void compareCachedAndRebuiltOutlines() {
+        Bitmap frame = Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(frame);
+
+        ShapeElement star = new ShapeElement(ShapeElement.SHAPE_STAR);
+        star.setSize(SIZE, SIZE);
+        star.setHasStroke(true);
+
+        Paint fill = new Paint(Paint.ANTI_ALIAS_FLAG);
+        fill.setStyle(Paint.Style.FILL);
+        Paint stroke = new Paint(Paint.ANTI_ALIAS_FLAG);
+        stroke.setStyle(Paint.Style.STROKE);
+        stroke.setStrokeWidth(2);
+
+        try {
+            Result element = measure(() -> star.drawContent(canvas, 1));
+            Result lookup = measure(() -> drawPath(canvas,
+                    ShapePathCache.get(ShapeElement.SHAPE_STAR, 0, SIZE, SIZE), fill, stroke));
+            Result rebuilt = measure(() -> drawPath(canvas,
+                    buildPath(ShapePathCache.buildVertices(ShapeElement.SHAPE_STAR, 0, SIZE, SIZE)), fill, stroke));
+
+            Log.i(TAG, "Outline kept by the element: " + element);
+            Log.i(TAG, "Outline looked up in the shared cache: " + lookup);
+            Log.i(TAG, "Outline rebuilt on every draw: " + rebuilt);
+
+            assertEquals("Objects allocated by " + MEASURED_DRAWS + " element draws", 0, element.allocations);
+        } finally {
+            frame.recycle();
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private static Result measure(Runnable draw) {
+        for (int i = 0; i < WARMUP_DRAWS; i++) {
+            draw.run();
+        }
+
+        Debug.resetThreadAllocCount();
+        Debug.startAllocCounting();
+        long start = SystemClock.elapsedRealtimeNanos();
+        try {
+            for (int i = 0; i < MEASURED_DRAWS; i++) {
+                draw.run();
+            }
+        } finally {
+            Debug.stopAllocCounting();
+        }
+        long nanos = SystemClock.elapsedRealtimeNanos() - start;
+        return new Result(nanos / MEASURED_DRAWS, Debug.getThreadAllocCount());
+    }
+
+    private static void drawPath(Canvas canvas, Path path, Paint fill, Paint stroke) {
+        canvas.drawPath(path, fill);
+        canvas.drawPath(path, stroke);
+    }
+
+    private static Path buildPath(float[] points) {
+        Path path = new Path();
+        path.moveTo(points[0], points[1]);
+        for (int i = 2; i < points.length; i += 2) {
+            path.lineTo(points[i], points[i + 1]);
+        }
+        path.close();
+        return path;
+    }
+
+    private static final class Result {
+        final long nanosPerDraw;
+        final int allocations;
+
+        Result(long nanosPerDraw, int allocations) {
+            this.nanosPerDraw = nanosPerDraw;
+            this.allocations = allocations;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%.2f us per draw, %.2f objects per draw",
+                    nanosPerDraw / 1e3, (float) allocations / MEASURED_DRAWS);
+        }
+    }
+}
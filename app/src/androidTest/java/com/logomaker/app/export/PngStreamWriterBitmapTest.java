@@ -0,0 +1,162 @@
+package com.logomaker.app.export;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.LinearGradient;
+import android.graphics.Paint;
+import android.graphics.Shader;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Encodes the same bitmaps with {@link PngStreamWriter} and with
+ * Bitmap.compress, decodes both with BitmapFactory and compares every pixel
+ */
+@RunWith(AndroidJUnit4.class)
+public class PngStreamWriterBitmapTest {
+
+    private static final int WIDTH = 301;
+    private static final int HEIGHT = 203;
+
+    // Rows per writeRows call, so the image is written in several strips
+    private static final int STRIP_ROWS = 64;
+
+    @Test
+    public void opaqueImageMatchesBitmapCompress() throws Exception {
+        Bitmap source = createImage(false);
+        try {
+            assertPixelsMatch(source, 0);
+        } finally {
+            source.recycle();
+        }
+    }
+
+    @Test
+    public void translucentImageMatchesBitmapCompress() throws Exception {
+        Bitmap source = createImage(true);
+        try {
+            // Both encoders unpremultiply the pixels, which may round differently
+            assertPixelsMatch(source, 1);
+        } finally {
+            source.recycle();
+        }
+    }
+
+    private static void assertPixelsMatch(Bitmap source, int tolerance) throws Exception {
+        int[] streamed = decode(writeStreamed(source));
+        int[] compressed = decode(compress(source));
+        for (int i = 0; i < streamed.length; i++) {
+            int expected = compressed[i];
+            int actual = streamed[i];
+            for (int shift = 0; shift < 32; shift += 8) {
+                int difference = Math.abs((expected >>> shift & 0xff) - (actual >>> shift & 0xff));
+                assertTrue(String.format("Pixel (%d, %d): expected %08x, was %08x",
+                                i % WIDTH, i / WIDTH, expected, actual),
+                        difference <= tolerance);
+            }
+        }
+    }
+
+    private static byte[] writeStreamed(Bitmap source) throws Exception {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        File file = File.createTempFile("stream", ".png", context.getCacheDir());
+        try {
+            try (FileOutputStream out = new FileOutputStream(file);
+                 PngStreamWriter writer = new PngStreamWriter(out.getChannel(), WIDTH, HEIGHT)) {
+                for (int top = 0; top < HEIGHT; top += STRIP_ROWS) {
+                    int rows = Math.min(STRIP_ROWS, HEIGHT - top);
+                    Bitmap strip = Bitmap.createBitmap(source, 0, top, WIDTH, rows);
+                    try {
+                        writer.writeRows(strip, rows);
+                    } finally {
+                        strip.recycle();
+                    }
+                }
+                writer.finish();
+            }
+            return readFile(file);
+        } finally {
+            file.delete();
+        }
+    }
+
+    private static byte[] readFile(File file) throws IOException {
+        byte[] data = new byte[(int) file.length()];
+        try (FileInputStream in = new FileInputStream(file)) {
+            int offset = 0;
+            while (offset < data.length) {
+                int count = in.read(data, offset, data.length - offset);
+                if (count < 0) {
+                    throw new IOException("Unexpected end of " + file.getName());
+                }
+                offset += count;
+            }
+        }
+        return data;
+    }
+
+    private static byte[] compress(Bitmap source) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertTrue(source.compress(Bitmap.CompressFormat.PNG, 100, out));
+        return out.toByteArray();
+    }
+
+    private static int[] decode(byte[] png) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inPremultiplied = false;
+        Bitmap bitmap = BitmapFactory.decodeByteArray(png, 0, png.length, options);
+        assertNotNull("Decodable PNG", bitmap);
+        try {
+            assertEquals(WIDTH, bitmap.getWidth());
+            assertEquals(HEIGHT, bitmap.getHeight());
+            int[] pixels = new int[WIDTH * HEIGHT];
+            bitmap.getPixels(pixels, 0, WIDTH, 0, 0, WIDTH, HEIGHT);
+            return pixels;
+        } finally {
+            bitmap.recycle();
+        }
+    }
+
+    /**
+     * Draw gradients, shapes and text, as a rendered logo has
+     */
+    private static Bitmap createImage(boolean translucent) {
+        Bitmap bitmap = Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        if (!translucent) {
+            canvas.drawColor(Color.WHITE);
+        }
+
+        Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        paint.setShader(new LinearGradient(0, 0, WIDTH, HEIGHT,
+                translucent ? 0x20FF0000 : Color.RED, translucent ? 0xE00000FF : Color.BLUE,
+                Shader.TileMode.CLAMP));
+        canvas.drawCircle(WIDTH / 2f, HEIGHT / 2f, HEIGHT / 2f - 10, paint);
+
+        paint.setShader(null);
+        paint.setColor(translucent ? 0x8000C000 : Color.GREEN);
+        canvas.drawRect(20, 20, 120, 90, paint);
+
+        paint.setColor(translucent ? 0xC0000000 : Color.BLACK);
+        paint.setTextSize(36);
+        canvas.drawText("Logo", 150, 180, paint);
+        return bitmap;
+    }
+}
@@ -0,0 +1,204 @@
+package com.logomaker.app.util;
+
+import static org.junit.Assert.assertEquals;
+
+import android.content.Context;
+import android.os.Parcel;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.logomaker.app.model.Logo;
+import com.logomaker.app.model.ShapeElement;
+import com.logomaker.app.model.TextElement;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Compares saving and loading a logo library with {@link LogoStore} against
+ * writing it as one Parcel file, the way logos were serialized before. Run
+ * it on a device and read the results from logcat under the tag
+ * LogoStoreBenchmark.
+ */
+@RunWith(AndroidJUnit4.class)
+public class LogoStoreBenchmarkTest {
+
+    private static final String TAG = "LogoStoreBenchmark";
+    private static final int ELEMENTS_PER_LOGO = 6;
+
+    // Saves run from several threads, as the store shares one sync between concurrent saves
+    private static final int SAVE_THREADS = 4;
+
+    @Test
+    public void compareThousandLogos() throws Exception {
+        compare(1000);
+    }
+
+    @Test
+    public void compareTenThousandLogos() throws Exception {
+        compare(10000);
+    }
+
+    private void compare(int count) throws Exception {
+        Context context = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        File directory = new File(context.getCacheDir(), TAG);
+        deleteRecursively(directory);
+        directory.mkdirs();
+        try {
+            List<Logo> logos = createLogos(count);
+            Log.i(TAG, count + " logos, store: " + measureStore(new File(directory, "store"), logos));
+            Log.i(TAG, count + " logos, parcel: " + measureParcel(new File(directory, "logos.parcel"), logos));
+        } finally {
+            deleteRecursively(directory);
+        }
+    }
+
+    private static String measureStore(File directory, List<Logo> logos) throws Exception {
+        long saveStart = SystemClock.elapsedRealtimeNanos();
+        LogoStore store = new LogoStore(directory);
+        ExecutorService executor = Executors.newFixedThreadPool(SAVE_THREADS);
+        try {
+            List<Future<?>> saves = new ArrayList<>(logos.size());
+            for (Logo logo : logos) {
+                saves.add(executor.submit(() -> {
+                    store.save(logo);
+                    return null;
+                }));
+            }
+            for (Future<?> save : saves) {
+                save.get();
+            }
+        } finally {
+            executor.shutdown();
+            store.close();
+        }
+        long saveNanos = SystemClock.elapsedRealtimeNanos() - saveStart;
+        long size = sizeOf(directory);
+
+        long loadStart = SystemClock.elapsedRealtimeNanos();
+        LogoStore reopened = new LogoStore(directory);
+        List<Logo> loaded;
+        try {
+            loaded = reopened.loadAll();
+        } finally {
+            reopened.close();
+        }
+        long loadNanos = SystemClock.elapsedRealtimeNanos() - loadStart;
+
+        assertEquals("Logos loaded from the store", logos.size(), loaded.size());
+        assertEquals("Elements of a loaded logo", ELEMENTS_PER_LOGO, loaded.get(0).getElements().size());
+        return describe(logos.size(), saveNanos, loadNanos, size);
+    }
+
+    private static String measureParcel(File file, List<Logo> logos) throws IOException {
+        long saveStart = SystemClock.elapsedRealtimeNanos();
+        Parcel out = Parcel.obtain();
+        byte[] data;
+        try {
+            out.writeTypedList(logos);
+            data = out.marshall();
+        } finally {
+            out.recycle();
+        }
+        try (FileOutputStream stream = new FileOutputStream(file)) {
+            stream.write(data);
+            stream.getFD().sync();
+        }
+        long saveNanos = SystemClock.elapsedRealtimeNanos() - saveStart;
+
+        long loadStart = SystemClock.elapsedRealtimeNanos();
+        byte[] read = new byte[(int) file.length()];
+        try (FileInputStream stream = new FileInputStream(file)) {
+            int offset = 0;
+            while (offset < read.length) {
+                int count = stream.read(read, offset, read.length - offset);
+                if (count < 0) {
+                    throw new IOException("Unexpected end of " + file.getName());
+                }
+                offset += count;
+            }
+        }
+        Parcel in = Parcel.obtain();
+        List<Logo> loaded;
+        try {
+            in.unmarshall(read, 0, read.length);
+            in.setDataPosition(0);
+            loaded = in.createTypedArrayList(Logo.CREATOR);
+        } finally {
+            in.recycle();
+        }
+        long loadNanos = SystemClock.elapsedRealtimeNanos() - loadStart;
+
+        assertEquals("Logos loaded from the parcel", logos.size(), loaded.size());
+        return describe(logos.size(), saveNanos, loadNanos, file.length());
+    }
+
+    private static String describe(int count, long saveNanos, long loadNanos, long size) {
+        return String.format(Locale.US,
+                "save %d ms (%.0f logos/s), load %d ms (%.0f logos/s), %d bytes",
+                saveNanos / 1000000, count * 1e9 / saveNanos,
+                loadNanos / 1000000, count * 1e9 / loadNanos, size);
+    }
+
+    /**
+     * Build logos like the ones users make: a few lines of text and some shapes
+     */
+    private static List<Logo> createLogos(int count) {
+        List<Logo> logos = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Logo logo = new Logo(500, 500);
+            logo.setName("Logo " + i);
+            for (int j = 0; j < ELEMENTS_PER_LOGO; j++) {
+                if (j % 2 == 0) {
+                    TextElement text = new TextElement();
+                    text.setText("Brand " + i + " line " + j);
+                    text.setPosition(50 + j * 20, 100 + j * 40);
+                    logo.addElement(text);
+                } else {
+                    ShapeElement shape = new ShapeElement(j % 3 == 0 ? ShapeElement.SHAPE_STAR : ShapeElement.SHAPE_CIRCLE);
+                    shape.setPosition(250, 250);
+                    shape.setSize(100 + j, 100 + j);
+                    shape.setHasStroke(true);
+                    logo.addElement(shape);
+                }
+            }
+            logos.add(logo);
+        }
+        return logos;
+    }
+
+    private static long sizeOf(File directory) {
+        long size = 0;
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                size += file.length();
+            }
+        }
+        return size;
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
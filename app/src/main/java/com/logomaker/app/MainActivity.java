@@ -22,6 +22,7 @@ import com.logomaker.app.adapter.RecentDesignAdapter;
 import com.logomaker.app.adapter.TemplateAdapter;
 import com.logomaker.app.editor.LogoEditorActivity;
 import com.logomaker.app.model.Logo;
+import com.logomaker.app.model.LogoSummary;
 import com.logomaker.app.model.LogoTemplate;
 import com.logomaker.app.templates.TemplateSelectionActivity;
 import com.logomaker.app.util.DataManager;
@@ -36,9 +37,12 @@ public class MainActivity extends AppCompatActivity {
     private RecentDesignAdapter recentDesignAdapter;
     private TemplateAdapter templateAdapter;
     private ChipGroup chipGroupCategories;
-    private List<Logo> recentDesigns = new ArrayList<>();
+    private List<LogoSummary> recentDesigns = new ArrayList<>();
     private List<LogoTemplate> templates = new ArrayList<>();
     private DataManager dataManager;
+    
+    // Saves finish and thumbnails are written after the editor has closed
+    private final DataManager.OnLogosChangedListener logosChangedListener = this::loadRecentDesigns;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -61,6 +65,7 @@ public class MainActivity extends AppCompatActivity {
         
         // Set up recent designs recycler view
         setupRecentDesignsRecyclerView();
+        dataManager.addOnLogosChangedListener(logosChangedListener);
         
         // Set up templates recycler view
         setupTemplatesRecyclerView();
@@ -86,6 +91,12 @@ public class MainActivity extends AppCompatActivity {
         loadTemplates();
     }
 
+    @Override
+    protected void onDestroy() {
+        dataManager.removeOnLogosChangedListener(logosChangedListener);
+        super.onDestroy();
+    }
+
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         getMenuInflater().inflate(R.menu.menu_main, menu);
@@ -110,8 +121,8 @@ public class MainActivity extends AppCompatActivity {
         
         recentDesignAdapter = new RecentDesignAdapter(recentDesigns);
         recentDesignAdapter.setOnItemClickListener(position -> {
-            Logo logo = recentDesigns.get(position);
-            startLogoEditor(logo);
+            LogoSummary logo = recentDesigns.get(position);
+            openSavedLogo(logo.getId());
         });
         
         rvRecentDesigns.setAdapter(recentDesignAdapter);
@@ -210,4 +221,11 @@ public class MainActivity extends AppCompatActivity {
         
         startActivity(intent);
     }
+    
+    private void openSavedLogo(String logoId) {
+        // The editor loads the logo itself, so only the id is passed
+        Intent intent = new Intent(MainActivity.this, LogoEditorActivity.class);
+        intent.putExtra(LogoEditorActivity.EXTRA_LOGO_ID, logoId);
+        startActivity(intent);
+    }
 } 
\ No newline at end of file
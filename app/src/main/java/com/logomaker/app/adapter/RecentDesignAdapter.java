@@ -10,21 +10,21 @@ import androidx.annotation.NonNull;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.logomaker.app.R;
-import com.logomaker.app.model.Logo;
+import com.logomaker.app.model.LogoSummary;
 import com.logomaker.app.util.ImageUtil;
 
 import java.util.List;
 
 public class RecentDesignAdapter extends RecyclerView.Adapter<RecentDesignAdapter.ViewHolder> {
 
-    private final List<Logo> recentDesigns;
+    private final List<LogoSummary> recentDesigns;
     private OnItemClickListener listener;
 
     public interface OnItemClickListener {
         void onItemClick(int position);
     }
 
-    public RecentDesignAdapter(List<Logo> recentDesigns) {
+    public RecentDesignAdapter(List<LogoSummary> recentDesigns) {
         this.recentDesigns = recentDesigns;
     }
 
@@ -42,15 +42,15 @@ public class RecentDesignAdapter extends RecyclerView.Adapter<RecentDesignAdapte
 
     @Override
     public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
-        Logo logo = recentDesigns.get(position);
+        LogoSummary logo = recentDesigns.get(position);
         holder.tvDesignName.setText(logo.getName());
         
         // Load thumbnail
         if (logo.getThumbnailPath() != null) {
             ImageUtil.loadImageFromFile(holder.ivDesign, logo.getThumbnailPath());
         } else {
-            // If no thumbnail exists, render one
-            ImageUtil.loadBitmapIntoImageView(holder.ivDesign, logo.renderThumbnail(300));
+            // Rendering one would mean loading the whole logo
+            holder.ivDesign.setImageResource(R.drawable.placeholder_image);
         }
         
         // Set up click listeners
@@ -1,9 +1,13 @@
 package com.logomaker.app.editor;
 
+import android.content.Context;
 import android.content.Intent;
 import android.os.Bundle;
 import android.os.Parcel;
+import android.view.Menu;
 import android.view.MenuItem;
+import android.view.View;
+import android.view.ViewGroup;
 import android.widget.ImageButton;
 import android.widget.Toast;
 
@@ -11,6 +15,7 @@ import androidx.annotation.NonNull;
 import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.appcompat.widget.Toolbar;
+import androidx.core.content.ContextCompat;
 import androidx.viewpager2.widget.ViewPager2;
 
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
@@ -18,23 +23,29 @@ import com.google.android.material.tabs.TabLayout;
 import com.google.android.material.tabs.TabLayoutMediator;
 import com.logomaker.app.R;
 import com.logomaker.app.editor.adapter.EditorPagerAdapter;
+import com.logomaker.app.editor.views.EditorCanvas;
 import com.logomaker.app.editor.views.LogoCanvasView;
+import com.logomaker.app.editor.views.LogoSurfaceView;
 import com.logomaker.app.export.ExportOptionsActivity;
 import com.logomaker.app.model.Logo;
 import com.logomaker.app.model.LogoElement;
+import com.logomaker.app.model.LogoSummary;
 import com.logomaker.app.model.TextElement;
 import com.logomaker.app.util.DataManager;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
 public class LogoEditorActivity extends AppCompatActivity {
 
     public static final String EXTRA_LOGO = "extra_logo";
+    public static final String EXTRA_LOGO_ID = "extra_logo_id";
     
-    private LogoCanvasView logoCanvas;
+    private EditorCanvas logoCanvas;
     private TabLayout tabLayout;
     private ViewPager2 viewPager;
+    private TabLayoutMediator tabLayoutMediator;
     private FloatingActionButton fabExport;
     private ImageButton btnUndo, btnRedo, btnSave;
     
@@ -53,7 +64,6 @@ public class LogoEditorActivity extends AppCompatActivity {
         getSupportActionBar().setDisplayHomeAsUpEnabled(true);
         
         // Initialize views
-        logoCanvas = findViewById(R.id.logoCanvas);
         tabLayout = findViewById(R.id.tabLayout);
         viewPager = findViewById(R.id.viewPager);
         fabExport = findViewById(R.id.fabExport);
@@ -64,26 +74,12 @@ public class LogoEditorActivity extends AppCompatActivity {
         // Get data manager
         dataManager = DataManager.getInstance(this);
         
+        // The layout holds the main thread canvas, swap it if the render thread is chosen
+        useCanvas(dataManager.isRenderThreadEnabled());
+        
         // Set up undo/redo manager
         undoRedoManager = new UndoRedoManager();
         
-        // Load or create a logo
-        if (getIntent().hasExtra(EXTRA_LOGO)) {
-            logo = getIntent().getParcelableExtra(EXTRA_LOGO);
-        } else {
-            logo = new Logo();
-        }
-        
-        // Set up logo canvas
-        logoCanvas.setLogo(logo);
-        logoCanvas.setOnElementSelectedListener(element -> {
-            // Update UI based on selected element
-            updateElementPropertiesPanel(element);
-        });
-        
-        // Set up editor tabs
-        setupEditorTabs();
-        
         // Set up click listeners
         btnUndo.setOnClickListener(v -> performUndo());
         btnRedo.setOnClickListener(v -> performRedo());
@@ -92,10 +88,72 @@ public class LogoEditorActivity extends AppCompatActivity {
         
         // Update UI
         updateUndoRedoButtons();
+        
+        // Load or create a logo; a saved one is read in the background
+        if (getIntent().hasExtra(EXTRA_LOGO_ID)) {
+            setLogoControlsEnabled(false);
+            dataManager.loadLogo(getIntent().getStringExtra(EXTRA_LOGO_ID), loaded -> {
+                if (isDestroyed()) {
+                    return;
+                }
+                showLogo(loaded != null ? loaded : new Logo());
+            });
+        } else {
+            Logo initial = getIntent().getParcelableExtra(EXTRA_LOGO);
+            showLogo(initial != null ? initial : new Logo());
+        }
+    }
+    
+    /**
+     * Start editing a logo once it is available
+     */
+    private void showLogo(Logo logo) {
+        this.logo = logo;
+        
+        // Set up logo canvas
+        bindCanvas();
+        
+        // Set up editor tabs
+        setupEditorTabs();
+        
+        setLogoControlsEnabled(true);
+    }
+    
+    /**
+     * Enable or disable the controls that need a logo
+     */
+    private void setLogoControlsEnabled(boolean enabled) {
+        btnSave.setEnabled(enabled);
+        btnSave.setAlpha(enabled ? 1.0f : 0.5f);
+        fabExport.setEnabled(enabled);
+    }
+    
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.menu_editor, menu);
+        menu.findItem(R.id.action_render_thread).setChecked(logoCanvas instanceof LogoSurfaceView);
+        return true;
     }
     
     @Override
     public boolean onOptionsItemSelected(@NonNull MenuItem item) {
+        if (item.getItemId() == R.id.action_render_thread) {
+            boolean renderThread = !item.isChecked();
+            item.setChecked(renderThread);
+            dataManager.setRenderThreadEnabled(renderThread);
+            
+            // Swap the canvas in place, keeping the selection
+            LogoElement selected = logoCanvas.getSelectedElement();
+            useCanvas(renderThread);
+            if (logo != null) {
+                // Otherwise the logo is still loading and is bound to the new canvas when it arrives
+                bindCanvas();
+                logoCanvas.setSelectedElement(selected);
+                setupEditorTabs();
+            }
+            return true;
+        }
+
         if (item.getItemId() == android.R.id.home) {
             // Show confirmation dialog if there are unsaved changes
             if (undoRedoManager.hasChanges()) {
@@ -119,11 +177,48 @@ public class LogoEditorActivity extends AppCompatActivity {
         }
     }
     
+    /**
+     * Put the canvas for a drawing mode in the layout, replacing the current one
+     * @param renderThread True to draw on a render thread, false to draw on the main thread
+     */
+    private void useCanvas(boolean renderThread) {
+        View current = findViewById(R.id.logoCanvas);
+        if ((current instanceof LogoSurfaceView) != renderThread) {
+            View replacement;
+            if (renderThread) {
+                // A background would be drawn over the surface
+                replacement = new LogoSurfaceView(this);
+            } else {
+                replacement = new LogoCanvasView(this);
+                replacement.setBackgroundColor(ContextCompat.getColor(this, R.color.white));
+            }
+            replacement.setId(R.id.logoCanvas);
+            
+            ViewGroup parent = (ViewGroup) current.getParent();
+            int index = parent.indexOfChild(current);
+            parent.removeViewAt(index);
+            parent.addView(replacement, index, current.getLayoutParams());
+            current = replacement;
+        }
+        logoCanvas = (EditorCanvas) current;
+    }
+    
+    private void bindCanvas() {
+        logoCanvas.setLogo(logo);
+        logoCanvas.setOnElementSelectedListener(element -> {
+            // Update UI based on selected element
+            updateElementPropertiesPanel(element);
+        });
+    }
+    
     private void setupEditorTabs() {
         EditorPagerAdapter pagerAdapter = new EditorPagerAdapter(this, logo, logoCanvas);
         viewPager.setAdapter(pagerAdapter);
         
-        new TabLayoutMediator(tabLayout, viewPager, (tab, position) -> {
+        if (tabLayoutMediator != null) {
+            tabLayoutMediator.detach();
+        }
+        tabLayoutMediator = new TabLayoutMediator(tabLayout, viewPager, (tab, position) -> {
             switch (position) {
                 case 0:
                     tab.setText(R.string.add_text);
@@ -138,7 +233,8 @@ public class LogoEditorActivity extends AppCompatActivity {
                     tab.setText(R.string.background);
                     break;
             }
-        }).attach();
+        });
+        tabLayoutMediator.attach();
     }
     
     private void updateElementPropertiesPanel(LogoElement element) {
@@ -185,27 +281,55 @@ public class LogoEditorActivity extends AppCompatActivity {
     }
     
     private void saveLogo() {
+        saveLogo(null);
+    }
+    
+    /**
+     * Save the logo in the background
+     * @param onSaved Run once the logo is stored, may be null
+     */
+    private void saveLogo(Runnable onSaved) {
         // Update timestamp
         logo.updateLastModified();
         
-        // Save logo
-        dataManager.saveLogo(logo);
-        
-        // Clear undo/redo stack
-        undoRedoManager.clearHistory();
-        
-        // Show success message
-        Toast.makeText(this, R.string.logo_saved, Toast.LENGTH_SHORT).show();
+        // Save logo; the message may show after this activity is finished
+        Context appContext = getApplicationContext();
+        int savedChange = undoRedoManager.getChangeCount();
+        dataManager.saveLogo(logo, new DataManager.OnSaveListener() {
+            @Override
+            public void onSaved(LogoSummary summary) {
+                Toast.makeText(appContext, R.string.logo_saved, Toast.LENGTH_SHORT).show();
+                
+                // Clear undo/redo stack, unless there were edits after the save was requested
+                if (undoRedoManager.getChangeCount() == savedChange) {
+                    undoRedoManager.clearHistory();
+                    updateUndoRedoButtons();
+                }
+                if (onSaved != null) {
+                    onSaved.run();
+                }
+            }
+            
+            @Override
+            public void onSaveFailed(IOException error) {
+                Toast.makeText(appContext, R.string.logo_save_failed, Toast.LENGTH_SHORT).show();
+            }
+        });
     }
     
     private void exportLogo() {
-        // Save first
-        saveLogo();
-        
-        // Navigate to export options
-        Intent intent = new Intent(this, ExportOptionsActivity.class);
-        intent.putExtra(ExportOptionsActivity.EXTRA_LOGO_ID, logo.getId());
-        startActivity(intent);
+        // Save first, the export screen reads the stored logo
+        String logoId = logo.getId();
+        saveLogo(() -> {
+            if (isFinishing()) {
+                return;
+            }
+            
+            // Navigate to export options
+            Intent intent = new Intent(this, ExportOptionsActivity.class);
+            intent.putExtra(ExportOptionsActivity.EXTRA_LOGO_ID, logoId);
+            startActivity(intent);
+        });
     }
     
     private void showUnsavedChangesDialog() {
@@ -237,7 +361,7 @@ public class LogoEditorActivity extends AppCompatActivity {
         logoCanvas.setSelectedElement(textElement);
         
         // Update canvas
-        logoCanvas.invalidate();
+        logoCanvas.refreshCanvas();
         
         // Add to undo/redo stack
         undoRedoManager.addState(logo);
@@ -253,7 +377,11 @@ public class LogoEditorActivity extends AppCompatActivity {
         private final List<Logo> undoStack = new ArrayList<>();
         private final List<Logo> redoStack = new ArrayList<>();
         
+        // Counts added states, undos and redos
+        private int changeCount;
+        
         public void addState(Logo logo) {
+            changeCount++;
             try {
                 // Add deep copy to undo stack
                 Logo copy = deepCopyLogo(logo);
@@ -273,6 +401,7 @@ public class LogoEditorActivity extends AppCompatActivity {
         
         public Logo undo() {
             if (canUndo()) {
+                changeCount++;
                 Logo currentState = undoStack.remove(undoStack.size() - 1);
                 redoStack.add(currentState);
                 
@@ -287,6 +416,7 @@ public class LogoEditorActivity extends AppCompatActivity {
         
         public Logo redo() {
             if (canRedo()) {
+                changeCount++;
                 Logo nextState = redoStack.remove(redoStack.size() - 1);
                 undoStack.add(nextState);
                 return nextState;
@@ -308,6 +438,10 @@ public class LogoEditorActivity extends AppCompatActivity {
             return !undoStack.isEmpty();
         }
         
+        public int getChangeCount() {
+            return changeCount;
+        }
+        
         public void clearHistory() {
             undoStack.clear();
             redoStack.clear();
@@ -10,7 +10,7 @@ import com.logomaker.app.editor.fragments.BackgroundEditorFragment;
 import com.logomaker.app.editor.fragments.ImageEditorFragment;
 import com.logomaker.app.editor.fragments.ShapeEditorFragment;
 import com.logomaker.app.editor.fragments.TextEditorFragment;
-import com.logomaker.app.editor.views.LogoCanvasView;
+import com.logomaker.app.editor.views.EditorCanvas;
 import com.logomaker.app.model.Logo;
 
 /**
@@ -20,9 +20,9 @@ public class EditorPagerAdapter extends FragmentStateAdapter {
 
     private final LogoEditorActivity activity;
     private final Logo logo;
-    private final LogoCanvasView logoCanvas;
+    private final EditorCanvas logoCanvas;
 
-    public EditorPagerAdapter(FragmentActivity activity, Logo logo, LogoCanvasView logoCanvas) {
+    public EditorPagerAdapter(FragmentActivity activity, Logo logo, EditorCanvas logoCanvas) {
         super(activity);
         this.activity = (LogoEditorActivity) activity;
         this.logo = logo;
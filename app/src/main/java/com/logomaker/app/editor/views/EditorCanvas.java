@@ -0,0 +1,43 @@
+package com.logomaker.app.editor.views;
+
+import android.graphics.RectF;
+
+import androidx.annotation.Nullable;
+
+import com.logomaker.app.model.Logo;
+import com.logomaker.app.model.LogoElement;
+
+/**
+ * The editor's logo canvas, implemented by {@link LogoCanvasView} which draws
+ * on the main thread and {@link LogoSurfaceView} which draws on a render thread
+ */
+public interface EditorCanvas {
+
+    void setLogo(Logo logo);
+
+    Logo getLogo();
+
+    void setSelectedElement(LogoElement element);
+
+    LogoElement getSelectedElement();
+
+    void setOnElementSelectedListener(LogoCanvasView.OnElementSelectedListener listener);
+
+    /**
+     * Redraw after an element changed
+     * @param element The element that changed
+     * @param previousBounds Draw bounds of the element before the change, or null
+     */
+    void invalidateElement(LogoElement element, @Nullable RectF previousBounds);
+
+    /**
+     * Redraw the whole logo
+     */
+    void refreshCanvas();
+
+    /**
+     * Get the latency of drags on this canvas
+     * @return The tracker
+     */
+    InputLatencyTracker getInputLatency();
+}
@@ -0,0 +1,109 @@
+package com.logomaker.app.editor.views;
+
+import android.graphics.RectF;
+import android.view.MotionEvent;
+
+import com.logomaker.app.model.Logo;
+import com.logomaker.app.model.LogoElement;
+
+/**
+ * Tap-to-select and drag-to-move handling shared by the editor canvas views
+ */
+class ElementDragHandler {
+
+    /**
+     * The view whose elements are selected and moved
+     */
+    interface Host {
+        Logo getLogo();
+        LogoElement getSelectedElement();
+        void setSelectedElement(LogoElement element);
+        void invalidateElement(LogoElement element, RectF previousBounds);
+        int getWidth();
+        int getHeight();
+        InputLatencyTracker getInputLatency();
+    }
+
+    private final Host host;
+    private float lastTouchX, lastTouchY;
+    private boolean isDragging = false;
+    private final RectF previousBounds = new RectF();
+
+    ElementDragHandler(Host host) {
+        this.host = host;
+    }
+
+    /**
+     * Handle a touch event on the host view
+     * @param event The touch event
+     * @return True if the event was consumed
+     */
+    boolean onTouchEvent(MotionEvent event) {
+        float x = event.getX();
+        float y = event.getY();
+
+        switch (event.getAction()) {
+            case MotionEvent.ACTION_DOWN:
+                // Check if user tapped on an element
+                LogoElement tappedElement = findElementAt(x, y);
+                host.setSelectedElement(tappedElement);
+
+                if (tappedElement != null) {
+                    isDragging = true;
+                    lastTouchX = x;
+                    lastTouchY = y;
+                }
+                return true;
+
+            case MotionEvent.ACTION_MOVE:
+                LogoElement selectedElement = host.getSelectedElement();
+                if (isDragging && selectedElement != null) {
+                    // Calculate movement delta
+                    float deltaX = x - lastTouchX;
+                    float deltaY = y - lastTouchY;
+
+                    // Remember the old area so only the old and new areas get redrawn
+                    selectedElement.getDrawBounds(previousBounds);
+
+                    // Move the selected element
+                    float newX = selectedElement.getX() + deltaX;
+                    float newY = selectedElement.getY() + deltaY;
+
+                    // Keep the element center within canvas bounds
+                    newX = Math.max(0, Math.min(newX, host.getWidth()));
+                    newY = Math.max(0, Math.min(newY, host.getHeight()));
+
+                    selectedElement.setPosition(newX, newY);
+
+                    // Update last touch position
+                    lastTouchX = x;
+                    lastTouchY = y;
+
+                    host.getInputLatency().onInput(event.getEventTime());
+                    host.invalidateElement(selectedElement, previousBounds);
+                }
+                return true;
+
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_CANCEL:
+                isDragging = false;
+                return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Find the element at the given coordinates
+     * @param x X coordinate
+     * @param y Y coordinate
+     * @return The element at the given coordinates, or null if no element was found
+     */
+    private LogoElement findElementAt(float x, float y) {
+        Logo logo = host.getLogo();
+        if (logo == null) return null;
+
+        // The logo's spatial index returns the top-most element at the point
+        return logo.findElementAt(x, y);
+    }
+}
@@ -0,0 +1,104 @@
+package com.logomaker.app.editor.views;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.logomaker.app.BuildConfig;
+
+/**
+ * Measures the time from a drag event to the first frame that shows it.
+ * Inputs are reported on the main thread; frames may be reported from the
+ * thread that draws them. Times are in the uptime base of MotionEvent.
+ */
+public class InputLatencyTracker {
+
+    private static final String TAG = "InputLatency";
+    private static final int LOG_INTERVAL = 120;
+
+    private final String name;
+
+    // Oldest input not yet taken by a frame, 0 if none; only used on the main thread
+    private long pendingInputTime;
+
+    // Samples so far, guarded by this
+    private int sampleCount;
+    private long totalLatency;
+    private long maxLatency;
+
+    /**
+     * @param name Name of the canvas mode, used in the log of debug builds
+     */
+    public InputLatencyTracker(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Report an input that changed what is drawn
+     * @param eventTime Event time of the input
+     */
+    void onInput(long eventTime) {
+        if (pendingInputTime == 0) {
+            pendingInputTime = eventTime;
+        }
+    }
+
+    /**
+     * Take the oldest input the next frame will show
+     * @return Its event time, or 0 if no input is waiting
+     */
+    long takePendingInput() {
+        long inputTime = pendingInputTime;
+        pendingInputTime = 0;
+        return inputTime;
+    }
+
+    /**
+     * Report that a frame showing an input was handed to the display
+     * @param inputTime Event time from {@link #takePendingInput()}, 0 is ignored
+     */
+    void onFrameDrawn(long inputTime) {
+        if (inputTime == 0) return;
+
+        long latency = SystemClock.uptimeMillis() - inputTime;
+        boolean log;
+        synchronized (this) {
+            sampleCount++;
+            totalLatency += latency;
+            maxLatency = Math.max(maxLatency, latency);
+            log = BuildConfig.DEBUG && sampleCount % LOG_INTERVAL == 0;
+        }
+        if (log) {
+            Log.d(TAG, name + ": " + this);
+        }
+    }
+
+    public synchronized int getSampleCount() {
+        return sampleCount;
+    }
+
+    /**
+     * Get the average latency of the samples so far
+     * @return Milliseconds, or 0 without samples
+     */
+    public synchronized float getAverageMillis() {
+        return sampleCount == 0 ? 0 : (float) totalLatency / sampleCount;
+    }
+
+    public synchronized long getMaxMillis() {
+        return maxLatency;
+    }
+
+    /**
+     * Drop the samples so far
+     */
+    public synchronized void reset() {
+        sampleCount = 0;
+        totalLatency = 0;
+        maxLatency = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return sampleCount + " samples, average " + getAverageMillis() + " ms, max " + maxLatency + " ms";
+    }
+}
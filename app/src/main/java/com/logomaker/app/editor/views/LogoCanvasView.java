@@ -4,6 +4,7 @@ import android.content.Context;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
+import android.graphics.Rect;
 import android.graphics.RectF;
 import android.util.AttributeSet;
 import android.view.MotionEvent;
@@ -16,21 +17,37 @@ import com.logomaker.app.model.Logo;
 import com.logomaker.app.model.LogoElement;
 import com.logomaker.app.model.ShapeElement;
 import com.logomaker.app.model.TextElement;
+import com.logomaker.app.render.ElementLayerCache;
 
 /**
  * Canvas view for rendering and editing the logo
  */
-public class LogoCanvasView extends View {
+public class LogoCanvasView extends View implements EditorCanvas, ElementDragHandler.Host {
+
+    private static final float SELECTION_PADDING = 10;
 
     private Logo logo;
     private LogoElement selectedElement;
-    private float lastTouchX, lastTouchY;
-    private boolean isDragging = false;
+    private final ElementDragHandler dragHandler = new ElementDragHandler(this);
     
     // Selection indicator
     private final Paint selectionPaint;
     private final RectF selectionRect = new RectF();
     
+    // Cached element layers the display list is replayed from
+    private final ElementLayerCache layerCache = ElementLayerCache.getInstance();
+    
+    // Area that needs to be redrawn after an element changed
+    private final RectF dirtyBounds = new RectF();
+    private final Rect dirtyRect = new Rect();
+    
+    // Reused while drawing so frames don't allocate
+    private final Rect clipRect = new Rect();
+    private final RectF clipBounds = new RectF();
+    
+    // Time from a drag to the end of the frame that draws it
+    private final InputLatencyTracker inputLatency = new InputLatencyTracker("LogoCanvasView");
+    
     // Listener for element selection
     private OnElementSelectedListener elementSelectedListener;
 
@@ -56,6 +73,7 @@ public class LogoCanvasView extends View {
      * Set the logo to be displayed on the canvas
      * @param logo The logo to display
      */
+    @Override
     public void setLogo(Logo logo) {
         this.logo = logo;
         invalidate();
@@ -65,6 +83,7 @@ public class LogoCanvasView extends View {
      * Get the currently displayed logo
      * @return The logo
      */
+    @Override
     public Logo getLogo() {
         return logo;
     }
@@ -73,6 +92,7 @@ public class LogoCanvasView extends View {
      * Set the selected element
      * @param element The element to select
      */
+    @Override
     public void setSelectedElement(LogoElement element) {
         this.selectedElement = element;
         
@@ -88,6 +108,7 @@ public class LogoCanvasView extends View {
      * Get the currently selected element
      * @return The selected element
      */
+    @Override
     public LogoElement getSelectedElement() {
         return selectedElement;
     }
@@ -96,6 +117,7 @@ public class LogoCanvasView extends View {
      * Set the element selection listener
      * @param listener The listener
      */
+    @Override
     public void setOnElementSelectedListener(OnElementSelectedListener listener) {
         this.elementSelectedListener = listener;
     }
@@ -109,16 +131,18 @@ public class LogoCanvasView extends View {
         // Draw logo background
         canvas.drawColor(logo.getBackgroundColor());
         
-        // Draw all logo elements
-        for (LogoElement element : logo.getElements()) {
-            element.render(canvas);
-            
-            // Draw selection indicator for selected element
-            if (element == selectedElement) {
-                calculateSelectionRect(element);
-                canvas.drawRect(selectionRect, selectionPaint);
-            }
+        // Replay only the logo elements that intersect the area being redrawn
+        canvas.getClipBounds(clipRect);
+        clipBounds.set(clipRect);
+        logo.getDisplayList().replay(canvas, 1f, clipBounds, layerCache);
+        
+        // Draw selection indicator on top of the elements
+        if (selectedElement != null) {
+            calculateSelectionRect(selectedElement);
+            canvas.drawRect(selectionRect, selectionPaint);
         }
+        
+        inputLatency.onFrameDrawn(inputLatency.takePendingInput());
     }
 
     /**
@@ -126,97 +150,47 @@ public class LogoCanvasView extends View {
      * @param element The element
      */
     private void calculateSelectionRect(LogoElement element) {
-        float padding = 10;
-        selectionRect.set(
-            element.getX() - padding,
-            element.getY() - padding,
-            element.getX() + element.getWidth() + padding,
-            element.getY() + element.getHeight() + padding
-        );
+        element.getBounds(selectionRect);
+        selectionRect.inset(-SELECTION_PADDING, -SELECTION_PADDING);
     }
-
+    
+    /**
+     * Redraw only the area an element covered before and after a change
+     * @param element The element that changed
+     * @param previousBounds Draw bounds of the element before the change, or null
+     */
     @Override
-    public boolean onTouchEvent(MotionEvent event) {
-        float x = event.getX();
-        float y = event.getY();
-        
-        switch (event.getAction()) {
-            case MotionEvent.ACTION_DOWN:
-                // Check if user tapped on an element
-                LogoElement tappedElement = findElementAt(x, y);
-                setSelectedElement(tappedElement);
-                
-                if (tappedElement != null) {
-                    isDragging = true;
-                    lastTouchX = x;
-                    lastTouchY = y;
-                }
-                return true;
-                
-            case MotionEvent.ACTION_MOVE:
-                if (isDragging && selectedElement != null) {
-                    // Calculate movement delta
-                    float deltaX = x - lastTouchX;
-                    float deltaY = y - lastTouchY;
-                    
-                    // Move the selected element
-                    float newX = selectedElement.getX() + deltaX;
-                    float newY = selectedElement.getY() + deltaY;
-                    
-                    // Ensure element stays within canvas bounds
-                    newX = Math.max(0, Math.min(newX, getWidth() - selectedElement.getWidth()));
-                    newY = Math.max(0, Math.min(newY, getHeight() - selectedElement.getHeight()));
-                    
-                    selectedElement.setX(newX);
-                    selectedElement.setY(newY);
-                    
-                    // Update last touch position
-                    lastTouchX = x;
-                    lastTouchY = y;
-                    
-                    invalidate();
-                }
-                return true;
-                
-            case MotionEvent.ACTION_UP:
-            case MotionEvent.ACTION_CANCEL:
-                isDragging = false;
-                return true;
+    public void invalidateElement(LogoElement element, @Nullable RectF previousBounds) {
+        element.getDrawBounds(dirtyBounds);
+        if (previousBounds != null) {
+            dirtyBounds.union(previousBounds);
         }
         
-        return super.onTouchEvent(event);
+        // The selection indicator is drawn outside the element
+        float outset = SELECTION_PADDING + selectionPaint.getStrokeWidth();
+        dirtyBounds.inset(-outset, -outset);
+        dirtyBounds.roundOut(dirtyRect);
+        invalidate(dirtyRect);
     }
 
-    /**
-     * Find the element at the given coordinates
-     * @param x X coordinate
-     * @param y Y coordinate
-     * @return The element at the given coordinates, or null if no element was found
-     */
-    private LogoElement findElementAt(float x, float y) {
-        if (logo == null) return null;
-        
-        // Iterate through elements in reverse order (top-most elements first)
-        for (int i = logo.getElements().size() - 1; i >= 0; i--) {
-            LogoElement element = logo.getElements().get(i);
-            
-            // Check if coordinates are within element bounds
-            if (x >= element.getX() && x <= element.getX() + element.getWidth() &&
-                y >= element.getY() && y <= element.getY() + element.getHeight()) {
-                return element;
-            }
-        }
-        
-        return null;
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        return dragHandler.onTouchEvent(event) || super.onTouchEvent(event);
     }
 
     /**
      * Refresh the canvas
      */
+    @Override
     public void refreshCanvas() {
         invalidate();
     }
 
+    @Override
+    public InputLatencyTracker getInputLatency() {
+        return inputLatency;
+    }
+
     /**
      * Interface for element selection events
      */
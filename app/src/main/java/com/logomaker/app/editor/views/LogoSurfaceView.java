@@ -0,0 +1,254 @@
+package com.logomaker.app.editor.views;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.AttributeSet;
+import android.view.MotionEvent;
+import android.view.SurfaceHolder;
+import android.view.SurfaceView;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.logomaker.app.model.Logo;
+import com.logomaker.app.model.LogoElement;
+import com.logomaker.app.render.DisplayList;
+import com.logomaker.app.render.ElementLayerCache;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Editor canvas that draws the logo on a render thread instead of the main
+ * thread. The main thread only handles input and takes a snapshot of the
+ * logo's display list for each frame; the render thread draws the latest
+ * snapshot into the back buffer of the surface and posts it.
+ */
+public class LogoSurfaceView extends SurfaceView
+        implements EditorCanvas, SurfaceHolder.Callback, ElementDragHandler.Host {
+
+    private static final float SELECTION_PADDING = 10;
+
+    private Logo logo;
+    private LogoElement selectedElement;
+    private final ElementDragHandler dragHandler = new ElementDragHandler(this);
+
+    // Selection indicator, only used on the render thread
+    private final Paint selectionPaint;
+
+    // Render thread and the newest frame it has not drawn yet
+    private HandlerThread renderThread;
+    private Handler renderHandler;
+    private final AtomicReference<Frame> pendingFrame = new AtomicReference<>();
+    private final Runnable drawFrame = this::drawPendingFrame;
+    private final ElementLayerCache layerCache = ElementLayerCache.getInstance();
+
+    // Time from a drag to the post of the frame that draws it
+    private final InputLatencyTracker inputLatency = new InputLatencyTracker("LogoSurfaceView");
+
+    // Listener for element selection
+    private LogoCanvasView.OnElementSelectedListener elementSelectedListener;
+
+    public LogoSurfaceView(Context context) {
+        this(context, null);
+    }
+
+    public LogoSurfaceView(Context context, @Nullable AttributeSet attrs) {
+        this(context, attrs, 0);
+    }
+
+    public LogoSurfaceView(Context context, @Nullable AttributeSet attrs, int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+        getHolder().addCallback(this);
+
+        // Initialize selection paint
+        selectionPaint = new Paint();
+        selectionPaint.setColor(Color.BLUE);
+        selectionPaint.setStyle(Paint.Style.STROKE);
+        selectionPaint.setStrokeWidth(4);
+    }
+
+    /**
+     * Set the logo to be displayed on the canvas
+     * @param logo The logo to display
+     */
+    @Override
+    public void setLogo(Logo logo) {
+        this.logo = logo;
+        requestRender();
+    }
+
+    /**
+     * Get the currently displayed logo
+     * @return The logo
+     */
+    @Override
+    public Logo getLogo() {
+        return logo;
+    }
+
+    /**
+     * Set the selected element
+     * @param element The element to select
+     */
+    @Override
+    public void setSelectedElement(LogoElement element) {
+        this.selectedElement = element;
+
+        // Notify listener
+        if (elementSelectedListener != null) {
+            elementSelectedListener.onElementSelected(element);
+        }
+
+        requestRender();
+    }
+
+    /**
+     * Get the currently selected element
+     * @return The selected element
+     */
+    @Override
+    public LogoElement getSelectedElement() {
+        return selectedElement;
+    }
+
+    /**
+     * Set the element selection listener
+     * @param listener The listener
+     */
+    @Override
+    public void setOnElementSelectedListener(LogoCanvasView.OnElementSelectedListener listener) {
+        this.elementSelectedListener = listener;
+    }
+
+    /**
+     * Redraw after an element changed. The surface is always redrawn in full,
+     * unchanged elements come from their cached layers.
+     * @param element The element that changed
+     * @param previousBounds Draw bounds of the element before the change, or null
+     */
+    @Override
+    public void invalidateElement(LogoElement element, @Nullable RectF previousBounds) {
+        requestRender();
+    }
+
+    /**
+     * Refresh the canvas
+     */
+    @Override
+    public void refreshCanvas() {
+        requestRender();
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        return dragHandler.onTouchEvent(event) || super.onTouchEvent(event);
+    }
+
+    @Override
+    public void surfaceCreated(@NonNull SurfaceHolder holder) {
+        renderThread = new HandlerThread("LogoRender");
+        renderThread.start();
+        renderHandler = new Handler(renderThread.getLooper());
+        requestRender();
+    }
+
+    @Override
+    public void surfaceChanged(@NonNull SurfaceHolder holder, int format, int width, int height) {
+        requestRender();
+    }
+
+    @Override
+    public void surfaceDestroyed(@NonNull SurfaceHolder holder) {
+        // The surface must not be drawn on after this returns
+        renderThread.quitSafely();
+        try {
+            renderThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        renderThread = null;
+        renderHandler = null;
+        pendingFrame.set(null);
+    }
+
+    /**
+     * Snapshot the logo and hand it to the render thread. Frames requested
+     * faster than they can be drawn replace each other, so only the newest
+     * one is drawn.
+     */
+    private void requestRender() {
+        if (logo == null || renderHandler == null) return;
+
+        RectF selectionRect = null;
+        if (selectedElement != null) {
+            selectionRect = selectedElement.getBounds();
+            selectionRect.inset(-SELECTION_PADDING, -SELECTION_PADDING);
+        }
+        Frame frame = new Frame(logo.getDisplayList().snapshot(), logo.getBackgroundColor(), selectionRect);
+        long inputTime = inputLatency.takePendingInput();
+
+        // A replaced frame was never drawn, so its input is shown by this one
+        Frame previous;
+        do {
+            previous = pendingFrame.get();
+            frame.inputTime = previous != null && previous.inputTime != 0
+                    && (inputTime == 0 || previous.inputTime < inputTime)
+                    ? previous.inputTime : inputTime;
+        } while (!pendingFrame.compareAndSet(previous, frame));
+        if (previous == null) {
+            renderHandler.post(drawFrame);
+        }
+    }
+
+    /**
+     * Draw the newest frame, called on the render thread
+     */
+    private void drawPendingFrame() {
+        Frame frame = pendingFrame.getAndSet(null);
+        if (frame == null) return;
+
+        SurfaceHolder holder = getHolder();
+        Canvas canvas = holder.lockCanvas();
+        if (canvas == null) return;
+        try {
+            canvas.drawColor(frame.backgroundColor);
+            frame.displayList.replay(canvas, 1f, null, layerCache);
+
+            // Draw selection indicator on top of the elements
+            if (frame.selectionRect != null) {
+                canvas.drawRect(frame.selectionRect, selectionPaint);
+            }
+        } finally {
+            holder.unlockCanvasAndPost(canvas);
+        }
+        inputLatency.onFrameDrawn(frame.inputTime);
+    }
+
+    @Override
+    public InputLatencyTracker getInputLatency() {
+        return inputLatency;
+    }
+
+    /**
+     * Everything the render thread needs to draw one frame, detached from the model
+     */
+    private static class Frame {
+        final DisplayList displayList;
+        final int backgroundColor;
+        final RectF selectionRect;
+
+        // Oldest input this frame shows, 0 if none; set before the frame is handed over
+        long inputTime;
+
+        Frame(DisplayList displayList, int backgroundColor, RectF selectionRect) {
+            this.displayList = displayList;
+            this.backgroundColor = backgroundColor;
+            this.selectionRect = selectionRect;
+        }
+    }
+}
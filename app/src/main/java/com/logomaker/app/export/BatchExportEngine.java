@@ -0,0 +1,454 @@
+package com.logomaker.app.export;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.logomaker.app.model.Logo;
+import com.logomaker.app.render.DisplayList;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Exports many logos at many sizes and formats in one go. Each logo is
+ * rendered once per output size on a single render thread, and the formats
+ * of that size are encoded in parallel on a pool with one thread per core.
+ * When a batch ends a JSON manifest with the size and timing of every file
+ * is written next to the exports.
+ */
+public class BatchExportEngine {
+
+    private static final String MANIFEST_NAME = "manifest.json";
+
+    private final File directory;
+    private final int encoderCount;
+    private final ExecutorService renderer = Executors.newSingleThreadExecutor();
+    private final ExecutorService encoders;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // The most recently started batch, the one cancel() stops
+    private volatile Batch currentBatch;
+
+    /**
+     * Create an engine exporting to the app's LogoMaker directory
+     */
+    public BatchExportEngine(Context context) {
+        this.directory = new File(context.getExternalFilesDir(null), "LogoMaker");
+        this.encoderCount = Runtime.getRuntime().availableProcessors();
+        this.encoders = Executors.newFixedThreadPool(encoderCount);
+    }
+
+    /**
+     * Start exporting. The logos are snapshotted on the calling thread, so
+     * they can be edited again as soon as this returns.
+     * @param jobs Files to export
+     * @param listener Receives progress and the results on the main thread
+     */
+    public void start(List<Job> jobs, Listener listener) {
+        if (!directory.exists()) {
+            directory.mkdirs();
+        }
+
+        // Jobs sharing a logo and size share one render
+        Map<RenderKey, List<Integer>> groups = new LinkedHashMap<>();
+        for (int i = 0; i < jobs.size(); i++) {
+            Job job = jobs.get(i);
+            RenderKey key = new RenderKey(job.logo, job.width, job.height);
+            List<Integer> group = groups.get(key);
+            if (group == null) {
+                group = new ArrayList<>();
+                groups.put(key, group);
+            }
+            group.add(i);
+        }
+
+        Map<Logo, DisplayList> snapshots = new IdentityHashMap<>();
+        for (Job job : jobs) {
+            if (!snapshots.containsKey(job.logo)) {
+                snapshots.put(job.logo, job.logo.getDisplayList().snapshot());
+            }
+        }
+
+        Batch batch = new Batch(jobs, listener);
+        currentBatch = batch;
+        if (jobs.isEmpty()) {
+            mainHandler.post(() -> listener.onFinished(new ArrayList<>(), null, false));
+            return;
+        }
+        renderer.execute(() -> {
+            for (Map.Entry<RenderKey, List<Integer>> group : groups.entrySet()) {
+                renderGroup(batch, group.getKey(), snapshots.get(group.getKey().logo), group.getValue());
+            }
+        });
+    }
+
+    /**
+     * Stop the running batch. Files already written are kept and listed in
+     * the manifest; the rest are reported as cancelled.
+     */
+    public void cancel() {
+        Batch batch = currentBatch;
+        if (batch != null) {
+            batch.cancelled = true;
+        }
+    }
+
+    /**
+     * Stop the worker threads once the running batch is finished
+     */
+    public void shutdown() {
+        renderer.shutdown();
+        encoders.shutdown();
+    }
+
+    /**
+     * Render one logo at one size and queue its encodes, called on the render thread
+     */
+    private void renderGroup(Batch batch, RenderKey key, DisplayList commands, List<Integer> jobIndices) {
+        if (batch.cancelled) {
+            for (int index : jobIndices) {
+                batch.complete(index, new Result(batch.jobs.get(index), null, 0, 0, 0, "Cancelled"));
+            }
+            return;
+        }
+
+        // Keep at most one rendered bitmap per encoder in memory
+        batch.renderPermits.acquireUninterruptibly();
+        long renderStart = System.nanoTime();
+        Bitmap bitmap;
+        try {
+            bitmap = render(key, commands);
+        } catch (OutOfMemoryError | RuntimeException e) {
+            batch.renderPermits.release();
+            String error = e instanceof OutOfMemoryError ? "Out of memory" : "Render failed: " + e;
+            for (int index : jobIndices) {
+                batch.complete(index, new Result(batch.jobs.get(index), null, 0, 0, 0, error));
+            }
+            return;
+        }
+        long renderMillis = (System.nanoTime() - renderStart) / 1000000;
+
+        // The last encode of the group frees the bitmap
+        AtomicInteger pending = new AtomicInteger(jobIndices.size());
+        for (int index : jobIndices) {
+            encoders.execute(() -> {
+                try {
+                    batch.complete(index, encode(batch, batch.jobs.get(index), bitmap, renderMillis));
+                } finally {
+                    if (pending.decrementAndGet() == 0) {
+                        bitmap.recycle();
+                        batch.renderPermits.release();
+                    }
+                }
+            });
+        }
+    }
+
+    private static Bitmap render(RenderKey key, DisplayList commands) {
+        // Sizes come from the snapshot too, the logo itself may be edited meanwhile
+        float scaleX = (float) key.width / commands.getLogoWidth();
+        float scaleY = (float) key.height / commands.getLogoHeight();
+
+        Bitmap bitmap = Bitmap.createBitmap(key.width, key.height, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        canvas.drawColor(commands.getBackgroundColor());
+        canvas.scale(scaleX, scaleY);
+        commands.replay(canvas, Math.min(scaleX, scaleY), null, null);
+        return bitmap;
+    }
+
+    /**
+     * Write one file, called on an encoder thread
+     */
+    private Result encode(Batch batch, Job job, Bitmap bitmap, long renderMillis) {
+        if (batch.cancelled) {
+            return new Result(job, null, 0, renderMillis, 0, "Cancelled");
+        }
+
+        File file = new File(directory, job.getFileName());
+        long encodeStart = System.nanoTime();
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+            if (!bitmap.compress(job.format, job.quality, out)) {
+                throw new IOException("Encoder failed");
+            }
+        } catch (IOException e) {
+            file.delete();
+            return new Result(job, null, 0, renderMillis, 0, e.getMessage());
+        } catch (RuntimeException e) {
+            // Report it like any other failed file so the batch still finishes
+            file.delete();
+            return new Result(job, null, 0, renderMillis, 0, "Encoder failed: " + e);
+        }
+        long encodeMillis = (System.nanoTime() - encodeStart) / 1000000;
+        return new Result(job, file.getAbsolutePath(), file.length(), renderMillis, encodeMillis, null);
+    }
+
+    /**
+     * Write the manifest of a finished batch
+     * @return The manifest path, or null if it could not be written
+     */
+    private String writeManifest(Result[] results) {
+        File file = new File(directory, MANIFEST_NAME);
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(file), Charset.forName("UTF-8"))) {
+            JSONArray entries = new JSONArray();
+            for (Result result : results) {
+                JSONObject entry = new JSONObject();
+                entry.put("logo", result.job.logo.getName());
+                entry.put("file", result.job.getFileName());
+                entry.put("width", result.job.width);
+                entry.put("height", result.job.height);
+                entry.put("format", result.job.format.name());
+                entry.put("quality", result.job.quality);
+                entry.put("bytes", result.byteSize);
+                entry.put("renderMs", result.renderMillis);
+                entry.put("encodeMs", result.encodeMillis);
+                if (result.error != null) {
+                    entry.put("error", result.error);
+                }
+                entries.put(entry);
+            }
+            out.write(new JSONObject().put("files", entries).toString(2));
+            return file.getAbsolutePath();
+        } catch (IOException | JSONException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    private static String extension(Bitmap.CompressFormat format) {
+        switch (format) {
+            case JPEG:
+                return ".jpg";
+            case WEBP:
+                return ".webp";
+            default:
+                return ".png";
+        }
+    }
+
+    /**
+     * State of one running batch
+     */
+    private class Batch {
+        final List<Job> jobs;
+        final Listener listener;
+        final Result[] results;
+        final AtomicInteger completed = new AtomicInteger();
+        final Semaphore renderPermits = new Semaphore(encoderCount);
+
+        // Set by cancel(), checked before every render and encode
+        volatile boolean cancelled;
+
+        Batch(List<Job> jobs, Listener listener) {
+            this.jobs = new ArrayList<>(jobs);
+            this.listener = listener;
+            this.results = new Result[jobs.size()];
+        }
+
+        /**
+         * Record the result of a job, finishing the batch after the last one
+         */
+        void complete(int index, Result result) {
+            results[index] = result;
+            int done = completed.incrementAndGet();
+            mainHandler.post(() -> listener.onProgress(done, results.length));
+
+            if (done == results.length) {
+                String manifestPath = writeManifest(results);
+                List<Result> list = Arrays.asList(results);
+                boolean wasCancelled = cancelled;
+                mainHandler.post(() -> listener.onFinished(list, manifestPath, wasCancelled));
+            }
+        }
+    }
+
+    /**
+     * A logo at an output size, compared by logo identity
+     */
+    private static final class RenderKey {
+        final Logo logo;
+        final int width;
+        final int height;
+
+        RenderKey(Logo logo, int width, int height) {
+            this.logo = logo;
+            this.width = width;
+            this.height = height;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof RenderKey)) return false;
+            RenderKey other = (RenderKey) o;
+            return logo == other.logo && width == other.width && height == other.height;
+        }
+
+        @Override
+        public int hashCode() {
+            return (System.identityHashCode(logo) * 31 + width) * 31 + height;
+        }
+    }
+
+    /**
+     * One file to export
+     */
+    public static final class Job {
+        private final Logo logo;
+        private final String baseName;
+        private final int width;
+        private final int height;
+        private final Bitmap.CompressFormat format;
+        private final int quality;
+
+        /**
+         * @param logo Logo to export
+         * @param baseName File name without size or extension
+         * @param width Output width in pixels
+         * @param height Output height in pixels
+         * @param format Output format
+         * @param quality Quality hint for lossy formats, 0 to 100
+         * @throws IllegalArgumentException If the size is not positive or the quality is out of range
+         */
+        public Job(Logo logo, String baseName, int width, int height,
+                   Bitmap.CompressFormat format, int quality) {
+            if (width <= 0 || height <= 0) {
+                throw new IllegalArgumentException("Export size must be positive: " + width + "x" + height);
+            }
+            if (quality < 0 || quality > 100) {
+                throw new IllegalArgumentException("Quality must be between 0 and 100: " + quality);
+            }
+            this.logo = logo;
+            this.baseName = baseName;
+            this.width = width;
+            this.height = height;
+            this.format = format;
+            this.quality = quality;
+        }
+
+        public Logo getLogo() {
+            return logo;
+        }
+
+        public int getWidth() {
+            return width;
+        }
+
+        public int getHeight() {
+            return height;
+        }
+
+        public Bitmap.CompressFormat getFormat() {
+            return format;
+        }
+
+        public int getQuality() {
+            return quality;
+        }
+
+        /**
+         * Get the name of the exported file, including size and extension
+         */
+        public String getFileName() {
+            return baseName + "_" + width + "x" + height + extension(format);
+        }
+    }
+
+    /**
+     * Outcome of one job
+     */
+    public static final class Result {
+        private final Job job;
+        private final String path;
+        private final long byteSize;
+        private final long renderMillis;
+        private final long encodeMillis;
+        private final String error;
+
+        Result(Job job, String path, long byteSize, long renderMillis, long encodeMillis, String error) {
+            this.job = job;
+            this.path = path;
+            this.byteSize = byteSize;
+            this.renderMillis = renderMillis;
+            this.encodeMillis = encodeMillis;
+            this.error = error;
+        }
+
+        public Job getJob() {
+            return job;
+        }
+
+        /**
+         * Get the path of the exported file
+         * @return The path, or null if the job failed or was cancelled
+         */
+        public String getPath() {
+            return path;
+        }
+
+        public long getByteSize() {
+            return byteSize;
+        }
+
+        /**
+         * Get the time spent rendering the logo at this size, shared by all formats of the size
+         */
+        public long getRenderMillis() {
+            return renderMillis;
+        }
+
+        public long getEncodeMillis() {
+            return encodeMillis;
+        }
+
+        /**
+         * Get why the job did not produce a file
+         * @return The reason, or null on success
+         */
+        public String getError() {
+            return error;
+        }
+    }
+
+    /**
+     * Receives the progress of a batch, on the main thread
+     */
+    public interface Listener {
+        /**
+         * Called after each job, whether it succeeded, failed or was cancelled
+         * @param completed Jobs finished so far
+         * @param total Jobs in the batch
+         */
+        void onProgress(int completed, int total);
+
+        /**
+         * Called once all jobs are finished
+         * @param results Result of every job, in the order the jobs were given
+         * @param manifestPath Path of the written manifest, or null if it could not be written
+         * @param cancelled True if the batch was cancelled
+         */
+        void onFinished(List<Result> results, String manifestPath, boolean cancelled);
+    }
+}
@@ -0,0 +1,150 @@
+package com.logomaker.app.export;
+
+/**
+ * Counts how often each ARGB color occurs, in an open-addressing hash table
+ * of primitive arrays. After quantizing, each color can also hold the index
+ * of the palette entry it maps to.
+ */
+class ColorHistogram {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private int[] keys = new int[INITIAL_CAPACITY];
+    private int[] counts = new int[INITIAL_CAPACITY];
+    private int[] values = new int[INITIAL_CAPACITY];
+    private boolean[] used = new boolean[INITIAL_CAPACITY];
+    private int size;
+
+    /**
+     * Count a row of colors
+     * @param pixels Unpremultiplied ARGB colors
+     * @param offset Index of the first color
+     * @param length Number of colors
+     */
+    void add(int[] pixels, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            add(normalize(pixels[i]));
+        }
+    }
+
+    /**
+     * Get the number of distinct colors
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Copy the distinct colors and their counts into dense arrays
+     * @param colorsOut Receives the colors, at least {@link #size()} long
+     * @param countsOut Receives the counts, at least {@link #size()} long
+     */
+    void copyTo(int[] colorsOut, int[] countsOut) {
+        int n = 0;
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (used[slot]) {
+                colorsOut[n] = keys[slot];
+                countsOut[n] = counts[slot];
+                n++;
+            }
+        }
+    }
+
+    /**
+     * Store the palette index of each color
+     * @param colors Colors, as returned by {@link #copyTo(int[], int[])} in any order
+     * @param paletteIndices Palette index for each color
+     */
+    void assign(int[] colors, int[] paletteIndices) {
+        for (int i = 0; i < colors.length; i++) {
+            int slot = find(colors[i]);
+            if (slot >= 0) {
+                values[slot] = paletteIndices[i];
+            }
+        }
+    }
+
+    /**
+     * Get the palette index stored for a color
+     * @param color Unpremultiplied ARGB color
+     * @return The palette index, or -1 if the color was never counted
+     */
+    int lookup(int color) {
+        int slot = find(normalize(color));
+        return slot >= 0 ? values[slot] : -1;
+    }
+
+    /**
+     * Fully transparent pixels all look the same, whatever their color channels
+     */
+    static int normalize(int color) {
+        return (color >>> 24) == 0 ? 0 : color;
+    }
+
+    private void add(int color) {
+        int mask = keys.length - 1;
+        int slot = hash(color) & mask;
+        while (used[slot]) {
+            if (keys[slot] == color) {
+                counts[slot]++;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        used[slot] = true;
+        keys[slot] = color;
+        counts[slot] = 1;
+        size++;
+
+        // Keep the table at most half full so probes stay short
+        if (size * 2 > keys.length) {
+            grow();
+        }
+    }
+
+    private int find(int color) {
+        int mask = keys.length - 1;
+        int slot = hash(color) & mask;
+        while (used[slot]) {
+            if (keys[slot] == color) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        int[] oldCounts = counts;
+        int[] oldValues = values;
+        boolean[] oldUsed = used;
+
+        int capacity = oldKeys.length * 2;
+        keys = new int[capacity];
+        counts = new int[capacity];
+        values = new int[capacity];
+        used = new boolean[capacity];
+
+        int mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (!oldUsed[i]) {
+                continue;
+            }
+            int slot = hash(oldKeys[i]) & mask;
+            while (used[slot]) {
+                slot = (slot + 1) & mask;
+            }
+            used[slot] = true;
+            keys[slot] = oldKeys[i];
+            counts[slot] = oldCounts[i];
+            values[slot] = oldValues[i];
+        }
+    }
+
+    private static int hash(int color) {
+        // Spread the channels so similar colors land in different slots
+        int h = color * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,186 @@
+package com.logomaker.app.export;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+
+import com.logomaker.app.render.DisplayList;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Exports a logo as a set of square PNG icons, such as favicons and app
+ * icons. The logo is rendered once at the largest size and every smaller
+ * size is derived from it by repeated 2x2 box-filter halving in a single
+ * pixel buffer, with a final bilinear step for sizes that are not a power
+ * of two below the largest. Files are written in parallel while the next
+ * sizes are being reduced.
+ */
+public final class IconPackExporter {
+
+    /** Sizes below this can be re-rendered instead of reduced, see {@link #export} */
+    public static final int HINTING_MAX_SIZE = 64;
+
+    private IconPackExporter() {
+    }
+
+    /**
+     * Export an icon pack into its own folder of the LogoMaker directory. This
+     * blocks until every file is written, so call it off the main thread.
+     * @param commands Snapshot of the logo's display list, taken on the main
+     *                 thread; the logo is fitted and centered in each square icon
+     * @param packName Name of the folder and prefix of the file names
+     * @param sizes Edge lengths of the icons in pixels
+     * @param hintSmallSizes True to render sizes below {@link #HINTING_MAX_SIZE}
+     *                       directly, which keeps thin strokes and small text legible
+     * @return Paths of the exported files in the order of the sizes, null for
+     *         sizes that failed
+     */
+    public static List<String> export(Context context, DisplayList commands, String packName, int[] sizes,
+                                      boolean hintSmallSizes) {
+        File directory = new File(new File(context.getExternalFilesDir(null), "LogoMaker"), packName);
+        if (!directory.exists()) {
+            directory.mkdirs();
+        }
+
+        int[] descending = sizes.clone();
+        Arrays.sort(descending);
+        int largest = descending[descending.length - 1];
+
+        ExecutorService writers = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        Future<?>[] writes = new Future<?>[sizes.length];
+        String[] paths = new String[sizes.length];
+        try {
+            // One buffer holds the current level, each halving shrinks it in place
+            Bitmap full = render(commands, largest);
+            int[] pixels = new int[largest * largest];
+            full.getPixels(pixels, 0, largest, 0, 0, largest, largest);
+            full.recycle();
+            int level = largest;
+
+            for (int i = descending.length - 1; i >= 0; i--) {
+                int size = descending[i];
+                if (i < descending.length - 1 && size == descending[i + 1]) {
+                    continue;
+                }
+                while (level / 2 >= size) {
+                    halve(pixels, level);
+                    level /= 2;
+                }
+
+                Bitmap icon;
+                if (hintSmallSizes && size < HINTING_MAX_SIZE) {
+                    icon = render(commands, size);
+                } else {
+                    icon = Bitmap.createBitmap(pixels, level, level, Bitmap.Config.ARGB_8888);
+                    if (level != size) {
+                        // Less than 2x left, which bilinear filtering handles well
+                        Bitmap scaled = Bitmap.createScaledBitmap(icon, size, size, true);
+                        icon.recycle();
+                        icon = scaled;
+                    }
+                }
+
+                File file = new File(directory, packName + "_" + size + ".png");
+                Bitmap finalIcon = icon;
+                Future<?> write = writers.submit(() -> write(finalIcon, file));
+                for (int j = 0; j < sizes.length; j++) {
+                    if (sizes[j] == size) {
+                        writes[j] = write;
+                        paths[j] = file.getAbsolutePath();
+                    }
+                }
+            }
+
+            for (int j = 0; j < sizes.length; j++) {
+                try {
+                    writes[j].get();
+                } catch (ExecutionException e) {
+                    e.getCause().printStackTrace();
+                    paths[j] = null;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            Arrays.fill(paths, null);
+        } finally {
+            writers.shutdown();
+        }
+        return Arrays.asList(paths);
+    }
+
+    /**
+     * Render the logo fitted and centered in a square
+     */
+    private static Bitmap render(DisplayList commands, int size) {
+        int width = commands.getLogoWidth();
+        int height = commands.getLogoHeight();
+        float scale = Math.min((float) size / width, (float) size / height);
+        Bitmap bitmap = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        canvas.drawColor(commands.getBackgroundColor());
+        canvas.translate((size - width * scale) / 2, (size - height * scale) / 2);
+        canvas.scale(scale, scale);
+        commands.replay(canvas, scale, null, null);
+        return bitmap;
+    }
+
+    /**
+     * Halve a square image by averaging each 2x2 block, writing the result to
+     * the start of the same array. Every output pixel is written at or before
+     * the first pixel it reads, so no second buffer is needed. Colors are
+     * averaged premultiplied so transparent pixels don't darken edges.
+     * @param pixels Unpremultiplied ARGB pixels, row by row
+     * @param size Edge length of the image
+     */
+    private static void halve(int[] pixels, int size) {
+        int half = size / 2;
+        for (int y = 0; y < half; y++) {
+            int top = y * 2 * size;
+            int bottom = top + size;
+            for (int x = 0; x < half; x++) {
+                int a = 0, r = 0, g = 0, b = 0;
+                for (int k = 0; k < 4; k++) {
+                    int color = pixels[(k < 2 ? top : bottom) + x * 2 + (k & 1)];
+                    int alpha = color >>> 24;
+                    a += alpha;
+                    r += ((color >> 16) & 0xff) * alpha;
+                    g += ((color >> 8) & 0xff) * alpha;
+                    b += (color & 0xff) * alpha;
+                }
+                int color = 0;
+                if (a > 0) {
+                    color = ((a + 2) / 4) << 24
+                            | ((r + a / 2) / a) << 16
+                            | ((g + a / 2) / a) << 8
+                            | ((b + a / 2) / a);
+                }
+                pixels[y * half + x] = color;
+            }
+        }
+    }
+
+    private static Void write(Bitmap icon, File file) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+            if (!icon.compress(Bitmap.CompressFormat.PNG, 100, out)) {
+                throw new IOException("Could not encode " + file.getName());
+            }
+        } catch (IOException e) {
+            file.delete();
+            throw e;
+        } finally {
+            icon.recycle();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,161 @@
+package com.logomaker.app.export;
+
+import android.graphics.Bitmap;
+
+import com.logomaker.app.render.DisplayList;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+/**
+ * Writes a palette-based PNG row by row, packing pixels at 1, 2, 4 or 8 bits
+ * depending on the palette size. Translucent palette entries are described
+ * by a tRNS chunk.
+ */
+public class IndexedPngWriter implements Closeable {
+
+    private static final byte[] PLTE = {'P', 'L', 'T', 'E'};
+    private static final byte[] TRNS = {'t', 'R', 'N', 'S'};
+
+    private final PngStreamWriter png;
+    private final ColorHistogram histogram;
+    private final PaletteQuantizer.Palette palette;
+    private final int width;
+    private final int bitDepth;
+    private final int[] rowPixels;
+
+    /**
+     * Render a logo in strips and write it as an indexed PNG. The logo is
+     * rendered twice, once to count its colors and once to write them, so
+     * memory use stays at one strip plus the color counts.
+     * @param commands Snapshot of the logo's display list to export
+     * @param channel Channel to write to, positioned at the start of the file
+     * @param outputWidth Width of the image
+     * @param outputHeight Height of the image
+     * @param stripHeight Rows rendered at a time
+     * @param tolerance Largest difference allowed on any channel between a
+     *                  pixel and its palette entry, 0 for exact palettes only
+     * @return False if the logo needs more colors than the tolerance allows; nothing is written then
+     * @throws IOException If writing fails
+     */
+    public static boolean writeLogo(DisplayList commands, FileChannel channel, int outputWidth, int outputHeight,
+                                    int stripHeight, int tolerance) throws IOException {
+        ColorHistogram histogram = new ColorHistogram();
+        int[] rowPixels = new int[outputWidth];
+        commands.renderTiles(outputWidth, outputHeight, outputWidth, stripHeight,
+                (strip, left, top, width, height) -> {
+                    for (int y = 0; y < height; y++) {
+                        strip.getPixels(rowPixels, 0, outputWidth, 0, y, outputWidth, 1);
+                        histogram.add(rowPixels, 0, outputWidth);
+                    }
+                });
+
+        PaletteQuantizer.Palette palette = PaletteQuantizer.quantize(histogram, tolerance);
+        if (palette == null) {
+            return false;
+        }
+
+        try (IndexedPngWriter writer = new IndexedPngWriter(channel, outputWidth, outputHeight, histogram, palette)) {
+            // The tile callback can't throw, so the first failure is kept and rethrown
+            IOException[] failure = new IOException[1];
+            commands.renderTiles(outputWidth, outputHeight, outputWidth, stripHeight,
+                    (strip, left, top, width, height) -> {
+                        if (failure[0] != null) return;
+                        try {
+                            writer.writeRows(strip, height);
+                        } catch (IOException e) {
+                            failure[0] = e;
+                        }
+                    });
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+            writer.finish();
+        }
+        return true;
+    }
+
+    /**
+     * Start writing an indexed PNG
+     * @param channel Channel to write to, positioned at the start of the file
+     * @param width Image width
+     * @param height Image height
+     * @param histogram Colors of the image, with palette indices assigned by the quantizer
+     * @param palette Palette built by the quantizer
+     * @throws IOException If the header cannot be written
+     */
+    IndexedPngWriter(FileChannel channel, int width, int height, ColorHistogram histogram,
+                     PaletteQuantizer.Palette palette) throws IOException {
+        this.width = width;
+        this.histogram = histogram;
+        this.palette = palette;
+        this.bitDepth = palette.getBitDepth();
+        this.rowPixels = new int[width];
+        this.png = new PngStreamWriter(channel, width, height, bitDepth,
+                PngStreamWriter.COLOR_TYPE_INDEXED, bitDepth, Deflater.DEFAULT_COMPRESSION);
+
+        byte[] entries = new byte[palette.size() * 3];
+        for (int i = 0; i < palette.size(); i++) {
+            int color = palette.getColor(i);
+            entries[i * 3] = (byte) (color >> 16);
+            entries[i * 3 + 1] = (byte) (color >> 8);
+            entries[i * 3 + 2] = (byte) color;
+        }
+        png.writeHeaderChunk(PLTE, entries);
+
+        // Entries after the last translucent one are opaque and can be left out
+        int translucent = palette.getTranslucentCount();
+        if (translucent > 0) {
+            byte[] alphas = new byte[translucent];
+            for (int i = 0; i < translucent; i++) {
+                alphas[i] = (byte) (palette.getColor(i) >>> 24);
+            }
+            png.writeHeaderChunk(TRNS, alphas);
+        }
+    }
+
+    /**
+     * Write rows taken from the top of a bitmap that is at least as wide as the image
+     * @param strip Bitmap holding the rows
+     * @param rowCount Number of rows to write
+     * @throws IOException If writing fails
+     */
+    public void writeRows(Bitmap strip, int rowCount) throws IOException {
+        for (int y = 0; y < rowCount; y++) {
+            strip.getPixels(rowPixels, 0, width, 0, y, width, 1);
+            byte[] row = png.getRowBuffer();
+            Arrays.fill(row, (byte) 0);
+
+            int pixelsPerByte = 8 / bitDepth;
+            for (int x = 0; x < width; x++) {
+                int index = histogram.lookup(rowPixels[x]);
+                if (index < 0) {
+                    index = palette.findNearest(ColorHistogram.normalize(rowPixels[x]));
+                }
+                // Pixels fill each byte from the most significant bits down
+                int shift = 8 - bitDepth * (x % pixelsPerByte + 1);
+                row[x / pixelsPerByte] |= (byte) (index << shift);
+            }
+            png.writeRawRow();
+        }
+    }
+
+    /**
+     * Finish the image once all rows were written
+     * @throws IOException If writing fails
+     */
+    public void finish() throws IOException {
+        png.finish();
+    }
+
+    /**
+     * Release the compressor. The channel is left open.
+     */
+    @Override
+    public void close() {
+        png.close();
+    }
+}
@@ -0,0 +1,320 @@
+package com.logomaker.app.export;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Reduces the colors of an image to a palette of at most 256 entries.
+ * Images that already use few enough colors keep them exactly; others are
+ * quantized with a median cut that splits independent boxes in parallel.
+ */
+public final class PaletteQuantizer {
+
+    /** Largest palette an indexed PNG can hold */
+    public static final int MAX_COLORS = 256;
+
+    // Median cut depth giving MAX_COLORS boxes
+    private static final int MAX_DEPTH = 8;
+
+    // Boxes with fewer colors than this are split on the current thread
+    private static final int PARALLEL_THRESHOLD = 4096;
+
+    private PaletteQuantizer() {
+    }
+
+    /**
+     * Build a palette for the counted colors and store each color's palette
+     * index in the histogram
+     * @param histogram Colors of the image
+     * @param tolerance Largest difference allowed on any channel between a
+     *                  color and its palette entry, 0 for exact palettes only
+     * @return The palette, or null if it can't stay within the tolerance
+     */
+    static Palette quantize(ColorHistogram histogram, int tolerance) {
+        int size = histogram.size();
+        int[] colors = new int[size];
+        int[] counts = new int[size];
+        histogram.copyTo(colors, counts);
+
+        int[] paletteColors;
+        int[] assignment = new int[size];
+        if (size <= MAX_COLORS) {
+            // Few enough colors to keep every one of them
+            paletteColors = colors.clone();
+            for (int i = 0; i < size; i++) {
+                assignment[i] = i;
+            }
+        } else {
+            if (tolerance <= 0) {
+                return null;
+            }
+            paletteColors = medianCut(colors, counts, assignment, tolerance);
+            if (paletteColors == null) {
+                return null;
+            }
+        }
+
+        Palette palette = new Palette(paletteColors);
+        int[] order = palette.sortTranslucentFirst();
+        for (int i = 0; i < size; i++) {
+            assignment[i] = order[assignment[i]];
+        }
+        histogram.assign(colors, assignment);
+        return palette;
+    }
+
+    /**
+     * Split the colors into up to MAX_COLORS boxes and average each box.
+     * The color and count arrays are reordered in place.
+     * @return Palette colors, or null if a box strays beyond the tolerance
+     */
+    private static int[] medianCut(int[] colors, int[] counts, int[] assignment, int tolerance) {
+        int boxCount = 1 << MAX_DEPTH;
+        int[] boxStarts = new int[boxCount];
+        int[] boxEnds = new int[boxCount];
+
+        ForkJoinPool pool = new ForkJoinPool();
+        try {
+            pool.invoke(new SplitTask(colors, counts, 0, colors.length, MAX_DEPTH, 0, boxStarts, boxEnds));
+        } finally {
+            pool.shutdown();
+        }
+
+        int[] palette = new int[boxCount];
+        int paletteSize = 0;
+        for (int box = 0; box < boxCount; box++) {
+            int start = boxStarts[box];
+            int end = boxEnds[box];
+            if (end <= start) {
+                continue;
+            }
+
+            // Weighted average of the box
+            long a = 0, r = 0, g = 0, b = 0, total = 0;
+            for (int i = start; i < end; i++) {
+                int color = colors[i];
+                long weight = counts[i];
+                a += weight * (color >>> 24);
+                r += weight * ((color >> 16) & 0xff);
+                g += weight * ((color >> 8) & 0xff);
+                b += weight * (color & 0xff);
+                total += weight;
+            }
+            int mean = (int) ((a + total / 2) / total) << 24
+                    | (int) ((r + total / 2) / total) << 16
+                    | (int) ((g + total / 2) / total) << 8
+                    | (int) ((b + total / 2) / total);
+
+            for (int i = start; i < end; i++) {
+                if (channelDistance(colors[i], mean) > tolerance) {
+                    return null;
+                }
+                assignment[i] = paletteSize;
+            }
+            palette[paletteSize++] = mean;
+        }
+
+        int[] result = new int[paletteSize];
+        System.arraycopy(palette, 0, result, 0, paletteSize);
+        return result;
+    }
+
+    /**
+     * Largest difference between two colors on any channel
+     */
+    static int channelDistance(int color1, int color2) {
+        int distance = 0;
+        for (int shift = 0; shift < 32; shift += 8) {
+            int d = Math.abs(((color1 >>> shift) & 0xff) - ((color2 >>> shift) & 0xff));
+            if (d > distance) {
+                distance = d;
+            }
+        }
+        return distance;
+    }
+
+    /**
+     * Splits one box of colors at the weighted median of its widest channel,
+     * then splits both halves in parallel. Boxes never overlap in the arrays,
+     * so tasks can reorder their own range freely.
+     */
+    private static class SplitTask extends RecursiveAction {
+        private final int[] colors;
+        private final int[] counts;
+        private final int start;
+        private final int end;
+        private final int depth;
+        private final int box;
+        private final int[] boxStarts;
+        private final int[] boxEnds;
+
+        SplitTask(int[] colors, int[] counts, int start, int end, int depth, int box,
+                  int[] boxStarts, int[] boxEnds) {
+            this.colors = colors;
+            this.counts = counts;
+            this.start = start;
+            this.end = end;
+            this.depth = depth;
+            this.box = box;
+            this.boxStarts = boxStarts;
+            this.boxEnds = boxEnds;
+        }
+
+        @Override
+        protected void compute() {
+            // Find the channel with the widest range
+            int[] min = {255, 255, 255, 255};
+            int[] max = {0, 0, 0, 0};
+            for (int i = start; i < end; i++) {
+                int color = colors[i];
+                for (int channel = 0; channel < 4; channel++) {
+                    int value = (color >>> (channel * 8)) & 0xff;
+                    if (value < min[channel]) min[channel] = value;
+                    if (value > max[channel]) max[channel] = value;
+                }
+            }
+            int shift = 0;
+            int widest = -1;
+            for (int channel = 0; channel < 4; channel++) {
+                if (max[channel] - min[channel] > widest) {
+                    widest = max[channel] - min[channel];
+                    shift = channel * 8;
+                }
+            }
+
+            if (depth == 0 || widest == 0) {
+                // Boxes are numbered so that a box and the boxes split from it share a prefix
+                int index = box << depth;
+                boxStarts[index] = start;
+                boxEnds[index] = end;
+                return;
+            }
+
+            // Weighted median along the widest channel
+            long[] weights = new long[256];
+            long total = 0;
+            for (int i = start; i < end; i++) {
+                weights[(colors[i] >>> shift) & 0xff] += counts[i];
+                total += counts[i];
+            }
+            int lowMax = min[shift / 8];
+            long seen = weights[lowMax];
+            while (seen * 2 < total && lowMax < max[shift / 8] - 1) {
+                lowMax++;
+                seen += weights[lowMax];
+            }
+
+            // Colors up to the median go to the first half
+            int split = start;
+            for (int i = start; i < end; i++) {
+                if (((colors[i] >>> shift) & 0xff) <= lowMax) {
+                    int color = colors[i];
+                    colors[i] = colors[split];
+                    colors[split] = color;
+                    int count = counts[i];
+                    counts[i] = counts[split];
+                    counts[split] = count;
+                    split++;
+                }
+            }
+
+            SplitTask low = new SplitTask(colors, counts, start, split, depth - 1, box * 2, boxStarts, boxEnds);
+            SplitTask high = new SplitTask(colors, counts, split, end, depth - 1, box * 2 + 1, boxStarts, boxEnds);
+            if (end - start < PARALLEL_THRESHOLD) {
+                low.compute();
+                high.compute();
+            } else {
+                invokeAll(low, high);
+            }
+        }
+    }
+
+    /**
+     * Colors of an indexed image, in palette order
+     */
+    public static final class Palette {
+        private final int[] colors;
+
+        Palette(int[] colors) {
+            this.colors = colors;
+        }
+
+        /**
+         * Get the number of palette entries
+         */
+        public int size() {
+            return colors.length;
+        }
+
+        /**
+         * Get a palette entry
+         * @param index Index of the entry
+         * @return Unpremultiplied ARGB color
+         */
+        public int getColor(int index) {
+            return colors[index];
+        }
+
+        /**
+         * Get the smallest PNG bit depth that can index every entry
+         * @return 1, 2, 4 or 8
+         */
+        public int getBitDepth() {
+            if (colors.length <= 2) return 1;
+            if (colors.length <= 4) return 2;
+            if (colors.length <= 16) return 4;
+            return 8;
+        }
+
+        /**
+         * Get the number of leading entries that are not fully opaque, which
+         * is how many alpha values the tRNS chunk needs
+         */
+        public int getTranslucentCount() {
+            int count = 0;
+            while (count < colors.length && (colors[count] >>> 24) != 0xff) {
+                count++;
+            }
+            return count;
+        }
+
+        /**
+         * Find the closest entry for a color that was not counted
+         * @param color Unpremultiplied ARGB color
+         * @return Index of the closest entry
+         */
+        public int findNearest(int color) {
+            int best = 0;
+            int bestDistance = Integer.MAX_VALUE;
+            for (int i = 0; i < colors.length; i++) {
+                int distance = channelDistance(color, colors[i]);
+                if (distance < bestDistance) {
+                    best = i;
+                    bestDistance = distance;
+                }
+            }
+            return best;
+        }
+
+        /**
+         * Move entries with transparency to the front, keeping the tRNS chunk short
+         * @return New index of each old index
+         */
+        int[] sortTranslucentFirst() {
+            int[] sorted = new int[colors.length];
+            int[] order = new int[colors.length];
+            int next = 0;
+            for (int pass = 0; pass < 2; pass++) {
+                for (int i = 0; i < colors.length; i++) {
+                    boolean opaque = (colors[i] >>> 24) == 0xff;
+                    if (opaque == (pass == 1)) {
+                        order[i] = next;
+                        sorted[next++] = colors[i];
+                    }
+                }
+            }
+            System.arraycopy(sorted, 0, colors, 0, colors.length);
+            return order;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.logomaker.app.export;
+
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.pdf.PdfDocument;
+
+import com.logomaker.app.model.Logo;
+import com.logomaker.app.model.LogoCodec;
+import com.logomaker.app.model.LogoElement;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes logos as PDF pages of any physical size. Elements are drawn with
+ * their regular canvas calls onto the page canvas, which records them as
+ * PDF drawing operators, so shapes and text stay vector and no page-sized
+ * bitmap is ever allocated.
+ */
+public class PdfExporter implements Closeable {
+
+    /** PDF user space units per inch */
+    public static final float POINTS_PER_INCH = 72f;
+
+    /** PDF user space units per millimeter */
+    public static final float POINTS_PER_MM = POINTS_PER_INCH / 25.4f;
+
+    private final PdfDocument document = new PdfDocument();
+    private final Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private int pageCount;
+
+    /**
+     * Add a page showing a logo scaled to fit and centered. The logo's elements
+     * are drawn directly, so call this on the main thread for a logo in the
+     * editor, or pass a copy decoded with {@link LogoCodec} to draw on another
+     * thread.
+     * @param logo Logo to draw, not changed while drawing
+     * @param pageWidth Page width in points
+     * @param pageHeight Page height in points
+     */
+    public void addPage(Logo logo, float pageWidth, float pageHeight) {
+        int width = Math.max(1, Math.round(pageWidth));
+        int height = Math.max(1, Math.round(pageHeight));
+        PdfDocument.PageInfo info = new PdfDocument.PageInfo.Builder(width, height, ++pageCount).create();
+        PdfDocument.Page page = document.startPage(info);
+        Canvas canvas = page.getCanvas();
+
+        float scale = Math.min((float) width / logo.getWidth(), (float) height / logo.getHeight());
+        canvas.translate((width - logo.getWidth() * scale) / 2, (height - logo.getHeight() * scale) / 2);
+        canvas.scale(scale, scale);
+
+        paint.setStyle(Paint.Style.FILL);
+        paint.setColor(logo.getBackgroundColor());
+        canvas.drawRect(0, 0, logo.getWidth(), logo.getHeight(), paint);
+
+        // The page has no pixels, so elements are drawn at their exact geometry
+        for (LogoElement element : logo.getElements()) {
+            element.draw(canvas, paint, Float.POSITIVE_INFINITY);
+        }
+
+        document.finishPage(page);
+    }
+
+    /**
+     * Get the number of pages added so far
+     */
+    public int getPageCount() {
+        return pageCount;
+    }
+
+    /**
+     * Write the document. Finished pages are kept as drawing commands until
+     * this call, so memory use depends on the logo, not the page size.
+     * @param out Stream to write to; it is not closed
+     * @throws IOException If writing fails
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        document.writeTo(out);
+    }
+
+    /**
+     * Release the document
+     */
+    @Override
+    public void close() {
+        document.close();
+    }
+}
@@ -0,0 +1,322 @@
+package com.logomaker.app.export;
+
+import android.graphics.Bitmap;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes a PNG image row by row to a file channel. Rows are filtered and
+ * deflated as they arrive, so memory use depends on the image width only,
+ * never on its height.
+ */
+public class PngStreamWriter implements Closeable {
+
+    private static final byte[] SIGNATURE = {(byte) 137, 'P', 'N', 'G', '\r', '\n', 26, '\n'};
+    private static final byte[] IHDR = {'I', 'H', 'D', 'R'};
+    private static final byte[] IDAT = {'I', 'D', 'A', 'T'};
+    private static final byte[] IEND = {'I', 'E', 'N', 'D'};
+
+    // Size of the IDAT chunks the deflated data is split into
+    private static final int IDAT_SIZE = 64 * 1024;
+
+    // Color types
+    static final int COLOR_TYPE_INDEXED = 3;
+    static final int COLOR_TYPE_RGBA = 6;
+
+    // Row filter types
+    private static final int FILTER_NONE = 0;
+    private static final int FILTER_SUB = 1;
+    private static final int FILTER_UP = 2;
+    private static final int FILTER_AVERAGE = 3;
+    private static final int FILTER_PAETH = 4;
+
+    private final FileChannel channel;
+    private final int width;
+    private final int height;
+    private final int bytesPerPixel;
+    private final int rowBytes;
+
+    private final Deflater deflater;
+    private final CRC32 crc = new CRC32();
+    private final ByteBuffer chunkHeader = ByteBuffer.allocate(8);
+    private final ByteBuffer chunkFooter = ByteBuffer.allocate(4);
+    private final byte[] deflated = new byte[IDAT_SIZE];
+    private int deflatedLength;
+
+    // Unfiltered bytes of the previous and current row, and one candidate per filter type
+    private byte[] previousRow;
+    private byte[] currentRow;
+    private final byte[][] candidates = new byte[5][];
+
+    private int[] rowPixels;
+    private int rowsWritten;
+    private boolean finished;
+
+    /**
+     * Start writing an 8-bit RGBA PNG
+     * @param channel Channel to write to, positioned at the start of the file
+     * @param width Image width
+     * @param height Image height
+     * @throws IOException If the header cannot be written
+     */
+    public PngStreamWriter(FileChannel channel, int width, int height) throws IOException {
+        this(channel, width, height, 8, COLOR_TYPE_RGBA, 32, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * Start writing a PNG with any pixel format
+     * @param bitDepth Bits per sample
+     * @param colorType PNG color type
+     * @param bitsPerPixel Bits per pixel, used to size rows
+     * @param compressionLevel Deflater compression level
+     */
+    PngStreamWriter(FileChannel channel, int width, int height, int bitDepth, int colorType,
+                    int bitsPerPixel, int compressionLevel) throws IOException {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Image size must be positive: " + width + "x" + height);
+        }
+        this.channel = channel;
+        this.width = width;
+        this.height = height;
+        // Filters look back one whole pixel, or one byte for packed formats
+        this.bytesPerPixel = Math.max(1, bitsPerPixel / 8);
+        this.rowBytes = (width * bitsPerPixel + 7) / 8;
+        this.deflater = new Deflater(compressionLevel);
+
+        previousRow = new byte[rowBytes];
+        currentRow = new byte[rowBytes];
+        for (int i = 0; i < candidates.length; i++) {
+            candidates[i] = new byte[rowBytes + 1];
+            candidates[i][0] = (byte) i;
+        }
+
+        writeFully(ByteBuffer.wrap(SIGNATURE));
+        ByteBuffer header = ByteBuffer.allocate(13);
+        header.putInt(width);
+        header.putInt(height);
+        header.put((byte) bitDepth);
+        header.put((byte) colorType);
+        header.put((byte) 0); // Deflate compression
+        header.put((byte) 0); // Adaptive filtering
+        header.put((byte) 0); // No interlacing
+        writeChunk(IHDR, header.array(), 0, header.capacity());
+    }
+
+    /**
+     * Write rows taken from the top of a bitmap that is at least as wide as the image
+     * @param strip Bitmap holding the rows
+     * @param rowCount Number of rows to write
+     * @throws IOException If writing fails
+     */
+    public void writeRows(Bitmap strip, int rowCount) throws IOException {
+        if (rowPixels == null) {
+            rowPixels = new int[width];
+        }
+        for (int y = 0; y < rowCount; y++) {
+            // Colors come back unpremultiplied, as PNG stores them
+            strip.getPixels(rowPixels, 0, width, 0, y, width, 1);
+            writeRow(rowPixels, 0);
+        }
+    }
+
+    /**
+     * Write one row of ARGB colors
+     * @param pixels Unpremultiplied ARGB colors
+     * @param offset Index of the first pixel of the row
+     * @throws IOException If writing fails
+     */
+    public void writeRow(int[] pixels, int offset) throws IOException {
+        byte[] row = currentRow;
+        for (int x = 0, i = 0; x < width; x++) {
+            int color = pixels[offset + x];
+            row[i++] = (byte) (color >> 16);
+            row[i++] = (byte) (color >> 8);
+            row[i++] = (byte) color;
+            row[i++] = (byte) (color >>> 24);
+        }
+        writeRawRow();
+    }
+
+    /**
+     * Get the buffer the next row is packed into before {@link #writeRawRow()}.
+     * The buffer changes after every row.
+     */
+    byte[] getRowBuffer() {
+        return currentRow;
+    }
+
+    /**
+     * Filter and deflate the row held in the current row buffer
+     * @throws IOException If writing fails
+     */
+    void writeRawRow() throws IOException {
+        if (rowsWritten == height) {
+            throw new IllegalStateException("All " + height + " rows were already written");
+        }
+
+        byte[] best = filterRow(currentRow, previousRow);
+        deflater.setInput(best, 0, best.length);
+        while (!deflater.needsInput()) {
+            drainDeflater();
+        }
+
+        byte[] swap = previousRow;
+        previousRow = currentRow;
+        currentRow = swap;
+        rowsWritten++;
+    }
+
+    /**
+     * Write a chunk that goes before the image data, such as a palette
+     * @param type Four-letter chunk type
+     * @param data Chunk data
+     * @throws IOException If writing fails
+     */
+    void writeHeaderChunk(byte[] type, byte[] data) throws IOException {
+        if (rowsWritten > 0) {
+            throw new IllegalStateException("Header chunks must be written before the first row");
+        }
+        writeChunk(type, data, 0, data.length);
+    }
+
+    /**
+     * Finish the image once all rows were written
+     * @throws IOException If writing fails
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        if (rowsWritten != height) {
+            throw new IllegalStateException("Only " + rowsWritten + " of " + height + " rows were written");
+        }
+
+        deflater.finish();
+        while (!deflater.finished()) {
+            drainDeflater();
+        }
+        if (deflatedLength > 0) {
+            writeChunk(IDAT, deflated, 0, deflatedLength);
+            deflatedLength = 0;
+        }
+        writeChunk(IEND, deflated, 0, 0);
+        finished = true;
+    }
+
+    /**
+     * Release the compressor. The channel is left open.
+     */
+    @Override
+    public void close() {
+        deflater.end();
+    }
+
+    /**
+     * Compute every filter for a row and pick the one whose output has the
+     * smallest sum of absolute values, the usual heuristic for compressibility
+     */
+    private byte[] filterRow(byte[] row, byte[] previous) {
+        int bpp = bytesPerPixel;
+        byte[] none = candidates[FILTER_NONE];
+        byte[] sub = candidates[FILTER_SUB];
+        byte[] up = candidates[FILTER_UP];
+        byte[] average = candidates[FILTER_AVERAGE];
+        byte[] paeth = candidates[FILTER_PAETH];
+        long noneScore = 0, subScore = 0, upScore = 0, averageScore = 0, paethScore = 0;
+
+        for (int i = 0; i < rowBytes; i++) {
+            int current = row[i] & 0xff;
+            int left = i >= bpp ? row[i - bpp] & 0xff : 0;
+            int above = previous[i] & 0xff;
+            int aboveLeft = i >= bpp ? previous[i - bpp] & 0xff : 0;
+
+            byte n = (byte) current;
+            byte s = (byte) (current - left);
+            byte u = (byte) (current - above);
+            byte a = (byte) (current - ((left + above) >> 1));
+            byte p = (byte) (current - paethPredictor(left, above, aboveLeft));
+
+            none[i + 1] = n;
+            sub[i + 1] = s;
+            up[i + 1] = u;
+            average[i + 1] = a;
+            paeth[i + 1] = p;
+
+            noneScore += Math.abs(n);
+            subScore += Math.abs(s);
+            upScore += Math.abs(u);
+            averageScore += Math.abs(a);
+            paethScore += Math.abs(p);
+        }
+
+        byte[] best = none;
+        long bestScore = noneScore;
+        if (subScore < bestScore) {
+            best = sub;
+            bestScore = subScore;
+        }
+        if (upScore < bestScore) {
+            best = up;
+            bestScore = upScore;
+        }
+        if (averageScore < bestScore) {
+            best = average;
+            bestScore = averageScore;
+        }
+        if (paethScore < bestScore) {
+            best = paeth;
+        }
+        return best;
+    }
+
+    private static int paethPredictor(int left, int above, int aboveLeft) {
+        int estimate = left + above - aboveLeft;
+        int distanceLeft = Math.abs(estimate - left);
+        int distanceAbove = Math.abs(estimate - above);
+        int distanceAboveLeft = Math.abs(estimate - aboveLeft);
+        if (distanceLeft <= distanceAbove && distanceLeft <= distanceAboveLeft) {
+            return left;
+        }
+        return distanceAbove <= distanceAboveLeft ? above : aboveLeft;
+    }
+
+    /**
+     * Move deflated bytes into the chunk buffer, writing an IDAT chunk whenever it fills up
+     */
+    private void drainDeflater() throws IOException {
+        deflatedLength += deflater.deflate(deflated, deflatedLength, IDAT_SIZE - deflatedLength);
+        if (deflatedLength == IDAT_SIZE) {
+            writeChunk(IDAT, deflated, 0, deflatedLength);
+            deflatedLength = 0;
+        }
+    }
+
+    private void writeChunk(byte[] type, byte[] data, int offset, int length) throws IOException {
+        crc.reset();
+        crc.update(type, 0, type.length);
+        crc.update(data, offset, length);
+
+        chunkHeader.clear();
+        chunkHeader.putInt(length);
+        chunkHeader.put(type);
+        chunkHeader.flip();
+        writeFully(chunkHeader);
+        writeFully(ByteBuffer.wrap(data, offset, length));
+
+        chunkFooter.clear();
+        chunkFooter.putInt((int) crc.getValue());
+        chunkFooter.flip();
+        writeFully(chunkFooter);
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,432 @@
+package com.logomaker.app.export;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.Path;
+import android.graphics.PathMeasure;
+import android.graphics.Typeface;
+import android.text.Layout;
+import android.util.Base64;
+import android.util.Base64OutputStream;
+
+import com.logomaker.app.model.ImageElement;
+import com.logomaker.app.model.Logo;
+import com.logomaker.app.model.LogoElement;
+import com.logomaker.app.model.ShapeElement;
+import com.logomaker.app.model.TextElement;
+import com.logomaker.app.render.ShapePathCache;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+
+/**
+ * Writes a logo as SVG straight from the element model. Shapes become SVG
+ * shapes, text stays text with its font, and images are embedded as PNG or
+ * linked by URI. Nothing is rasterized except embedded images, so the cost
+ * does not depend on the output size.
+ */
+public class SvgWriter {
+
+    // Distance between the points custom paths are approximated with
+    private static final float PATH_SAMPLE_STEP = 2f;
+
+    private final Writer out;
+    private final boolean embedImages;
+
+    // Reused while writing elements
+    private final Matrix matrix = new Matrix();
+    private final float[] values = new float[9];
+    private final float[] glyph = new float[4];
+    private final int[] glyphRange = new int[2];
+    private final StringBuilder number = new StringBuilder();
+
+    /**
+     * Create an SVG writer
+     * @param out Writer the document is streamed to
+     * @param embedImages True to embed image elements as PNG data, false to
+     *                    link to their URI
+     */
+    public SvgWriter(Writer out, boolean embedImages) {
+        this.out = out;
+        this.embedImages = embedImages;
+    }
+
+    /**
+     * Write a complete SVG document. Coordinates stay in logo units; the
+     * output size only sets the document's width and height. The logo is read
+     * as it is written, so pass a copy when it may be edited on another thread.
+     * @param logo Logo to write
+     * @param outputWidth Document width in pixels
+     * @param outputHeight Document height in pixels
+     * @throws IOException If writing fails
+     */
+    public void write(Logo logo, int outputWidth, int outputHeight) throws IOException {
+        out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        out.write("<svg xmlns=\"http://www.w3.org/2000/svg\" xmlns:xlink=\"http://www.w3.org/1999/xlink\"");
+        attribute("width", outputWidth);
+        attribute("height", outputHeight);
+        out.write(" viewBox=\"0 0 ");
+        number(logo.getWidth());
+        out.write(' ');
+        number(logo.getHeight());
+        out.write("\">\n");
+
+        // Background
+        out.write("<rect width=\"100%\" height=\"100%\"");
+        paint("fill", logo.getBackgroundColor());
+        out.write("/>\n");
+
+        for (LogoElement element : logo.getElements()) {
+            writeElement(element);
+        }
+
+        out.write("</svg>\n");
+        out.flush();
+    }
+
+    private void writeElement(LogoElement element) throws IOException {
+        // Elements draw into their own box, placed by the element transform
+        element.getTransformMatrix(matrix);
+        matrix.getValues(values);
+        out.write("<g transform=\"matrix(");
+        number(values[Matrix.MSCALE_X]);
+        out.write(' ');
+        number(values[Matrix.MSKEW_Y]);
+        out.write(' ');
+        number(values[Matrix.MSKEW_X]);
+        out.write(' ');
+        number(values[Matrix.MSCALE_Y]);
+        out.write(' ');
+        number(values[Matrix.MTRANS_X]);
+        out.write(' ');
+        number(values[Matrix.MTRANS_Y]);
+        out.write(")\"");
+        if (element.getOpacity() < 255) {
+            attribute("opacity", element.getOpacity() / 255f);
+        }
+        out.write(">\n");
+
+        switch (element.getType()) {
+            case LogoElement.TYPE_SHAPE:
+                writeShape((ShapeElement) element);
+                break;
+            case LogoElement.TYPE_TEXT:
+                writeText((TextElement) element);
+                break;
+            case LogoElement.TYPE_IMAGE:
+                writeImage((ImageElement) element);
+                break;
+        }
+
+        out.write("</g>\n");
+    }
+
+    private void writeShape(ShapeElement shape) throws IOException {
+        float width = shape.getWidth();
+        float height = shape.getHeight();
+
+        switch (shape.getShapeType()) {
+            case ShapeElement.SHAPE_RECTANGLE:
+                out.write("<rect");
+                attribute("width", width);
+                attribute("height", height);
+                break;
+            case ShapeElement.SHAPE_ROUNDED_RECTANGLE: {
+                // Same corner radius the canvas drawing uses
+                float radius = Math.min(width, height) * 0.2f;
+                out.write("<rect");
+                attribute("width", width);
+                attribute("height", height);
+                attribute("rx", radius);
+                attribute("ry", radius);
+                break;
+            }
+            case ShapeElement.SHAPE_CIRCLE:
+                out.write("<circle");
+                attribute("cx", width / 2);
+                attribute("cy", height / 2);
+                attribute("r", Math.min(width, height) / 2);
+                break;
+            case ShapeElement.SHAPE_OVAL:
+                out.write("<ellipse");
+                attribute("cx", width / 2);
+                attribute("cy", height / 2);
+                attribute("rx", width / 2);
+                attribute("ry", height / 2);
+                break;
+            case ShapeElement.SHAPE_TRIANGLE:
+            case ShapeElement.SHAPE_STAR:
+            case ShapeElement.SHAPE_POLYGON:
+                out.write("<polygon points=\"");
+                points(ShapePathCache.buildVertices(shape.getShapeType(), shape.getSides(), width, height));
+                out.write('"');
+                break;
+            case ShapeElement.SHAPE_CUSTOM:
+                if (shape.getCustomPath() == null) {
+                    return;
+                }
+                out.write("<path d=\"");
+                pathData(shape.getCustomPath());
+                out.write('"');
+                break;
+            default:
+                return;
+        }
+
+        if (shape.isHasFill()) {
+            paint("fill", shape.getFillColor());
+        } else {
+            out.write(" fill=\"none\"");
+        }
+        if (shape.isHasStroke()) {
+            paint("stroke", shape.getStrokeColor());
+            attribute("stroke-width", shape.getStrokeWidth());
+        }
+        out.write("/>\n");
+    }
+
+    private void writeText(TextElement element) throws IOException {
+        String text = element.getText();
+        Layout layout = element.getLayout();
+        if (layout == null) {
+            writeTextOnPath(element, text);
+            return;
+        }
+
+        out.write("<text xml:space=\"preserve\"");
+        font(element);
+        out.write('>');
+
+        // One span per laid out line, at the position the layout gave it
+        for (int line = 0; line < layout.getLineCount(); line++) {
+            int start = layout.getLineStart(line);
+            int end = layout.getLineEnd(line);
+            while (end > start && text.charAt(end - 1) == '\n') {
+                end--;
+            }
+            out.write("<tspan");
+            attribute("x", layout.getLineLeft(line));
+            attribute("y", layout.getLineBaseline(line));
+            out.write('>');
+            escaped(text, start, end);
+            out.write("</tspan>");
+        }
+        out.write("</text>\n");
+    }
+
+    /**
+     * Write text on a path as one text element per glyph at its precomputed
+     * placement; SVG ignores transforms on spans, so each glyph needs its own
+     */
+    private void writeTextOnPath(TextElement element, String text) throws IOException {
+        for (int i = 0; i < element.getGlyphCount(); i++) {
+            element.getGlyphPlacement(i, glyph);
+            element.getGlyphRange(i, glyphRange);
+            out.write("<text xml:space=\"preserve\"");
+            font(element);
+            attribute("x", -glyph[3] / 2);
+            out.write(" y=\"0\" transform=\"translate(");
+            number(glyph[0]);
+            out.write(' ');
+            number(glyph[1]);
+            out.write(") rotate(");
+            number(glyph[2]);
+            out.write(")\">");
+            escaped(text, glyphRange[0], glyphRange[1]);
+            out.write("</text>\n");
+        }
+    }
+
+    private void font(TextElement element) throws IOException {
+        out.write(" font-family=\"");
+        String family = element.getFontFamily();
+        if (family == null) {
+            family = genericFamily(element.getTypeface());
+        }
+        escaped(family, 0, family.length());
+        out.write('"');
+        attribute("font-size", element.getTextSize());
+        if (element.isBold()) {
+            out.write(" font-weight=\"bold\"");
+        }
+        if (element.isItalic()) {
+            out.write(" font-style=\"italic\"");
+        }
+        if (element.isUnderlined()) {
+            out.write(" text-decoration=\"underline\"");
+        }
+        paint("fill", element.getTextColor());
+    }
+
+    /**
+     * Name the generic family of a typeface set without a family name
+     */
+    private static String genericFamily(Typeface typeface) {
+        if (Typeface.SERIF.equals(typeface)) {
+            return "serif";
+        } else if (Typeface.MONOSPACE.equals(typeface)) {
+            return "monospace";
+        }
+        return "sans-serif";
+    }
+
+    private void writeImage(ImageElement image) throws IOException {
+        String href = null;
+        Bitmap bitmap = image.getBitmap();
+        if (!embedImages || bitmap == null) {
+            href = image.getImageUri();
+            if (href == null) {
+                return;
+            }
+        }
+
+        out.write("<image preserveAspectRatio=\"none\"");
+        attribute("width", image.getWidth());
+        attribute("height", image.getHeight());
+        out.write(" xlink:href=\"");
+        if (href != null) {
+            escaped(href, 0, href.length());
+        } else {
+            // Encode straight into the document without holding the PNG in memory
+            out.write("data:image/png;base64,");
+            Base64OutputStream base64 = new Base64OutputStream(new WriterOutputStream(out),
+                    Base64.NO_WRAP | Base64.NO_CLOSE);
+            bitmap.compress(Bitmap.CompressFormat.PNG, 100, base64);
+            base64.close();
+        }
+        out.write("\"/>\n");
+
+        if (image.isHasFilter()) {
+            out.write("<rect");
+            attribute("width", image.getWidth());
+            attribute("height", image.getHeight());
+            // The filter alpha replaces the alpha of the filter color
+            paint("fill", image.getFilterColor() | 0xff000000);
+            attribute("fill-opacity", image.getFilterAlpha());
+            out.write("/>\n");
+        }
+    }
+
+    /**
+     * Write an approximation of a path as line segments, one subpath per contour
+     */
+    private void pathData(Path path) throws IOException {
+        PathMeasure measure = new PathMeasure(path, false);
+        float[] position = new float[2];
+        do {
+            float length = measure.getLength();
+            if (length <= 0) {
+                continue;
+            }
+            int steps = Math.max(1, (int) Math.ceil(length / PATH_SAMPLE_STEP));
+            for (int i = 0; i <= steps; i++) {
+                measure.getPosTan(length * i / steps, position, null);
+                out.write(i == 0 ? 'M' : 'L');
+                number(position[0]);
+                out.write(' ');
+                number(position[1]);
+            }
+            if (measure.isClosed()) {
+                out.write('Z');
+            }
+        } while (measure.nextContour());
+    }
+
+    private void points(float[] points) throws IOException {
+        for (int i = 0; i < points.length; i += 2) {
+            if (i > 0) {
+                out.write(' ');
+            }
+            number(points[i]);
+            out.write(',');
+            number(points[i + 1]);
+        }
+    }
+
+    /**
+     * Write a color attribute, with a separate opacity for translucent colors
+     */
+    private void paint(String name, int color) throws IOException {
+        out.write(' ');
+        out.write(name);
+        out.write("=\"#");
+        String hex = Integer.toHexString(color & 0xffffff);
+        for (int i = hex.length(); i < 6; i++) {
+            out.write('0');
+        }
+        out.write(hex);
+        out.write('"');
+        if (Color.alpha(color) < 255) {
+            attribute(name + "-opacity", Color.alpha(color) / 255f);
+        }
+    }
+
+    private void attribute(String name, float value) throws IOException {
+        out.write(' ');
+        out.write(name);
+        out.write("=\"");
+        number(value);
+        out.write('"');
+    }
+
+    /**
+     * Write a number without a trailing ".0" and without locale formatting
+     */
+    private void number(float value) throws IOException {
+        if (value == (int) value) {
+            out.write(Integer.toString((int) value));
+            return;
+        }
+        number.setLength(0);
+        number.append(Math.round(value * 1000) / 1000f);
+        out.append(number);
+    }
+
+    private void escaped(String text, int start, int end) throws IOException {
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '<':
+                    out.write("&lt;");
+                    break;
+                case '>':
+                    out.write("&gt;");
+                    break;
+                case '&':
+                    out.write("&amp;");
+                    break;
+                case '"':
+                    out.write("&quot;");
+                    break;
+                default:
+                    out.write(c);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Passes the ASCII output of the Base64 encoder on to the document writer
+     */
+    private static class WriterOutputStream extends OutputStream {
+        private final Writer writer;
+
+        WriterOutputStream(Writer writer) {
+            this.writer = writer;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            writer.write(b);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            for (int i = offset; i < offset + length; i++) {
+                writer.write(bytes[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,321 @@
+package com.logomaker.app.export;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Finds the smallest encoding of a bitmap that stays under a byte budget
+ * and above a quality threshold measured as PSNR. JPEG and WEBP quality are
+ * searched by splitting the remaining quality range into as many points as
+ * there are cores and encoding them all at once, so each round narrows the
+ * range several times over. PNG and lossless WEBP are tried alongside. Every
+ * running trial decodes its result in full, so large bitmaps run fewer
+ * trials at once to stay within a fixed pixel budget.
+ */
+public final class TargetSizeEncoder {
+
+    // Used by the lossless candidates, which match the source exactly
+    private static final double LOSSLESS_PSNR = Double.POSITIVE_INFINITY;
+
+    // Pixels the running trials may decode at once, each trial holds a full decoded copy
+    private static final long TRIAL_PIXEL_BUDGET = 16L * 1024 * 1024;
+
+    private TargetSizeEncoder() {
+    }
+
+    /**
+     * Encode a bitmap as small as possible while keeping it recognizably the same.
+     * This blocks until the search is done, so call it off the main thread.
+     * @param bitmap Rendered image to encode; it is only read
+     * @param maxBytes Largest acceptable file size
+     * @param minPsnr Lowest acceptable peak signal-to-noise ratio in dB
+     *                against the source; about 40 is visually lossless
+     * @return The best encoding found, with trial statistics
+     */
+    @SuppressWarnings("deprecation")
+    public static Result encode(Bitmap bitmap, long maxBytes, double minPsnr) throws InterruptedException {
+        long start = System.nanoTime();
+        int threads = trialThreads(bitmap);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        Search search = new Search(bitmap, pool);
+        try {
+            // Lossless candidates run while the first quality round is encoded
+            List<Future<Trial>> lossless = new ArrayList<>();
+            lossless.add(search.submit(Bitmap.CompressFormat.PNG, 100, false));
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+                lossless.add(search.submit(Bitmap.CompressFormat.WEBP_LOSSLESS, 100, false));
+            } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+                // Quality 100 selects lossless WEBP from Android 10
+                lossless.add(search.submit(Bitmap.CompressFormat.WEBP, 100, false));
+            }
+
+            Trial best = null;
+            best = smaller(best, search.lowestQuality(Bitmap.CompressFormat.JPEG, minPsnr, threads), maxBytes);
+            best = smaller(best, search.lowestQuality(lossyWebp(), minPsnr, threads), maxBytes);
+            for (Future<Trial> trial : lossless) {
+                best = smaller(best, Search.get(trial), maxBytes);
+            }
+
+            long elapsedMillis = (System.nanoTime() - start) / 1000000;
+            return new Result(best, search.trialCount, search.rounds, elapsedMillis);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Run as many trials at once as there are cores, but no more than the
+     * pixel budget allows for this bitmap
+     */
+    private static int trialThreads(Bitmap bitmap) {
+        long pixels = (long) bitmap.getWidth() * bitmap.getHeight();
+        long affordable = Math.max(1, TRIAL_PIXEL_BUDGET / Math.max(1, pixels));
+        return (int) Math.min(Runtime.getRuntime().availableProcessors(), affordable);
+    }
+
+    @SuppressWarnings("deprecation")
+    private static Bitmap.CompressFormat lossyWebp() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.R
+                ? Bitmap.CompressFormat.WEBP_LOSSY : Bitmap.CompressFormat.WEBP;
+    }
+
+    private static Trial smaller(Trial best, Trial candidate, long maxBytes) {
+        if (candidate == null || candidate.data.length > maxBytes) {
+            return best;
+        }
+        return best == null || candidate.data.length < best.data.length ? candidate : best;
+    }
+
+    /**
+     * Peak signal-to-noise ratio of a decoded image against the source, over
+     * all four channels so lost transparency counts as error
+     */
+    private static double psnr(Bitmap source, Bitmap decoded) {
+        int width = source.getWidth();
+        int[] sourceRow = new int[width];
+        int[] decodedRow = new int[width];
+        long squaredError = 0;
+        for (int y = 0; y < source.getHeight(); y++) {
+            source.getPixels(sourceRow, 0, width, 0, y, width, 1);
+            decoded.getPixels(decodedRow, 0, width, 0, y, width, 1);
+            for (int x = 0; x < width; x++) {
+                int a = sourceRow[x];
+                int b = decodedRow[x];
+                for (int shift = 0; shift < 32; shift += 8) {
+                    int d = ((a >>> shift) & 0xff) - ((b >>> shift) & 0xff);
+                    squaredError += d * d;
+                }
+            }
+        }
+        if (squaredError == 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double mse = (double) squaredError / ((long) width * source.getHeight() * 4);
+        return 10 * Math.log10(255.0 * 255.0 / mse);
+    }
+
+    /**
+     * Trials of one encode call, run on a shared pool
+     */
+    private static class Search {
+        final Bitmap bitmap;
+        final ExecutorService pool;
+        int trialCount;
+        int rounds;
+
+        Search(Bitmap bitmap, ExecutorService pool) {
+            this.bitmap = bitmap;
+            this.pool = pool;
+        }
+
+        Future<Trial> submit(Bitmap.CompressFormat format, int quality, boolean measure) {
+            trialCount++;
+            return pool.submit(new TrialTask(bitmap, format, quality, measure));
+        }
+
+        /**
+         * Find the lowest quality that meets the PSNR threshold. Quality and
+         * PSNR rise together, so a k-ary search over 0 to 100 finds it in
+         * about log(101) / log(k + 1) rounds of k parallel encodes.
+         * @return The trial at that quality, or null if even 100 falls short
+         */
+        Trial lowestQuality(Bitmap.CompressFormat format, double minPsnr, int k)
+                throws InterruptedException {
+            // Quality lo is known to fail (or is -1), hi is known to pass (or is 101)
+            int lo = -1;
+            int hi = 101;
+            Trial passing = null;
+            while (hi - lo > 1) {
+                rounds++;
+                int points = Math.min(k, hi - lo - 1);
+                int[] qualities = new int[points];
+                List<Future<Trial>> trials = new ArrayList<>(points);
+                for (int i = 0; i < points; i++) {
+                    qualities[i] = lo + (int) ((long) (hi - lo) * (i + 1) / (points + 1));
+                    trials.add(submit(format, qualities[i], true));
+                }
+
+                // The first passing point bounds the range from above, the one before it from below
+                int newLo = lo;
+                int newHi = hi;
+                for (int i = 0; i < points; i++) {
+                    Trial trial = get(trials.get(i));
+                    if (trial != null && trial.psnr >= minPsnr) {
+                        newHi = qualities[i];
+                        passing = trial;
+                        for (int j = i + 1; j < points; j++) {
+                            trials.get(j).cancel(true);
+                        }
+                        break;
+                    }
+                    newLo = qualities[i];
+                }
+                lo = newLo;
+                hi = newHi;
+            }
+            return passing;
+        }
+
+        static Trial get(Future<Trial> trial) throws InterruptedException {
+            try {
+                return trial.get();
+            } catch (ExecutionException e) {
+                e.getCause().printStackTrace();
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Encodes once and, for lossy formats, decodes again to measure the loss
+     */
+    private static class TrialTask implements Callable<Trial> {
+        private final Bitmap bitmap;
+        private final Bitmap.CompressFormat format;
+        private final int quality;
+        private final boolean measure;
+
+        TrialTask(Bitmap bitmap, Bitmap.CompressFormat format, int quality, boolean measure) {
+            this.bitmap = bitmap;
+            this.format = format;
+            this.quality = quality;
+            this.measure = measure;
+        }
+
+        @Override
+        public Trial call() {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            if (!bitmap.compress(format, quality, out)) {
+                return null;
+            }
+            byte[] data = out.toByteArray();
+
+            double psnr = LOSSLESS_PSNR;
+            if (measure) {
+                Bitmap decoded = BitmapFactory.decodeByteArray(data, 0, data.length);
+                if (decoded == null) {
+                    return null;
+                }
+                psnr = psnr(bitmap, decoded);
+                decoded.recycle();
+            }
+            return new Trial(format, quality, data, psnr);
+        }
+    }
+
+    /**
+     * One encoded candidate
+     */
+    private static class Trial {
+        final Bitmap.CompressFormat format;
+        final int quality;
+        final byte[] data;
+        final double psnr;
+
+        Trial(Bitmap.CompressFormat format, int quality, byte[] data, double psnr) {
+            this.format = format;
+            this.quality = quality;
+            this.data = data;
+            this.psnr = psnr;
+        }
+    }
+
+    /**
+     * Outcome of a search
+     */
+    public static final class Result {
+        private final Trial best;
+        private final int trialCount;
+        private final int rounds;
+        private final long elapsedMillis;
+
+        Result(Trial best, int trialCount, int rounds, long elapsedMillis) {
+            this.best = best;
+            this.trialCount = trialCount;
+            this.rounds = rounds;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        /**
+         * Check if any encoding met both the budget and the threshold
+         */
+        public boolean isFound() {
+            return best != null;
+        }
+
+        /**
+         * Get the encoded file
+         * @return The bytes, or null if nothing was found
+         */
+        public byte[] getData() {
+            return best != null ? best.data : null;
+        }
+
+        /**
+         * Get the format of the encoded file
+         * @return The format, or null if nothing was found
+         */
+        public Bitmap.CompressFormat getFormat() {
+            return best != null ? best.format : null;
+        }
+
+        public int getQuality() {
+            return best != null ? best.quality : 0;
+        }
+
+        /**
+         * Get the PSNR of the encoded file in dB, infinite for lossless files
+         */
+        public double getPsnr() {
+            return best != null ? best.psnr : 0;
+        }
+
+        /**
+         * Get the number of encodes started, including lossless candidates
+         */
+        public int getTrialCount() {
+            return trialCount;
+        }
+
+        /**
+         * Get the number of parallel rounds of the quality searches
+         */
+        public int getRounds() {
+            return rounds;
+        }
+
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.logomaker.app.model;
+
+import android.graphics.RectF;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * Uniform grid over the logo area that buckets elements by their draw bounds.
+ * Elements outside the logo area are kept in the edge cells, so queries stay
+ * correct for any coordinates.
+ */
+class ElementGrid {
+
+    private static final float MIN_CELL_SIZE = 64;
+    private static final int MAX_CELLS_PER_SIDE = 32;
+
+    private final float cellSize;
+    private final int columns;
+    private final int rows;
+    private final List<LogoElement>[] cells;
+
+    // Cell range each element is currently stored in: first column, first row, last column, last row
+    private final IdentityHashMap<LogoElement, int[]> ranges = new IdentityHashMap<>();
+
+    // Reused while updating and querying
+    private final RectF scratchBounds = new RectF();
+    private int[] scratchIndices = new int[64];
+
+    /**
+     * Create a grid covering a logo
+     * @param width Logo width
+     * @param height Logo height
+     */
+    @SuppressWarnings("unchecked")
+    ElementGrid(int width, int height) {
+        cellSize = Math.max(MIN_CELL_SIZE, (float) Math.max(width, height) / MAX_CELLS_PER_SIDE);
+        columns = Math.max(1, (int) Math.ceil(width / cellSize));
+        rows = Math.max(1, (int) Math.ceil(height / cellSize));
+        cells = new List[columns * rows];
+        for (int i = 0; i < cells.length; i++) {
+            cells[i] = new ArrayList<>();
+        }
+    }
+
+    /**
+     * Add an element or move it to the cells matching its current draw bounds
+     * @param element The element
+     */
+    void update(LogoElement element) {
+        element.getDrawBounds(scratchBounds);
+        int left = column(scratchBounds.left);
+        int top = row(scratchBounds.top);
+        int right = column(scratchBounds.right);
+        int bottom = row(scratchBounds.bottom);
+
+        int[] range = ranges.get(element);
+        if (range != null) {
+            if (range[0] == left && range[1] == top && range[2] == right && range[3] == bottom) {
+                return;
+            }
+            removeFromCells(element, range);
+        } else {
+            range = new int[4];
+            ranges.put(element, range);
+        }
+
+        range[0] = left;
+        range[1] = top;
+        range[2] = right;
+        range[3] = bottom;
+        for (int row = top; row <= bottom; row++) {
+            for (int column = left; column <= right; column++) {
+                cells[row * columns + column].add(element);
+            }
+        }
+    }
+
+    /**
+     * Remove an element from the grid
+     * @param element The element
+     */
+    void remove(LogoElement element) {
+        int[] range = ranges.remove(element);
+        if (range != null) {
+            removeFromCells(element, range);
+        }
+    }
+
+    /**
+     * Find the topmost element whose box contains a point
+     * @param x X coordinate
+     * @param y Y coordinate
+     * @return The element, or null if there is none
+     */
+    LogoElement findAt(float x, float y) {
+        List<LogoElement> cell = cells[row(y) * columns + column(x)];
+        LogoElement topmost = null;
+        for (int i = 0; i < cell.size(); i++) {
+            LogoElement element = cell.get(i);
+            if ((topmost == null || element.stackIndex > topmost.stackIndex)
+                    && element.containsPoint(x, y)) {
+                topmost = element;
+            }
+        }
+        return topmost;
+    }
+
+    /**
+     * Collect the stack indices of elements whose draw bounds intersect a rectangle
+     * @param rect Area to search
+     * @return Number of indices written to {@link #getIndices()}, sorted and without duplicates
+     */
+    int collectIntersecting(RectF rect) {
+        int left = column(rect.left);
+        int top = row(rect.top);
+        int right = column(rect.right);
+        int bottom = row(rect.bottom);
+
+        int count = 0;
+        for (int row = top; row <= bottom; row++) {
+            for (int column = left; column <= right; column++) {
+                List<LogoElement> cell = cells[row * columns + column];
+                for (int i = 0; i < cell.size(); i++) {
+                    LogoElement element = cell.get(i);
+                    element.getDrawBounds(scratchBounds);
+                    if (!RectF.intersects(scratchBounds, rect)) {
+                        continue;
+                    }
+                    if (count == scratchIndices.length) {
+                        int[] grown = new int[count * 2];
+                        System.arraycopy(scratchIndices, 0, grown, 0, count);
+                        scratchIndices = grown;
+                    }
+                    scratchIndices[count++] = element.stackIndex;
+                }
+            }
+        }
+
+        // Elements spanning several cells were seen more than once
+        Arrays.sort(scratchIndices, 0, count);
+        int unique = 0;
+        for (int i = 0; i < count; i++) {
+            if (unique == 0 || scratchIndices[unique - 1] != scratchIndices[i]) {
+                scratchIndices[unique++] = scratchIndices[i];
+            }
+        }
+        return unique;
+    }
+
+    /**
+     * Get the buffer filled by {@link #collectIntersecting(RectF)}
+     */
+    int[] getIndices() {
+        return scratchIndices;
+    }
+
+    private void removeFromCells(LogoElement element, int[] range) {
+        for (int row = range[1]; row <= range[3]; row++) {
+            for (int column = range[0]; column <= range[2]; column++) {
+                cells[row * columns + column].remove(element);
+            }
+        }
+    }
+
+    private int column(float x) {
+        return Math.max(0, Math.min(columns - 1, (int) Math.floor(x / cellSize)));
+    }
+
+    private int row(float y) {
+        return Math.max(0, Math.min(rows - 1, (int) Math.floor(y / cellSize)));
+    }
+}
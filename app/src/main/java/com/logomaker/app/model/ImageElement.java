@@ -1,6 +1,7 @@
 package com.logomaker.app.model;
 
 import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
@@ -8,8 +9,17 @@ import android.graphics.RectF;
 import android.os.Parcel;
 import android.os.Parcelable;
 
+import java.io.ByteArrayOutputStream;
+
 public class ImageElement extends LogoElement {
     
+    private static final Paint SELECTION_PAINT = new Paint();
+    static {
+        SELECTION_PAINT.setColor(Color.BLUE);
+        SELECTION_PAINT.setStyle(Paint.Style.STROKE);
+        SELECTION_PAINT.setStrokeWidth(2);
+    }
+    
     public static final Parcelable.Creator<ImageElement> CREATOR = new Parcelable.Creator<ImageElement>() {
         @Override
         public ImageElement createFromParcel(Parcel source) {
@@ -24,13 +34,17 @@ public class ImageElement extends LogoElement {
     
     private Bitmap bitmap;
     private String imageUri;
-    private float width;
-    private float height;
     private boolean hasFilter;
     private int filterColor;
     private float filterAlpha;
     private Paint filterPaint;
     
+    // PNG of the bitmap last stored; replaced as a whole, as saves read it on other threads
+    private volatile EncodedPng encodedPng;
+    
+    // Reused while drawing so frames don't allocate
+    private final RectF destRect = new RectF();
+    
     public ImageElement() {
         super();
         width = 300;
@@ -62,6 +76,24 @@ public class ImageElement extends LogoElement {
         setupFilterPaint();
     }
     
+    /**
+     * Create an image element from stored data
+     * @param in Input positioned after the common element data
+     */
+    ImageElement(LogoCodec.Input in) {
+        super(in);
+        imageUri = in.readString();
+        hasFilter = in.readByte() != 0;
+        filterColor = in.readInt();
+        filterAlpha = in.readFloat();
+        byte[] png = in.readBytes();
+        if (png != null) {
+            bitmap = BitmapFactory.decodeByteArray(png, 0, png.length);
+            encodedPng = new EncodedPng(bitmap, png);
+        }
+        setupFilterPaint();
+    }
+    
     @Override
     public void writeToParcel(Parcel dest, int flags) {
         super.writeToParcel(dest, flags);
@@ -74,116 +106,39 @@ public class ImageElement extends LogoElement {
         dest.writeFloat(filterAlpha);
     }
     
-    private void setupFilterPaint() {
-        filterPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
-        filterPaint.setColor(filterColor);
-        filterPaint.setAlpha((int) (255 * filterAlpha));
-    }
-    
     @Override
-    public int getType() {
-        return LogoElement.TYPE_IMAGE;
-    }
-    
-    @Override
-    public float getWidth() {
-        return width;
-    }
-    
-    @Override
-    public float getHeight() {
-        return height;
-    }
-    
-    @Override
-    public void draw(Canvas canvas, Paint paint) {
-        if (bitmap == null) {
-            return;
-        }
-        
-        canvas.save();
-        canvas.concat(getTransformMatrix());
-        
-        // Draw the bitmap centered
-        float left = -width / 2;
-        float top = -height / 2;
-        float right = width / 2;
-        float bottom = height / 2;
-        RectF destRect = new RectF(left, top, right, bottom);
-        
-        canvas.drawBitmap(bitmap, null, destRect, null);
-        
-        // Apply filter if needed
-        if (hasFilter) {
-            canvas.drawRect(destRect, filterPaint);
-        }
-        
-        // Draw selection highlight if selected
-        if (isSelected()) {
-            Paint selectionPaint = new Paint();
-            selectionPaint.setColor(Color.BLUE);
-            selectionPaint.setStyle(Paint.Style.STROKE);
-            selectionPaint.setStrokeWidth(2);
-            canvas.drawRect(left - 5, top - 5, right + 5, bottom + 5, selectionPaint);
-        }
+    void write(LogoCodec.Output out) {
+        writeFields(out);
         
-        canvas.restore();
+        // The pixels are stored too, so the logo doesn't depend on the source still being readable
+        out.writeBytes(bitmap != null ? getPng(bitmap) : null);
     }
     
-    public Bitmap getBitmap() {
-        return bitmap;
+    /**
+     * Write everything {@link #write} does except the pixels, which come last
+     */
+    void writeFields(LogoCodec.Output out) {
+        super.write(out);
+        out.writeString(imageUri);
+        out.writeByte(hasFilter ? 1 : 0);
+        out.writeInt(filterColor);
+        out.writeFloat(filterAlpha);
     }
     
-    public void setBitmap(Bitmap bitmap) {
-        this.bitmap = bitmap;
-        if (bitmap != null) {
-            // Keep aspect ratio when updating bitmap
-            float aspectRatio = (float) bitmap.getWidth() / bitmap.getHeight();
-            this.height = width / aspectRatio;
+    /**
+     * Get a bitmap of this element as PNG. Compressing is slow, so the result
+     * is kept until the element's bitmap is replaced. Safe on any thread.
+     */
+    byte[] getPng(Bitmap bitmap) {
+        EncodedPng encoded = encodedPng;
+        if (encoded != null && encoded.bitmap == bitmap) {
+            return encoded.png;
         }
-    }
-    
-    public String getImageUri() {
-        return imageUri;
-    }
-    
-    public void setImageUri(String imageUri) {
-        this.imageUri = imageUri;
-    }
-    
-    public void setWidth(float width) {
-        this.width = width;
-    }
-    
-    public void setHeight(float height) {
-        this.height = height;
-    }
-    
-    public boolean isHasFilter() {
-        return hasFilter;
-    }
-    
-    public void setHasFilter(boolean hasFilter) {
-        this.hasFilter = hasFilter;
-    }
-    
-    public int getFilterColor() {
-        return filterColor;
-    }
-    
-    public void setFilterColor(int filterColor) {
-        this.filterColor = filterColor;
-        filterPaint.setColor(filterColor);
-        filterPaint.setAlpha((int) (255 * filterAlpha));
-    }
-    
-    public float getFilterAlpha() {
-        return filterAlpha;
-    }
-    
-    public void setFilterAlpha(float filterAlpha) {
-        this.filterAlpha = filterAlpha;
-        filterPaint.setAlpha((int) (255 * filterAlpha));
+        ByteArrayOutputStream pngOut = new ByteArrayOutputStream();
+        bitmap.compress(Bitmap.CompressFormat.PNG, 100, pngOut);
+        byte[] png = pngOut.toByteArray();
+        encodedPng = new EncodedPng(bitmap, png);
+        return png;
     }
     
     /**
@@ -199,5 +154,20 @@ public class ImageElement extends LogoElement {
             this.width = newWidth;
             this.height = newWidth;
         }
+        markChanged();
+        invalidateTransform();
+    }
+    
+    /**
+     * A bitmap and its PNG
+     */
+    private static final class EncodedPng {
+        final Bitmap bitmap;
+        final byte[] png;
+        
+        EncodedPng(Bitmap bitmap, byte[] png) {
+            this.bitmap = bitmap;
+            this.png = png;
+        }
     }
-} 
\ No newline at end of file
+}
@@ -1,11 +1,14 @@
 package com.logomaker.app.model;
 
 import android.graphics.Bitmap;
-import android.graphics.Canvas;
 import android.graphics.Color;
+import android.graphics.RectF;
 import android.os.Parcel;
 import android.os.Parcelable;
 
+import com.logomaker.app.render.DisplayList;
+import com.logomaker.app.render.ElementLayerCache;
+
 import java.util.ArrayList;
 import java.util.List;
 
@@ -13,6 +16,9 @@ import java.util.List;
  * Model class representing a logo with all its elements
  */
 public class Logo implements Parcelable {
+    /** Tile edge used by renderTiles when rendering exports */
+    public static final int DEFAULT_TILE_SIZE = 512;
+    
     private String name;
     private int width;
     private int height;
@@ -21,6 +27,13 @@ public class Logo implements Parcelable {
     private String id;
     private long lastModified;
     private String thumbnailPath;
+    
+    // Spatial index over element bounds, built on the first query and then kept up to date
+    private ElementGrid grid;
+    private final List<LogoElement> staleElements = new ArrayList<>();
+    
+    // Recorded drawing commands, brought up to date before each render
+    private DisplayList displayList;
 
     /**
      * Create a new logo with default values
@@ -55,13 +68,40 @@ public class Logo implements Parcelable {
         width = in.readInt();
         height = in.readInt();
         backgroundColor = in.readInt();
-        elements = new ArrayList<>();
-        in.readTypedList(elements, LogoElement.CREATOR);
+        int count = in.readInt();
+        elements = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            elements.add(LogoElement.CREATOR.createFromParcel(in));
+        }
+        for (LogoElement element : elements) {
+            element.owner = this;
+        }
+        renumberElements(0);
         id = in.readString();
         lastModified = in.readLong();
         thumbnailPath = in.readString();
     }
 
+    /**
+     * Create a logo from stored data
+     * @param header Input positioned at the logo's own fields
+     * @param elements Decoded elements, in stacking order
+     */
+    Logo(LogoCodec.Input header, List<LogoElement> elements) {
+        id = header.readString();
+        name = header.readString();
+        width = header.readVarInt();
+        height = header.readVarInt();
+        backgroundColor = header.readInt();
+        lastModified = header.readVarLong();
+        thumbnailPath = header.readString();
+        this.elements = elements;
+        for (LogoElement element : elements) {
+            element.owner = this;
+        }
+        renumberElements(0);
+    }
+
     /**
      * Creator for Parcelable implementation
      */
@@ -108,6 +148,7 @@ public class Logo implements Parcelable {
      */
     public void setWidth(int width) {
         this.width = width;
+        grid = null;
         updateLastModified();
     }
 
@@ -125,6 +166,7 @@ public class Logo implements Parcelable {
      */
     public void setHeight(int height) {
         this.height = height;
+        grid = null;
         updateLastModified();
     }
 
@@ -146,7 +188,8 @@ public class Logo implements Parcelable {
     }
 
     /**
-     * Get all logo elements
+     * Get all logo elements. Use addElement, removeElement, bringToFront and
+     * sendToBack to change the list so the spatial index stays in sync.
      * @return List of logo elements
      */
     public List<LogoElement> getElements() {
@@ -159,6 +202,9 @@ public class Logo implements Parcelable {
      */
     public void addElement(LogoElement element) {
         elements.add(element);
+        element.owner = this;
+        element.stackIndex = elements.size() - 1;
+        onElementBoundsChanged(element);
         updateLastModified();
     }
 
@@ -168,8 +214,20 @@ public class Logo implements Parcelable {
      * @return True if element was removed, false otherwise
      */
     public boolean removeElement(LogoElement element) {
-        boolean result = elements.remove(element);
+        int index = elements.indexOf(element);
+        boolean result = index >= 0;
         if (result) {
+            elements.remove(index);
+            element.owner = null;
+            if (grid != null) {
+                grid.remove(element);
+                if (element.boundsStale) {
+                    staleElements.remove(element);
+                    element.boundsStale = false;
+                }
+            }
+            renumberElements(index);
+            ElementLayerCache.getInstance().remove(element);
             updateLastModified();
         }
         return result;
@@ -182,6 +240,7 @@ public class Logo implements Parcelable {
     public void bringToFront(LogoElement element) {
         if (elements.remove(element)) {
             elements.add(element);
+            renumberElements(0);
             updateLastModified();
         }
     }
@@ -193,41 +252,148 @@ public class Logo implements Parcelable {
     public void sendToBack(LogoElement element) {
         if (elements.remove(element)) {
             elements.add(0, element);
+            renumberElements(0);
             updateLastModified();
         }
     }
 
     /**
-     * Render the logo to a bitmap
+     * Find the topmost element whose box contains a point
+     * @param x X coordinate in logo units
+     * @param y Y coordinate in logo units
+     * @return The element, or null if no element is at that point
      */
-    public Bitmap render() {
-        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
-        Canvas canvas = new Canvas(bitmap);
-        
-        // Draw background
-        canvas.drawColor(backgroundColor);
-        
-        // Draw all elements
-        for (LogoElement element : elements) {
-            element.draw(canvas);
+    public LogoElement findElementAt(float x, float y) {
+        return getGrid().findAt(x, y);
+    }
+    
+    /**
+     * Find the elements whose painted area intersects a rectangle
+     * @param rect Area in logo units
+     * @param out List that receives the elements, bottom-most first
+     */
+    public void findElementsIn(RectF rect, List<LogoElement> out) {
+        out.clear();
+        ElementGrid index = getGrid();
+        int count = index.collectIntersecting(rect);
+        int[] stackIndices = index.getIndices();
+        for (int i = 0; i < count; i++) {
+            out.add(elements.get(stackIndices[i]));
+        }
+    }
+    
+    /**
+     * Called by elements whose bounds changed; they are re-indexed on the next query
+     */
+    void onElementBoundsChanged(LogoElement element) {
+        if (grid != null && !element.boundsStale) {
+            element.boundsStale = true;
+            staleElements.add(element);
+        }
+    }
+    
+    /**
+     * Get the spatial index, building it or bringing it up to date first
+     */
+    private ElementGrid getGrid() {
+        if (grid == null) {
+            grid = new ElementGrid(width, height);
+            for (int i = 0; i < elements.size(); i++) {
+                grid.update(elements.get(i));
+            }
+            for (int i = 0; i < staleElements.size(); i++) {
+                staleElements.get(i).boundsStale = false;
+            }
+            staleElements.clear();
+        } else if (!staleElements.isEmpty()) {
+            for (int i = 0; i < staleElements.size(); i++) {
+                LogoElement element = staleElements.get(i);
+                element.boundsStale = false;
+                grid.update(element);
+            }
+            staleElements.clear();
+        }
+        return grid;
+    }
+    
+    /**
+     * Store each element's position in the stack, starting at an index
+     */
+    private void renumberElements(int from) {
+        for (int i = from; i < elements.size(); i++) {
+            elements.get(i).stackIndex = i;
+        }
+    }
+    
+    /**
+     * Get the compiled drawing commands of this logo, re-recording only the
+     * elements that changed since the last call. Only call this on the main
+     * thread, which edits the logo: updating reads the elements' cached
+     * transforms and paints while the editor changes them. To render on
+     * another thread, take a {@link DisplayList#snapshot()} of the result on
+     * the main thread and render that.
+     * @return Display list matching the current elements
+     */
+    public DisplayList getDisplayList() {
+        if (displayList == null) {
+            displayList = new DisplayList();
         }
-        
-        return bitmap;
+        displayList.update(this);
+        return displayList;
+    }
+    
+    /**
+     * Render the logo to a bitmap. Main thread only, see {@link #getDisplayList()}.
+     */
+    public Bitmap render() {
+        return getDisplayList().render();
+    }
+    
+    /**
+     * Render the logo at any output size in fixed-size tiles, so memory use
+     * depends on the tile size rather than the output size. Main thread only,
+     * see {@link #getDisplayList()}.
+     * @param outputWidth Width of the full output in pixels
+     * @param outputHeight Height of the full output in pixels
+     * @param tileSize Edge length of the tiles in pixels
+     * @param consumer Receives each tile as it is finished
+     */
+    public void renderTiles(int outputWidth, int outputHeight, int tileSize, TileConsumer consumer) {
+        renderTiles(outputWidth, outputHeight, tileSize, tileSize, consumer);
     }
     
     /**
-     * Render a thumbnail of the logo
+     * Render the logo in tiles of any shape. Main thread only, see
+     * {@link #getDisplayList()}.
+     * @see DisplayList#renderTiles(int, int, int, int, TileConsumer)
+     */
+    public void renderTiles(int outputWidth, int outputHeight, int tileWidth, int tileHeight,
+                            TileConsumer consumer) {
+        getDisplayList().renderTiles(outputWidth, outputHeight, tileWidth, tileHeight, consumer);
+    }
+    
+    /**
+     * Receives tiles produced by {@link DisplayList#renderTiles(int, int, int, int, TileConsumer)}
+     */
+    public interface TileConsumer {
+        /**
+         * Called for each finished tile. The bitmap is reused for the next
+         * tile, so copy any pixels that are needed after this call returns.
+         * @param tile Bitmap holding the tile, starting at its top-left corner
+         * @param left X offset of the tile in the output
+         * @param top Y offset of the tile in the output
+         * @param width Width of the valid area, smaller than the bitmap on the right edge
+         * @param height Height of the valid area, smaller than the bitmap on the bottom edge
+         */
+        void onTile(Bitmap tile, int left, int top, int width, int height);
+    }
+    
+    /**
+     * Render a thumbnail of the logo. Main thread only, see {@link #getDisplayList()}.
      * @param targetWidth The width of the thumbnail
      */
     public Bitmap renderThumbnail(int targetWidth) {
-        float scale = (float) targetWidth / width;
-        int targetHeight = (int) (height * scale);
-        
-        Bitmap fullSizeBitmap = render();
-        Bitmap thumbnail = Bitmap.createScaledBitmap(fullSizeBitmap, targetWidth, targetHeight, true);
-        fullSizeBitmap.recycle();
-        
-        return thumbnail;
+        return getDisplayList().renderThumbnail(targetWidth);
     }
 
     /**
@@ -248,12 +414,30 @@ public class Logo implements Parcelable {
         dest.writeInt(width);
         dest.writeInt(height);
         dest.writeInt(backgroundColor);
-        dest.writeTypedList(elements);
+        // Typed, as the element list holds several subclasses
+        dest.writeInt(elements.size());
+        for (LogoElement element : elements) {
+            element.writeTypedElement(dest, flags);
+        }
         dest.writeString(id);
         dest.writeLong(lastModified);
         dest.writeString(thumbnailPath);
     }
 
+    /**
+     * Write the logo's own fields for storage, without its elements
+     * @param out Output to write to
+     */
+    void writeHeader(LogoCodec.Output out) {
+        out.writeString(id);
+        out.writeString(name);
+        out.writeVarInt(width);
+        out.writeVarInt(height);
+        out.writeInt(backgroundColor);
+        out.writeVarLong(lastModified);
+        out.writeString(thumbnailPath);
+    }
+
     // Getters and setters
     
     public String getId() {
@@ -268,6 +452,10 @@ public class Logo implements Parcelable {
         return lastModified;
     }
     
+    public void setLastModified(long lastModified) {
+        this.lastModified = lastModified;
+    }
+    
     public String getThumbnailPath() {
         return thumbnailPath;
     }
@@ -0,0 +1,630 @@
+package com.logomaker.app.model;
+
+import android.graphics.Bitmap;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compact binary encoding of a {@link Logo} and its elements, used to store
+ * logos on disk. Counts, enums and sizes are written as varints, colors and
+ * floats as 4 bytes, strings as UTF-8. The data starts with a magic number
+ * and a format version, which readers pass on so that classes can read
+ * older layouts after fields are added.
+ * <p>
+ * From version 2 the logo's own fields and each element are length-prefixed
+ * blobs, so stored logos can be taken apart and put back together element
+ * by element without decoding them.
+ */
+public final class LogoCodec {
+
+    /** Version written by this build */
+    public static final int VERSION = 2;
+
+    // "LOGO"
+    private static final int MAGIC = 0x4C4F474F;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private LogoCodec() {
+    }
+
+    /**
+     * Encode a logo
+     * @param logo Logo to encode
+     * @return Buffer holding the encoded logo, positioned at its start
+     */
+    public static ByteBuffer encode(Logo logo) {
+        List<LogoElement> elements = logo.getElements();
+        List<byte[]> encodedElements = new ArrayList<>(elements.size());
+        for (LogoElement element : elements) {
+            encodedElements.add(encodeElement(element));
+        }
+        return assemble(encodeHeader(logo), encodedElements);
+    }
+
+    /**
+     * Encode the logo's own fields, without its elements
+     */
+    public static byte[] encodeHeader(Logo logo) {
+        Output out = new Output();
+        logo.writeHeader(out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Encode one element, including its type
+     */
+    public static byte[] encodeElement(LogoElement element) {
+        Output out = new Output();
+        out.writeVarInt(element.getType());
+        element.write(out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Capture a logo so it can be encoded on another thread. Everything but
+     * image pixels is encoded here; the pixels are added, and compressed if no
+     * earlier save did, by {@link CapturedElement#getData()}.
+     * @param logo Logo to capture, which can be edited again right away
+     */
+    public static CapturedLogo capture(Logo logo) {
+        List<LogoElement> elements = logo.getElements();
+        List<CapturedElement> captured = new ArrayList<>(elements.size());
+        for (LogoElement element : elements) {
+            captured.add(captureElement(element));
+        }
+        return new CapturedLogo(logo.getId(), encodeHeader(logo), captured);
+    }
+
+    private static CapturedElement captureElement(LogoElement element) {
+        Output out = new Output();
+        out.writeVarInt(element.getType());
+        if (element instanceof ImageElement) {
+            ImageElement image = (ImageElement) element;
+            Bitmap bitmap = image.getBitmap();
+            image.writeFields(out);
+            if (bitmap != null) {
+                // The pixels go last, and are compressed or copied off the main thread
+                return new CapturedElement(element, out.toByteArray(), image, bitmap);
+            }
+            out.writeBytes(null);
+        } else {
+            element.write(out);
+        }
+        return new CapturedElement(element, out.toByteArray(), null, null);
+    }
+
+    /**
+     * Decode a captured logo into a logo of its own
+     * @throws IOException If the captured data can't be decoded
+     */
+    public static Logo decode(CapturedLogo logo) throws IOException {
+        List<byte[]> elements = new ArrayList<>(logo.elements.size());
+        for (CapturedElement element : logo.elements) {
+            elements.add(element.getData());
+        }
+        return decode(assemble(logo.header, elements));
+    }
+
+    /**
+     * Get the id of an encoded element without decoding the rest of it
+     * @param element Data returned by {@link #encodeElement(LogoElement)}
+     */
+    public static String getElementId(byte[] element) {
+        Input in = new Input(ByteBuffer.wrap(element));
+        in.readVarInt();
+        return in.readString();
+    }
+
+    /**
+     * Summarize a logo from its encoded parts without decoding its elements
+     * @param header Data returned by {@link #encodeHeader(Logo)}
+     * @param elementCount Number of elements in the logo
+     * @param byteSize Size of the stored logo in bytes
+     */
+    public static LogoSummary summarize(byte[] header, int elementCount, long byteSize) {
+        Logo logo = new Logo(new Input(ByteBuffer.wrap(header)), new ArrayList<>());
+        return new LogoSummary(logo.getId(), logo.getName(), logo.getLastModified(),
+                logo.getThumbnailPath(), elementCount, byteSize);
+    }
+
+    public static byte[] encodeSummary(LogoSummary summary) {
+        Output out = new Output();
+        summary.write(out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Decode a summary written by {@link #encodeSummary(LogoSummary)}
+     * @throws IOException If the data is truncated or corrupt
+     */
+    public static LogoSummary decodeSummary(byte[] data) throws IOException {
+        try {
+            return new LogoSummary(new Input(ByteBuffer.wrap(data)));
+        } catch (RuntimeException e) {
+            throw new IOException("Corrupt logo summary", e);
+        }
+    }
+
+    /**
+     * Put an encoded logo together from encoded parts
+     * @param header Data returned by {@link #encodeHeader(Logo)}
+     * @param elements Data returned by {@link #encodeElement(LogoElement)}, in stacking order
+     * @return Buffer holding the encoded logo, positioned at its start
+     */
+    public static ByteBuffer assemble(byte[] header, List<byte[]> elements) {
+        Output out = new Output();
+        out.writeInt(MAGIC);
+        out.writeVarInt(VERSION);
+        out.writeBytes(header);
+        out.writeVarInt(elements.size());
+        for (byte[] element : elements) {
+            out.writeBytes(element);
+        }
+        return out.toByteBuffer();
+    }
+
+    /**
+     * Take an encoded logo apart into the parts {@link #assemble(byte[], List)} takes
+     * @param buffer Encoded logo, read from its position
+     * @return The header and the elements in stacking order
+     * @throws IOException If the data can't be decoded
+     */
+    public static Parts split(ByteBuffer buffer) throws IOException {
+        try {
+            Input in = readStart(buffer);
+            if (in.getVersion() < 2) {
+                // Older layouts have no blob boundaries, so decode and encode again
+                Logo logo = readLogo(in);
+                List<byte[]> elements = new ArrayList<>();
+                for (LogoElement element : logo.getElements()) {
+                    elements.add(encodeElement(element));
+                }
+                return new Parts(encodeHeader(logo), elements);
+            }
+            byte[] header = in.readBytes();
+            int count = in.readVarInt();
+            List<byte[]> elements = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                elements.add(in.readBytes());
+            }
+            return new Parts(header, elements);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated logo", e);
+        } catch (RuntimeException e) {
+            throw new IOException("Corrupt logo", e);
+        }
+    }
+
+    /**
+     * Decode a logo
+     * @param buffer Encoded logo, read from its position; may be memory-mapped
+     * @return The decoded logo, holding no reference to the buffer
+     * @throws IOException If the data is not a logo, is from a newer version or is truncated
+     */
+    public static Logo decode(ByteBuffer buffer) throws IOException {
+        try {
+            return readLogo(readStart(buffer));
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated logo", e);
+        } catch (RuntimeException e) {
+            // Values that are out of range for the field they are read into
+            throw new IOException("Corrupt logo", e);
+        }
+    }
+
+    private static Input readStart(ByteBuffer buffer) throws IOException {
+        if (buffer.getInt() != MAGIC) {
+            throw new IOException("Not a logo");
+        }
+        int version = readVarInt(buffer);
+        if (version < 1 || version > VERSION) {
+            throw new IOException("Unsupported logo version " + version);
+        }
+        return new Input(buffer, version);
+    }
+
+    private static Logo readLogo(Input in) {
+        Input header;
+        if (in.getVersion() >= 2) {
+            header = in.readNested();
+        } else {
+            // Version 1 has the logo fields inline, read them from a copy and skip them here
+            header = new Input(in.buffer.duplicate(), in.version);
+            in.readString();
+            in.readString();
+            in.readVarInt();
+            in.readVarInt();
+            in.readInt();
+            in.readVarLong();
+            in.readString();
+        }
+
+        int count = in.readVarInt();
+        List<LogoElement> elements = new ArrayList<>(Math.min(count, 1024));
+        for (int i = 0; i < count; i++) {
+            elements.add(readElement(in.getVersion() >= 2 ? in.readNested() : in));
+        }
+        return new Logo(header, elements);
+    }
+
+    private static LogoElement readElement(Input in) {
+        int type = in.readVarInt();
+        switch (type) {
+            case LogoElement.TYPE_TEXT:
+                return new TextElement(in);
+            case LogoElement.TYPE_SHAPE:
+                return new ShapeElement(in);
+            case LogoElement.TYPE_IMAGE:
+                return new ImageElement(in);
+            default:
+                throw new IllegalArgumentException("Unknown element type " + type);
+        }
+    }
+
+    private static int readVarInt(ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7f) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Varint too long");
+    }
+
+    /**
+     * An encoded logo taken apart, see {@link #split(ByteBuffer)}
+     */
+    public static final class Parts {
+        private final byte[] header;
+        private final List<byte[]> elements;
+
+        Parts(byte[] header, List<byte[]> elements) {
+            this.header = header;
+            this.elements = elements;
+        }
+
+        public byte[] getHeader() {
+            return header;
+        }
+
+        /**
+         * Get the encoded elements in stacking order
+         */
+        public List<byte[]> getElements() {
+            return elements;
+        }
+    }
+
+    /**
+     * A logo as it was when it was captured, detached from the logo
+     */
+    public static final class CapturedLogo {
+        private final String id;
+        private final byte[] header;
+        private final List<CapturedElement> elements;
+
+        CapturedLogo(String id, byte[] header, List<CapturedElement> elements) {
+            this.id = id;
+            this.header = header;
+            this.elements = elements;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        /**
+         * Get the logo's own fields, as returned by {@link #encodeHeader(Logo)}
+         */
+        public byte[] getHeader() {
+            return header;
+        }
+
+        /**
+         * Get the elements in stacking order
+         */
+        public List<CapturedElement> getElements() {
+            return elements;
+        }
+    }
+
+    /**
+     * An element as it was when it was captured, with the version stamps
+     * that tell whether it changed since an earlier capture
+     */
+    public static final class CapturedElement {
+        private final String id;
+        private final long version;
+        private final long transformVersion;
+        private final boolean locked;
+
+        // The whole encoding, or the encoding up to the pixels of image
+        private byte[] data;
+        private ImageElement image;
+        private Bitmap bitmap;
+
+        CapturedElement(LogoElement element, byte[] data, ImageElement image, Bitmap bitmap) {
+            this.id = element.getId();
+            this.version = element.getVersion();
+            this.transformVersion = element.getTransformVersion();
+            this.locked = element.isLocked();
+            this.data = data;
+            this.image = image;
+            this.bitmap = bitmap;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        public long getTransformVersion() {
+            return transformVersion;
+        }
+
+        public boolean isLocked() {
+            return locked;
+        }
+
+        /**
+         * Get the encoded element, as returned by {@link #encodeElement(LogoElement)}.
+         * The first call may compress the pixels of an image, so call it off
+         * the main thread.
+         */
+        public synchronized byte[] getData() {
+            if (bitmap != null) {
+                Output out = new Output();
+                out.writeRaw(data);
+                out.writeBytes(image.getPng(bitmap));
+                data = out.toByteArray();
+                image = null;
+                bitmap = null;
+            }
+            return data;
+        }
+    }
+
+    /**
+     * Growable buffer the model classes write themselves into
+     */
+    public static final class Output {
+        private byte[] bytes = new byte[256];
+        private int size;
+
+        /**
+         * Write a non-negative int in 1 to 5 bytes, smaller values taking fewer bytes
+         */
+        public void writeVarInt(int value) {
+            ensure(5);
+            while ((value & ~0x7f) != 0) {
+                bytes[size++] = (byte) ((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+        }
+
+        /**
+         * Write a non-negative long in 1 to 10 bytes
+         */
+        public void writeVarLong(long value) {
+            ensure(10);
+            while ((value & ~0x7fL) != 0) {
+                bytes[size++] = (byte) ((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+        }
+
+        /**
+         * Write an int in 4 bytes, for values such as colors that use all bits
+         */
+        public void writeInt(int value) {
+            ensure(4);
+            bytes[size++] = (byte) (value >>> 24);
+            bytes[size++] = (byte) (value >>> 16);
+            bytes[size++] = (byte) (value >>> 8);
+            bytes[size++] = (byte) value;
+        }
+
+        public void writeFloat(float value) {
+            writeInt(Float.floatToIntBits(value));
+        }
+
+        public void writeByte(int value) {
+            ensure(1);
+            bytes[size++] = (byte) value;
+        }
+
+        /**
+         * Write a string that may be null
+         */
+        public void writeString(String value) {
+            if (value == null) {
+                writeVarInt(0);
+                return;
+            }
+            writeBytes(value.getBytes(UTF_8));
+        }
+
+        /**
+         * Write a byte array that may be null
+         */
+        public void writeBytes(byte[] value) {
+            if (value == null) {
+                writeVarInt(0);
+                return;
+            }
+            writeVarInt(value.length + 1);
+            ensure(value.length);
+            System.arraycopy(value, 0, bytes, size, value.length);
+            size += value.length;
+        }
+
+        /**
+         * Write bytes as they are, without a length
+         */
+        void writeRaw(byte[] value) {
+            ensure(value.length);
+            System.arraycopy(value, 0, bytes, size, value.length);
+            size += value.length;
+        }
+
+        /**
+         * Write a float array that may be null
+         */
+        public void writeFloatArray(float[] value) {
+            if (value == null) {
+                writeVarInt(0);
+                return;
+            }
+            writeVarInt(value.length + 1);
+            for (float f : value) {
+                writeFloat(f);
+            }
+        }
+
+        /**
+         * Get the number of bytes written
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * Copy the written bytes
+         */
+        public byte[] toByteArray() {
+            byte[] copy = new byte[size];
+            System.arraycopy(bytes, 0, copy, 0, size);
+            return copy;
+        }
+
+        /**
+         * Wrap the written bytes without copying them
+         */
+        public ByteBuffer toByteBuffer() {
+            return ByteBuffer.wrap(bytes, 0, size);
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > bytes.length) {
+                byte[] grown = new byte[Math.max(bytes.length * 2, size + extra)];
+                System.arraycopy(bytes, 0, grown, 0, size);
+                bytes = grown;
+            }
+        }
+    }
+
+    /**
+     * Reads values back in the order {@link Output} wrote them
+     */
+    public static final class Input {
+        private final ByteBuffer buffer;
+        private final int version;
+
+        /**
+         * Read data written by this build
+         */
+        public Input(ByteBuffer buffer) {
+            this(buffer, VERSION);
+        }
+
+        Input(ByteBuffer buffer, int version) {
+            this.buffer = buffer;
+            this.version = version;
+        }
+
+        /**
+         * Get the format version the data was written with
+         */
+        public int getVersion() {
+            return version;
+        }
+
+        public int readVarInt() {
+            return LogoCodec.readVarInt(buffer);
+        }
+
+        /**
+         * Read a length-prefixed blob in place, without copying it
+         */
+        Input readNested() {
+            int length = readVarInt() - 1;
+            if (length < 0 || length > buffer.remaining()) {
+                throw new BufferUnderflowException();
+            }
+            ByteBuffer slice = buffer.slice();
+            slice.limit(length);
+            buffer.position(buffer.position() + length);
+            return new Input(slice, version);
+        }
+
+        public long readVarLong() {
+            long value = 0;
+            for (int shift = 0; shift < 70; shift += 7) {
+                byte b = buffer.get();
+                value |= (long) (b & 0x7f) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+            throw new IllegalArgumentException("Varlong too long");
+        }
+
+        public int readInt() {
+            return buffer.getInt();
+        }
+
+        public float readFloat() {
+            return buffer.getFloat();
+        }
+
+        public int readByte() {
+            return buffer.get() & 0xff;
+        }
+
+        public String readString() {
+            byte[] bytes = readBytes();
+            return bytes != null ? new String(bytes, UTF_8) : null;
+        }
+
+        public byte[] readBytes() {
+            int length = readVarInt() - 1;
+            if (length < 0) {
+                return null;
+            }
+            if (length > buffer.remaining()) {
+                throw new BufferUnderflowException();
+            }
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            return bytes;
+        }
+
+        public float[] readFloatArray() {
+            int length = readVarInt() - 1;
+            if (length < 0) {
+                return null;
+            }
+            if (length > buffer.remaining() / 4) {
+                throw new BufferUnderflowException();
+            }
+            float[] values = new float[length];
+            for (int i = 0; i < length; i++) {
+                values[i] = buffer.getFloat();
+            }
+            return values;
+        }
+    }
+}
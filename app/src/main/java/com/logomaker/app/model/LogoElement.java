@@ -8,6 +8,7 @@ import android.os.Parcel;
 import android.os.Parcelable;
 
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Base class for all elements that can be added to a logo
@@ -18,6 +19,9 @@ public abstract class LogoElement implements Parcelable {
     public static final int TYPE_SHAPE = 1;
     public static final int TYPE_IMAGE = 2;
     
+    // Source of version stamps, shared by all elements so copies never collide
+    private static final AtomicLong VERSION_COUNTER = new AtomicLong();
+    
     protected String id;
     protected float x;
     protected float y;
@@ -28,6 +32,21 @@ public abstract class LogoElement implements Parcelable {
     protected int opacity;
     protected boolean locked;
     protected boolean selected;
+    private long version = VERSION_COUNTER.incrementAndGet();
+    private long transformVersion;
+    
+    // Transform, its inverse and the resulting bounds, rebuilt lazily after a change
+    private final Matrix transformMatrix = new Matrix();
+    private final Matrix inverseMatrix = new Matrix();
+    private final RectF transformedBounds = new RectF();
+    private final float[] hitPoint = new float[2];
+    private boolean transformDirty = true;
+    private boolean invertible;
+    
+    // Bookkeeping for the logo that contains this element and its spatial index
+    Logo owner;
+    int stackIndex;
+    boolean boundsStale;
     
     /**
      * Create a new logo element
@@ -61,13 +80,38 @@ public abstract class LogoElement implements Parcelable {
     }
     
     /**
-     * Creator to be implemented by subclasses
+     * Create a logo element from stored data
+     * @param in Input positioned at the element data
+     */
+    protected LogoElement(LogoCodec.Input in) {
+        id = in.readString();
+        x = in.readFloat();
+        y = in.readFloat();
+        width = in.readFloat();
+        height = in.readFloat();
+        rotation = in.readFloat();
+        scale = in.readFloat();
+        opacity = in.readVarInt();
+        locked = in.readByte() != 0;
+    }
+    
+    /**
+     * Creator for elements of any type, written by {@link #writeTypedElement}
      */
     public static final Creator<LogoElement> CREATOR = new Creator<LogoElement>() {
         @Override
         public LogoElement createFromParcel(Parcel in) {
-            // This should never be called directly as LogoElement is abstract
-            throw new UnsupportedOperationException("Cannot create abstract LogoElement directly");
+            int type = in.readInt();
+            switch (type) {
+                case TYPE_TEXT:
+                    return TextElement.CREATOR.createFromParcel(in);
+                case TYPE_SHAPE:
+                    return ShapeElement.CREATOR.createFromParcel(in);
+                case TYPE_IMAGE:
+                    return ImageElement.CREATOR.createFromParcel(in);
+                default:
+                    throw new IllegalArgumentException("Unknown element type " + type);
+            }
         }
 
         @Override
@@ -76,6 +120,16 @@ public abstract class LogoElement implements Parcelable {
         }
     };
     
+    /**
+     * Write an element with its type, so {@link #CREATOR} can read it back
+     * @param dest Parcel to write to
+     * @param flags Flags for writing
+     */
+    public void writeTypedElement(Parcel dest, int flags) {
+        dest.writeInt(getType());
+        writeToParcel(dest, flags);
+    }
+    
     /**
      * Write common element data to a Parcel
      * @param dest Parcel to write to
@@ -94,6 +148,23 @@ public abstract class LogoElement implements Parcelable {
         dest.writeByte((byte) (locked ? 1 : 0));
     }
     
+    /**
+     * Write common element data for storage. Subclasses append their own
+     * data after calling through, in the order their codec constructor reads it.
+     * @param out Output to write to
+     */
+    void write(LogoCodec.Output out) {
+        out.writeString(id);
+        out.writeFloat(x);
+        out.writeFloat(y);
+        out.writeFloat(width);
+        out.writeFloat(height);
+        out.writeFloat(rotation);
+        out.writeFloat(scale);
+        out.writeVarInt(opacity);
+        out.writeByte(locked ? 1 : 0);
+    }
+    
     @Override
     public int describeContents() {
         return 0;
@@ -104,19 +175,87 @@ public abstract class LogoElement implements Parcelable {
      * @param canvas Canvas to draw on
      * @param paint Paint to use for drawing
      */
-    public abstract void draw(Canvas canvas, Paint paint);
+    public void draw(Canvas canvas, Paint paint) {
+        draw(canvas, paint, 1f);
+    }
+    
+    /**
+     * Draw the element on a canvas that is scaled relative to logo units
+     * @param canvas Canvas to draw on
+     * @param paint Paint to use for drawing
+     * @param contentScale Device pixels per logo unit on this canvas
+     */
+    public void draw(Canvas canvas, Paint paint, float contentScale) {
+        canvas.save();
+        applyTransform(canvas);
+        drawContent(canvas, contentScale * scale);
+        canvas.restore();
+    }
+    
+    /**
+     * Draw the element into its own box (0, 0, width, height), without
+     * applying position, rotation or scale. Implementations must not change
+     * their paints here, as elements may be drawn on several threads at once.
+     * @param canvas Canvas to draw on
+     * @param deviceScale Device pixels per element unit; thin strokes and
+     *                    small text are adjusted for it when a display list
+     *                    replays the recorded commands
+     */
+    public abstract void drawContent(Canvas canvas, float deviceScale);
+    
+    /**
+     * Get the version stamp of this element's content. It changes whenever a
+     * property that affects how the element looks is set; moving, rotating or
+     * scaling the element leaves it unchanged.
+     * @return Version stamp, unique across all elements
+     */
+    public long getVersion() {
+        return version;
+    }
+    
+    /**
+     * Get the version stamp of this element's placement. It changes whenever
+     * the element is moved, rotated, scaled or resized.
+     * @return Version stamp, only meaningful for this element
+     */
+    public long getTransformVersion() {
+        return transformVersion;
+    }
+    
+    /**
+     * Record that the element's content changed
+     */
+    protected void markChanged() {
+        version = VERSION_COUNTER.incrementAndGet();
+        // Strokes and decorations may have changed the painted area
+        notifyBoundsChanged();
+    }
     
     /**
      * Get the transformation matrix for this element
      * @return Matrix containing all transformations
      */
     public Matrix getTransformMatrix() {
-        Matrix matrix = new Matrix();
-        matrix.postTranslate(-width / 2, -height / 2); // Center the element
-        matrix.postScale(scale, scale);
-        matrix.postRotate(rotation);
-        matrix.postTranslate(x, y);
-        return matrix;
+        updateTransform();
+        return new Matrix(transformMatrix);
+    }
+    
+    /**
+     * Get the transformation matrix for this element without allocating
+     * @param out Matrix that receives all transformations
+     */
+    public void getTransformMatrix(Matrix out) {
+        updateTransform();
+        out.set(transformMatrix);
+    }
+    
+    /**
+     * Apply this element's transformation to a canvas
+     * @param canvas Canvas to transform
+     */
+    public void applyTransform(Canvas canvas) {
+        updateTransform();
+        canvas.concat(transformMatrix);
     }
     
     /**
@@ -124,12 +263,109 @@ public abstract class LogoElement implements Parcelable {
      * @return RectF containing the bounds
      */
     public RectF getBounds() {
-        RectF bounds = new RectF(-width / 2, -height / 2, width / 2, height / 2);
-        Matrix matrix = getTransformMatrix();
-        matrix.mapRect(bounds);
+        RectF bounds = new RectF();
+        getBounds(bounds);
+        return bounds;
+    }
+    
+    /**
+     * Get the bounding box of this element without allocating
+     * @param out RectF that receives the bounds
+     */
+    public void getBounds(RectF out) {
+        updateTransform();
+        out.set(transformedBounds);
+    }
+    
+    /**
+     * Check whether a point in logo coordinates lies on this element,
+     * taking rotation and scale into account
+     * @param px X coordinate
+     * @param py Y coordinate
+     * @return True if the point is inside the element box
+     */
+    public boolean containsPoint(float px, float py) {
+        updateTransform();
+        if (!invertible) {
+            return false;
+        }
+        
+        hitPoint[0] = px;
+        hitPoint[1] = py;
+        inverseMatrix.mapPoints(hitPoint);
+        return hitPoint[0] >= 0 && hitPoint[0] <= getWidth()
+                && hitPoint[1] >= 0 && hitPoint[1] <= getHeight();
+    }
+    
+    /**
+     * Mark the cached transform as stale. Called whenever the position,
+     * rotation, scale or size of the element changes.
+     */
+    protected void invalidateTransform() {
+        transformDirty = true;
+        transformVersion++;
+        notifyBoundsChanged();
+    }
+    
+    private void notifyBoundsChanged() {
+        if (owner != null) {
+            owner.onElementBoundsChanged(this);
+        }
+    }
+    
+    /**
+     * Rebuild the cached transform, inverse and bounds if they are stale
+     */
+    private void updateTransform() {
+        if (!transformDirty) {
+            return;
+        }
+        
+        float width = getWidth();
+        float height = getHeight();
+        transformMatrix.reset();
+        transformMatrix.postTranslate(-width / 2, -height / 2); // Center the element
+        transformMatrix.postScale(scale, scale);
+        transformMatrix.postRotate(rotation);
+        transformMatrix.postTranslate(x, y);
+        invertible = transformMatrix.invert(inverseMatrix);
+        
+        // Elements draw into the box (0, 0, width, height) before the transform is applied
+        transformedBounds.set(0, 0, width, height);
+        transformMatrix.mapRect(transformedBounds);
+        transformDirty = false;
+    }
+    
+    /**
+     * Get the area this element may paint on the canvas, including strokes
+     * and decorations that reach outside of {@link #getBounds()}
+     * @return RectF containing the painted area
+     */
+    public RectF getDrawBounds() {
+        RectF bounds = new RectF();
+        getDrawBounds(bounds);
         return bounds;
     }
     
+    /**
+     * Get the painted area of this element without allocating
+     * @param out RectF that receives the painted area
+     */
+    public void getDrawBounds(RectF out) {
+        getBounds(out);
+        // One extra pixel covers anti-aliased edges
+        float outset = getPaintOutset() * scale + 1;
+        out.inset(-outset, -outset);
+    }
+    
+    /**
+     * How far painted pixels may extend beyond the element box, before scaling
+     * @return Outset in element units
+     */
+    public float getPaintOutset() {
+        return 0;
+    }
+    
     /**
      * Get the element ID
      * @return Element ID
@@ -152,6 +388,7 @@ public abstract class LogoElement implements Parcelable {
      */
     public void setX(float x) {
         this.x = x;
+        invalidateTransform();
     }
     
     /**
@@ -168,6 +405,7 @@ public abstract class LogoElement implements Parcelable {
      */
     public void setY(float y) {
         this.y = y;
+        invalidateTransform();
     }
     
     /**
@@ -178,6 +416,7 @@ public abstract class LogoElement implements Parcelable {
     public void setPosition(float x, float y) {
         this.x = x;
         this.y = y;
+        invalidateTransform();
     }
     
     /**
@@ -194,6 +433,8 @@ public abstract class LogoElement implements Parcelable {
      */
     public void setWidth(float width) {
         this.width = width;
+        markChanged();
+        invalidateTransform();
     }
     
     /**
@@ -210,6 +451,8 @@ public abstract class LogoElement implements Parcelable {
      */
     public void setHeight(float height) {
         this.height = height;
+        markChanged();
+        invalidateTransform();
     }
     
     /**
@@ -220,6 +463,8 @@ public abstract class LogoElement implements Parcelable {
     public void setSize(float width, float height) {
         this.width = width;
         this.height = height;
+        markChanged();
+        invalidateTransform();
     }
     
     /**
@@ -236,6 +481,7 @@ public abstract class LogoElement implements Parcelable {
      */
     public void setRotation(float rotation) {
         this.rotation = rotation;
+        invalidateTransform();
     }
     
     /**
@@ -252,6 +498,7 @@ public abstract class LogoElement implements Parcelable {
      */
     public void setScale(float scale) {
         this.scale = scale;
+        invalidateTransform();
     }
     
     /**
@@ -268,6 +515,7 @@ public abstract class LogoElement implements Parcelable {
      */
     public void setOpacity(int opacity) {
         this.opacity = Math.max(0, Math.min(255, opacity));
+        markChanged();
     }
     
     /**
@@ -300,6 +548,7 @@ public abstract class LogoElement implements Parcelable {
      */
     public void setSelected(boolean selected) {
         this.selected = selected;
+        markChanged();
     }
     
     /**
@@ -0,0 +1,83 @@
+package com.logomaker.app.model;
+
+/**
+ * What lists of saved logos show about a logo, available without loading
+ * its elements
+ */
+public final class LogoSummary {
+
+    private final String id;
+    private final String name;
+    private final long lastModified;
+    private final String thumbnailPath;
+    private final int elementCount;
+    private final long byteSize;
+
+    /**
+     * @param elementCount Number of elements in the logo
+     * @param byteSize Size of the stored logo in bytes
+     */
+    public LogoSummary(String id, String name, long lastModified, String thumbnailPath,
+                       int elementCount, long byteSize) {
+        this.id = id;
+        this.name = name;
+        this.lastModified = lastModified;
+        this.thumbnailPath = thumbnailPath;
+        this.elementCount = elementCount;
+        this.byteSize = byteSize;
+    }
+
+    /**
+     * Create a summary from stored data
+     * @param in Input positioned at the summary
+     */
+    LogoSummary(LogoCodec.Input in) {
+        id = in.readString();
+        name = in.readString();
+        lastModified = in.readVarLong();
+        thumbnailPath = in.readString();
+        elementCount = in.readVarInt();
+        byteSize = in.readVarLong();
+    }
+
+    /**
+     * Write the summary for storage
+     * @param out Output to write to
+     */
+    void write(LogoCodec.Output out) {
+        out.writeString(id);
+        out.writeString(name);
+        out.writeVarLong(lastModified);
+        out.writeString(thumbnailPath);
+        out.writeVarInt(elementCount);
+        out.writeVarLong(byteSize);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    /**
+     * Get the path of the saved thumbnail
+     * @return The path, or null if no thumbnail was saved
+     */
+    public String getThumbnailPath() {
+        return thumbnailPath;
+    }
+
+    public int getElementCount() {
+        return elementCount;
+    }
+
+    public long getByteSize() {
+        return byteSize;
+    }
+}
@@ -4,10 +4,17 @@ import android.graphics.Canvas;
 import android.graphics.Matrix;
 import android.graphics.Paint;
 import android.graphics.Path;
+import android.graphics.PathMeasure;
 import android.graphics.RectF;
 import android.os.Parcel;
 import android.os.Parcelable;
 
+import com.logomaker.app.render.ShapePathCache;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * A shape element for logos
  */
@@ -22,9 +29,10 @@ public class ShapeElement extends LogoElement {
     public static final int SHAPE_POLYGON = 6;
     public static final int SHAPE_CUSTOM = 7;
     
+    // Distance between the points a custom path is stored as
+    private static final float PATH_SAMPLE_STEP = 2f;
+    
     private int shapeType;
-    private float width;
-    private float height;
     private int fillColor;
     private int strokeColor;
     private float strokeWidth;
@@ -36,6 +44,16 @@ public class ShapeElement extends LogoElement {
     private Paint fillPaint;
     private Paint strokePaint;
     
+    // Outline of triangle, star and polygon shapes and the parameters it was built for
+    private Path shapePath;
+    private int pathShapeType;
+    private int pathSides;
+    private float pathWidth;
+    private float pathHeight;
+    
+    // Reused while drawing so frames don't allocate
+    private final RectF shapeRect = new RectF();
+    
     /**
      * Create a new shape element
      */
@@ -82,21 +100,32 @@ public class ShapeElement extends LogoElement {
         hasFill = in.readByte() != 0;
         
         if (shapeType == SHAPE_CUSTOM) {
-            customPath = new Path();
-            customPath.rewind();
-            // Read the path data - this is a simplified example and may need enhancement
-            // In a real implementation, you might serialize the path data in a custom way
-            int pointCount = in.readInt();
-            float[] points = new float[pointCount * 2];
-            in.readFloatArray(points);
-            
-            if (pointCount > 0) {
-                customPath.moveTo(points[0], points[1]);
-                for (int i = 1; i < pointCount; i++) {
-                    customPath.lineTo(points[i*2], points[i*2+1]);
-                }
-                customPath.close();
-            }
+            // Written by writeToParcel in the stored format
+            byte[] path = in.createByteArray();
+            readCustomPath(new LogoCodec.Input(ByteBuffer.wrap(path)));
+        }
+        
+        setupPaints();
+    }
+    
+    /**
+     * Create a shape element from stored data
+     * @param in Input positioned after the common element data
+     */
+    ShapeElement(LogoCodec.Input in) {
+        super(in);
+        shapeType = in.readVarInt();
+        fillColor = in.readInt();
+        strokeColor = in.readInt();
+        strokeWidth = in.readFloat();
+        cornerRadius = in.readFloat();
+        sides = in.readVarInt();
+        int flags = in.readByte();
+        hasStroke = (flags & 1) != 0;
+        hasFill = (flags & 2) != 0;
+        
+        if (shapeType == SHAPE_CUSTOM) {
+            readCustomPath(in);
         }
         
         setupPaints();
@@ -128,26 +157,85 @@ public class ShapeElement extends LogoElement {
         dest.writeByte((byte) (hasStroke ? 1 : 0));
         dest.writeByte((byte) (hasFill ? 1 : 0));
         
-        if (shapeType == SHAPE_CUSTOM && customPath != null) {
-            // This is a simplified example for saving path data
-            // In a real implementation, you might need a more robust way to serialize paths
-            // Calculate the number of points in the path
-            float[] pathPoints = new float[100]; // Assuming maximum 50 points
-            int pointCount = getPointsFromPath(customPath, pathPoints);
-            
-            dest.writeInt(pointCount);
-            dest.writeFloatArray(pathPoints);
+        if (shapeType == SHAPE_CUSTOM) {
+            // The stored format, which also covers a missing path
+            LogoCodec.Output path = new LogoCodec.Output();
+            writeCustomPath(path);
+            dest.writeByteArray(path.toByteArray());
+        }
+    }
+    
+    @Override
+    void write(LogoCodec.Output out) {
+        super.write(out);
+        out.writeVarInt(shapeType);
+        out.writeInt(fillColor);
+        out.writeInt(strokeColor);
+        out.writeFloat(strokeWidth);
+        out.writeFloat(cornerRadius);
+        out.writeVarInt(sides);
+        out.writeByte((hasStroke ? 1 : 0) | (hasFill ? 2 : 0));
+        
+        if (shapeType == SHAPE_CUSTOM) {
+            writeCustomPath(out);
         }
     }
     
     /**
-     * Helper method to extract points from a path
-     * This is a simplified implementation and may need enhancement
+     * Write the custom path as sampled polylines, since a Path can't be read back segment by segment
      */
-    private int getPointsFromPath(Path path, float[] points) {
-        // In a real implementation, you would extract the actual points
-        // For simplicity, this example returns 0 points
-        return 0;
+    private void writeCustomPath(LogoCodec.Output out) {
+        if (customPath == null) {
+            out.writeVarInt(0);
+            return;
+        }
+        
+        List<float[]> contours = new ArrayList<>();
+        List<Boolean> closed = new ArrayList<>();
+        PathMeasure measure = new PathMeasure(customPath, false);
+        float[] position = new float[2];
+        do {
+            float length = measure.getLength();
+            if (length <= 0) {
+                continue;
+            }
+            int steps = Math.max(1, (int) Math.ceil(length / PATH_SAMPLE_STEP));
+            float[] points = new float[(steps + 1) * 2];
+            for (int i = 0; i <= steps; i++) {
+                measure.getPosTan(length * i / steps, position, null);
+                points[i * 2] = position[0];
+                points[i * 2 + 1] = position[1];
+            }
+            contours.add(points);
+            closed.add(measure.isClosed());
+        } while (measure.nextContour());
+        
+        out.writeVarInt(contours.size());
+        for (int c = 0; c < contours.size(); c++) {
+            out.writeByte(closed.get(c) ? 1 : 0);
+            out.writeFloatArray(contours.get(c));
+        }
+    }
+    
+    /**
+     * Read a custom path written by {@link #writeCustomPath}, one polyline per contour
+     */
+    private void readCustomPath(LogoCodec.Input in) {
+        int contours = in.readVarInt();
+        if (contours > 0) {
+            customPath = new Path();
+        }
+        for (int c = 0; c < contours; c++) {
+            boolean closed = in.readByte() != 0;
+            float[] points = in.readFloatArray();
+            customPath.moveTo(points[0], points[1]);
+            for (int i = 2; i < points.length; i += 2) {
+                customPath.lineTo(points[i], points[i + 1]);
+            }
+            if (closed) {
+                customPath.close();
+            }
+        }
     }
     
     private void setupPaints() {
@@ -162,13 +250,12 @@ public class ShapeElement extends LogoElement {
     }
     
     @Override
-    public void draw(Canvas canvas, Paint paint) {
-        canvas.save();
-        canvas.concat(getTransformMatrix());
-        
-        float centerX = 0;
-        float centerY = 0;
+    public void drawContent(Canvas canvas, float deviceScale) {
+        float centerX = width / 2;
+        float centerY = height / 2;
         
+        // The paints are shared by every thread drawing this element, so they are
+        // left as set up; replaying a display list widens strokes thinner than a pixel
         switch (shapeType) {
             case SHAPE_RECTANGLE:
                 drawRectangle(canvas, centerX, centerY);
@@ -180,22 +267,18 @@ public class ShapeElement extends LogoElement {
                 drawCircle(canvas, centerX, centerY);
                 break;
             case SHAPE_OVAL:
-                RectF ovalRect = new RectF(-width / 2, -height / 2, width / 2, height / 2);
+                shapeRect.set(0, 0, width, height);
                 if (hasFill) {
-                    canvas.drawOval(ovalRect, fillPaint);
+                    canvas.drawOval(shapeRect, fillPaint);
                 }
                 if (hasStroke) {
-                    canvas.drawOval(ovalRect, strokePaint);
+                    canvas.drawOval(shapeRect, strokePaint);
                 }
                 break;
             case SHAPE_TRIANGLE:
-                drawTriangle(canvas, centerX, centerY);
-                break;
             case SHAPE_STAR:
-                drawStar(canvas, centerX, centerY);
-                break;
             case SHAPE_POLYGON:
-                drawPolygon(canvas, sides, centerX, centerY);
+                drawOutline(canvas);
                 break;
             case SHAPE_CUSTOM:
                 if (customPath != null) {
@@ -208,17 +291,21 @@ public class ShapeElement extends LogoElement {
                 }
                 break;
         }
-        
-        canvas.restore();
+    }
+    
+    @Override
+    public float getPaintOutset() {
+        // Strokes are centered on the outline, so half of them falls outside
+        return hasStroke ? strokeWidth / 2 : 0;
     }
     
     private void drawRectangle(Canvas canvas, float centerX, float centerY) {
-        RectF rect = new RectF(centerX - width / 2, centerY - height / 2, centerX + width / 2, centerY + height / 2);
+        shapeRect.set(centerX - width / 2, centerY - height / 2, centerX + width / 2, centerY + height / 2);
         if (hasFill) {
-            canvas.drawRect(rect, fillPaint);
+            canvas.drawRect(shapeRect, fillPaint);
         }
         if (hasStroke) {
-            canvas.drawRect(rect, strokePaint);
+            canvas.drawRect(shapeRect, strokePaint);
         }
     }
     
@@ -232,13 +319,8 @@ public class ShapeElement extends LogoElement {
         }
     }
     
-    private void drawTriangle(Canvas canvas, float centerX, float centerY) {
-        Path path = new Path();
-        path.moveTo(centerX, centerY - height / 2);
-        path.lineTo(centerX + width / 2, centerY + height / 2);
-        path.lineTo(centerX - width / 2, centerY + height / 2);
-        path.close();
-        
+    private void drawOutline(Canvas canvas) {
+        Path path = getShapePath();
         if (hasFill) {
             canvas.drawPath(path, fillPaint);
         }
@@ -247,70 +329,31 @@ public class ShapeElement extends LogoElement {
         }
     }
     
-    private void drawStar(Canvas canvas, float centerX, float centerY) {
-        Path path = new Path();
-        float outerRadius = Math.min(width, height) / 2;
-        float innerRadius = outerRadius * 0.4f;
-        int numPoints = 5;
-        float angleStep = (float) (Math.PI / numPoints);
-        
-        for (int i = 0; i < numPoints * 2; i++) {
-            float radius = (i % 2 == 0) ? outerRadius : innerRadius;
-            float angle = i * angleStep - (float) Math.PI / 2;
-            float x = centerX + (float) (radius * Math.cos(angle));
-            float y = centerY + (float) (radius * Math.sin(angle));
-            
-            if (i == 0) {
-                path.moveTo(x, y);
-            } else {
-                path.lineTo(x, y);
-            }
-        }
-        path.close();
-        
-        if (hasFill) {
-            canvas.drawPath(path, fillPaint);
-        }
-        if (hasStroke) {
-            canvas.drawPath(path, strokePaint);
+    /**
+     * Get the outline for triangle, star and polygon shapes, rebuilding it
+     * only when the parameters it depends on changed
+     */
+    private Path getShapePath() {
+        if (shapePath == null || pathShapeType != shapeType || pathSides != sides
+                || pathWidth != width || pathHeight != height) {
+            shapePath = ShapePathCache.get(shapeType, sides, width, height);
+            pathShapeType = shapeType;
+            pathSides = sides;
+            pathWidth = width;
+            pathHeight = height;
         }
+        return shapePath;
     }
     
     private void drawRoundedRectangle(Canvas canvas, float centerX, float centerY) {
-        RectF rect = new RectF(centerX - width / 2, centerY - height / 2, centerX + width / 2, centerY + height / 2);
+        shapeRect.set(centerX - width / 2, centerY - height / 2, centerX + width / 2, centerY + height / 2);
         float cornerRadius = Math.min(width, height) * 0.2f;
         
         if (hasFill) {
-            canvas.drawRoundRect(rect, cornerRadius, cornerRadius, fillPaint);
+            canvas.drawRoundRect(shapeRect, cornerRadius, cornerRadius, fillPaint);
         }
         if (hasStroke) {
-            canvas.drawRoundRect(rect, cornerRadius, cornerRadius, strokePaint);
-        }
-    }
-    
-    private void drawPolygon(Canvas canvas, int sides, float centerX, float centerY) {
-        double angle = 2.0 * Math.PI / sides;
-        float radius = Math.min(width, height) / 2;
-        
-        Path path = new Path();
-        for (int i = 0; i < sides; i++) {
-            double theta = i * angle - Math.PI / 2;
-            float x = (float) (radius * Math.cos(theta));
-            float y = (float) (radius * Math.sin(theta));
-            
-            if (i == 0) {
-                path.moveTo(x, y);
-            } else {
-                path.lineTo(x, y);
-            }
-        }
-        path.close();
-        
-        if (hasFill) {
-            canvas.drawPath(path, fillPaint);
-        }
-        if (hasStroke) {
-            canvas.drawPath(path, strokePaint);
+            canvas.drawRoundRect(shapeRect, cornerRadius, cornerRadius, strokePaint);
         }
     }
     
@@ -328,16 +371,7 @@ public class ShapeElement extends LogoElement {
      */
     public void setShapeType(int shapeType) {
         this.shapeType = shapeType;
-    }
-    
-    @Override
-    public float getWidth() {
-        return width;
-    }
-    
-    @Override
-    public float getHeight() {
-        return height;
+        markChanged();
     }
     
     /**
@@ -355,6 +389,7 @@ public class ShapeElement extends LogoElement {
     public void setFillColor(int fillColor) {
         this.fillColor = fillColor;
         fillPaint.setColor(fillColor);
+        markChanged();
     }
     
     /**
@@ -372,6 +407,7 @@ public class ShapeElement extends LogoElement {
     public void setStrokeColor(int strokeColor) {
         this.strokeColor = strokeColor;
         strokePaint.setColor(strokeColor);
+        markChanged();
     }
     
     /**
@@ -389,6 +425,7 @@ public class ShapeElement extends LogoElement {
     public void setStrokeWidth(float strokeWidth) {
         this.strokeWidth = strokeWidth;
         strokePaint.setStrokeWidth(strokeWidth);
+        markChanged();
     }
     
     /**
@@ -405,6 +442,7 @@ public class ShapeElement extends LogoElement {
      */
     public void setCornerRadius(float cornerRadius) {
         this.cornerRadius = cornerRadius;
+        markChanged();
     }
     
     /**
@@ -424,6 +462,7 @@ public class ShapeElement extends LogoElement {
             throw new IllegalArgumentException("A polygon must have at least 3 sides");
         }
         this.sides = sides;
+        markChanged();
     }
     
     /**
@@ -440,6 +479,7 @@ public class ShapeElement extends LogoElement {
      */
     public void setCustomPath(Path customPath) {
         this.customPath = customPath;
+        markChanged();
     }
     
     /**
@@ -456,6 +496,7 @@ public class ShapeElement extends LogoElement {
      */
     public void setHasStroke(boolean hasStroke) {
         this.hasStroke = hasStroke;
+        markChanged();
     }
     
     /**
@@ -472,6 +513,7 @@ public class ShapeElement extends LogoElement {
      */
     public void setHasFill(boolean hasFill) {
         this.hasFill = hasFill;
+        markChanged();
     }
     
     @Override
@@ -3,16 +3,33 @@ package com.logomaker.app.model;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
-import android.graphics.Rect;
+import android.graphics.Path;
+import android.graphics.PathMeasure;
+import android.graphics.RectF;
 import android.graphics.Typeface;
+import android.os.Build;
 import android.os.Parcel;
 import android.os.Parcelable;
+import android.text.Layout;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+
+import com.logomaker.app.util.FontCache;
 
 /**
  * A text element that can be added to a logo
  */
 public class TextElement extends LogoElement {
     
+    // Text path modes
+    public static final int PATH_NONE = 0;
+    public static final int PATH_ARC = 1;
+    public static final int PATH_CIRCLE = 2;
+    public static final int PATH_CUSTOM = 3;
+    
+    // Distance between the points a custom text path is stored as
+    private static final float PATH_SAMPLE_STEP = 4f;
+    
     public static final Parcelable.Creator<TextElement> CREATOR = new Parcelable.Creator<TextElement>() {
         @Override
         public TextElement createFromParcel(Parcel source) {
@@ -29,11 +46,32 @@ public class TextElement extends LogoElement {
     private int textColor;
     private float textSize;
     private Typeface typeface;
+    private String fontFamily;
     private boolean isBold;
     private boolean isItalic;
     private boolean isUnderlined;
-    private Paint textPaint;
-    private Rect textBounds;
+    private float wrapWidth;
+    private Layout.Alignment alignment;
+    private float lineSpacing;
+    private TextPaint textPaint;
+    
+    private int textPathMode;
+    private float arcAngle;
+    private float[] customPathPoints;
+    
+    // Laid out lines, rebuilt only when the text or its metrics change
+    private StaticLayout layout;
+    
+    // Glyph placements along the text path, rebuilt on the same changes as the layout
+    private int glyphCount;
+    private int[] glyphStarts = new int[0];
+    private int[] glyphEnds = new int[0];
+    private float[] glyphX = new float[0];
+    private float[] glyphY = new float[0];
+    private float[] glyphAngles = new float[0];
+    private float[] glyphAdvances = new float[0];
+    private float pathBoxWidth;
+    private float pathBoxHeight;
     
     /**
      * Create a new text element
@@ -47,10 +85,14 @@ public class TextElement extends LogoElement {
         isBold = false;
         isItalic = false;
         isUnderlined = false;
-        textPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        wrapWidth = 0;
+        alignment = Layout.Alignment.ALIGN_NORMAL;
+        lineSpacing = 1f;
+        textPathMode = PATH_NONE;
+        arcAngle = 120f;
+        textPaint = new TextPaint(Paint.ANTI_ALIAS_FLAG | Paint.SUBPIXEL_TEXT_FLAG);
         updateTextPaint();
-        textBounds = new Rect();
-        measureText();
+        buildLayout();
     }
     
     /**
@@ -64,10 +106,45 @@ public class TextElement extends LogoElement {
         isBold = in.readByte() != 0;
         isItalic = in.readByte() != 0;
         isUnderlined = in.readByte() != 0;
-        textPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        wrapWidth = in.readFloat();
+        alignment = Layout.Alignment.values()[in.readInt()];
+        lineSpacing = in.readFloat();
+        fontFamily = in.readString();
+        if (fontFamily != null) {
+            typeface = FontCache.getTypeface(fontFamily, Typeface.NORMAL);
+        }
+        textPathMode = in.readInt();
+        arcAngle = in.readFloat();
+        customPathPoints = in.createFloatArray();
+        textPaint = new TextPaint(Paint.ANTI_ALIAS_FLAG | Paint.SUBPIXEL_TEXT_FLAG);
+        updateTextPaint();
+        buildLayout();
+    }
+    
+    /**
+     * Create a text element from stored data
+     * @param in Input positioned after the common element data
+     */
+    TextElement(LogoCodec.Input in) {
+        super(in);
+        text = in.readString();
+        textColor = in.readInt();
+        textSize = in.readFloat();
+        int flags = in.readByte();
+        isBold = (flags & 1) != 0;
+        isItalic = (flags & 2) != 0;
+        isUnderlined = (flags & 4) != 0;
+        wrapWidth = in.readFloat();
+        alignment = Layout.Alignment.values()[in.readVarInt()];
+        lineSpacing = in.readFloat();
+        fontFamily = in.readString();
+        typeface = fontFamily != null ? FontCache.getTypeface(fontFamily, Typeface.NORMAL) : Typeface.DEFAULT;
+        textPathMode = in.readVarInt();
+        arcAngle = in.readFloat();
+        customPathPoints = in.readFloatArray();
+        textPaint = new TextPaint(Paint.ANTI_ALIAS_FLAG | Paint.SUBPIXEL_TEXT_FLAG);
         updateTextPaint();
-        textBounds = new Rect();
-        measureText();
+        buildLayout();
     }
     
     @Override
@@ -79,6 +156,29 @@ public class TextElement extends LogoElement {
         dest.writeByte((byte) (isBold ? 1 : 0));
         dest.writeByte((byte) (isItalic ? 1 : 0));
         dest.writeByte((byte) (isUnderlined ? 1 : 0));
+        dest.writeFloat(wrapWidth);
+        dest.writeInt(alignment.ordinal());
+        dest.writeFloat(lineSpacing);
+        dest.writeString(fontFamily);
+        dest.writeInt(textPathMode);
+        dest.writeFloat(arcAngle);
+        dest.writeFloatArray(customPathPoints);
+    }
+    
+    @Override
+    void write(LogoCodec.Output out) {
+        super.write(out);
+        out.writeString(text);
+        out.writeInt(textColor);
+        out.writeFloat(textSize);
+        out.writeByte((isBold ? 1 : 0) | (isItalic ? 2 : 0) | (isUnderlined ? 4 : 0));
+        out.writeFloat(wrapWidth);
+        out.writeVarInt(alignment.ordinal());
+        out.writeFloat(lineSpacing);
+        out.writeString(fontFamily);
+        out.writeVarInt(textPathMode);
+        out.writeFloat(arcAngle);
+        out.writeFloatArray(customPathPoints);
     }
     
     /**
@@ -91,34 +191,39 @@ public class TextElement extends LogoElement {
     }
     
     @Override
-    public void draw(Canvas canvas, Paint paint) {
-        canvas.save();
-        canvas.concat(getTransformMatrix());
-        
-        // Draw text
-        canvas.drawText(text, -textBounds.left, -textBounds.top, textPaint);
-        
-        // Draw underline if needed
-        if (isUnderlined) {
-            Paint underlinePaint = new Paint(textPaint);
-            underlinePaint.setStyle(Paint.Style.STROKE);
-            underlinePaint.setStrokeWidth(textSize / 20);
-            canvas.drawLine(-textBounds.left, -textBounds.top + textBounds.height() + 5,
-                    -textBounds.left + textBounds.width(), -textBounds.top + textBounds.height() + 5,
-                    underlinePaint);
+    public void drawContent(Canvas canvas, float deviceScale) {
+        // The paint is shared by every thread drawing this element, so it is
+        // left as set up; replaying a display list turns hinting off when scaled down
+        if (textPathMode != PATH_NONE) {
+            // Each glyph is centered on its point of the path and turned along it
+            for (int i = 0; i < glyphCount; i++) {
+                canvas.save();
+                canvas.translate(glyphX[i], glyphY[i]);
+                canvas.rotate(glyphAngles[i]);
+                canvas.drawText(text, glyphStarts[i], glyphEnds[i], -glyphAdvances[i] / 2, 0, textPaint);
+                canvas.restore();
+            }
+            return;
         }
         
-        canvas.restore();
+        // The layout draws every line, including underlines, with the text paint
+        layout.draw(canvas);
+    }
+    
+    @Override
+    public float getPaintOutset() {
+        // Italic and decorative glyphs may overhang the line box slightly
+        return textSize / 8;
     }
     
     @Override
     public float getWidth() {
-        return textBounds.width();
+        return textPathMode != PATH_NONE ? pathBoxWidth : layout.getWidth();
     }
     
     @Override
     public float getHeight() {
-        return textBounds.height();
+        return textPathMode != PATH_NONE ? pathBoxHeight : layout.getHeight();
     }
     
     @Override
@@ -128,9 +233,16 @@ public class TextElement extends LogoElement {
         clone.textColor = this.textColor;
         clone.textSize = this.textSize;
         clone.typeface = this.typeface;
+        clone.fontFamily = this.fontFamily;
         clone.isBold = this.isBold;
         clone.isItalic = this.isItalic;
         clone.isUnderlined = this.isUnderlined;
+        clone.wrapWidth = this.wrapWidth;
+        clone.alignment = this.alignment;
+        clone.lineSpacing = this.lineSpacing;
+        clone.textPathMode = this.textPathMode;
+        clone.arcAngle = this.arcAngle;
+        clone.customPathPoints = this.customPathPoints != null ? this.customPathPoints.clone() : null;
         clone.x = this.x;
         clone.y = this.y;
         clone.rotation = this.rotation;
@@ -138,7 +250,7 @@ public class TextElement extends LogoElement {
         clone.opacity = this.opacity;
         clone.locked = this.locked;
         clone.updateTextPaint();
-        clone.measureText();
+        clone.buildLayout();
         return clone;
     }
     
@@ -154,7 +266,8 @@ public class TextElement extends LogoElement {
      */
     public void setText(String text) {
         this.text = text;
-        measureText();
+        buildLayout();
+        markChanged();
     }
     
     /**
@@ -170,6 +283,7 @@ public class TextElement extends LogoElement {
     public void setTextColor(int textColor) {
         this.textColor = textColor;
         updateTextPaint();
+        markChanged();
     }
     
     /**
@@ -185,7 +299,8 @@ public class TextElement extends LogoElement {
     public void setTextSize(float textSize) {
         this.textSize = textSize;
         updateTextPaint();
-        measureText();
+        buildLayout();
+        markChanged();
     }
     
     /**
@@ -200,8 +315,29 @@ public class TextElement extends LogoElement {
      */
     public void setTypeface(Typeface typeface) {
         this.typeface = typeface;
+        this.fontFamily = null;
+        updateTextPaint();
+        buildLayout();
+        markChanged();
+    }
+    
+    /**
+     * Get the name of the font family
+     * @return Family name, or null if the typeface was set directly
+     */
+    public String getFontFamily() {
+        return fontFamily;
+    }
+    
+    /**
+     * Set the typeface by font family name, such as "serif" or "sans-serif-condensed"
+     */
+    public void setFontFamily(String fontFamily) {
+        this.typeface = FontCache.getTypeface(fontFamily, Typeface.NORMAL);
+        this.fontFamily = fontFamily;
         updateTextPaint();
-        measureText();
+        buildLayout();
+        markChanged();
     }
     
     /**
@@ -217,7 +353,8 @@ public class TextElement extends LogoElement {
     public void setBold(boolean bold) {
         isBold = bold;
         updateTextPaint();
-        measureText();
+        buildLayout();
+        markChanged();
     }
     
     /**
@@ -233,7 +370,8 @@ public class TextElement extends LogoElement {
     public void setItalic(boolean italic) {
         isItalic = italic;
         updateTextPaint();
-        measureText();
+        buildLayout();
+        markChanged();
     }
     
     /**
@@ -248,6 +386,166 @@ public class TextElement extends LogoElement {
      */
     public void setUnderlined(boolean underlined) {
         isUnderlined = underlined;
+        // Underlines don't change the line metrics, so the layout is kept
+        textPaint.setUnderlineText(underlined);
+        markChanged();
+    }
+    
+    /**
+     * Get the width lines are wrapped at
+     * @return Wrap width, or 0 if lines only break at newlines
+     */
+    public float getWrapWidth() {
+        return wrapWidth;
+    }
+    
+    /**
+     * Set the width lines are wrapped at
+     * @param wrapWidth Wrap width, or 0 to only break lines at newlines
+     */
+    public void setWrapWidth(float wrapWidth) {
+        this.wrapWidth = Math.max(0, wrapWidth);
+        buildLayout();
+        markChanged();
+    }
+    
+    /**
+     * Get the alignment of the lines
+     */
+    public Layout.Alignment getAlignment() {
+        return alignment;
+    }
+    
+    /**
+     * Set the alignment of the lines
+     */
+    public void setAlignment(Layout.Alignment alignment) {
+        this.alignment = alignment;
+        buildLayout();
+        markChanged();
+    }
+    
+    /**
+     * Get the line spacing
+     * @return Multiple of the font's line height
+     */
+    public float getLineSpacing() {
+        return lineSpacing;
+    }
+    
+    /**
+     * Set the line spacing
+     * @param lineSpacing Multiple of the font's line height
+     */
+    public void setLineSpacing(float lineSpacing) {
+        this.lineSpacing = lineSpacing;
+        buildLayout();
+        markChanged();
+    }
+    
+    /**
+     * Get the laid out lines
+     * @return The layout, or null while the text follows a path
+     */
+    public Layout getLayout() {
+        return layout;
+    }
+    
+    /**
+     * Get the paint the text is drawn with
+     */
+    public TextPaint getTextPaint() {
+        return textPaint;
+    }
+    
+    /**
+     * Get the number of glyphs placed along the text path
+     */
+    public int getGlyphCount() {
+        return glyphCount;
+    }
+    
+    /**
+     * Get the text range of a glyph placed along the text path
+     * @param index Glyph index
+     * @param out Receives the start and end of the range in the text
+     */
+    public void getGlyphRange(int index, int[] out) {
+        out[0] = glyphStarts[index];
+        out[1] = glyphEnds[index];
+    }
+    
+    /**
+     * Get where a glyph is placed along the text path
+     * @param index Glyph index
+     * @param out Receives the x and y of the glyph center on the baseline,
+     *            its angle in degrees and its advance
+     */
+    public void getGlyphPlacement(int index, float[] out) {
+        out[0] = glyphX[index];
+        out[1] = glyphY[index];
+        out[2] = glyphAngles[index];
+        out[3] = glyphAdvances[index];
+    }
+    
+    /**
+     * Get how the text is laid out
+     * @return PATH_NONE, PATH_ARC, PATH_CIRCLE or PATH_CUSTOM
+     */
+    public int getTextPathMode() {
+        return textPathMode;
+    }
+    
+    /**
+     * Set how the text is laid out. PATH_CUSTOM needs a path from {@link #setTextPath(Path)}.
+     * @param textPathMode PATH_NONE for lines, PATH_ARC, PATH_CIRCLE or PATH_CUSTOM to follow a path
+     */
+    public void setTextPathMode(int textPathMode) {
+        this.textPathMode = textPathMode;
+        buildLayout();
+        markChanged();
+    }
+    
+    /**
+     * Get the angle the arc of PATH_ARC text spans
+     * @return Angle in degrees, negative if the text curves downwards
+     */
+    public float getArcAngle() {
+        return arcAngle;
+    }
+    
+    /**
+     * Set the angle the arc of PATH_ARC text spans. The arc radius follows
+     * from the angle and the length of the text.
+     * @param arcAngle Angle in degrees, negative to curve the text downwards
+     */
+    public void setArcAngle(float arcAngle) {
+        this.arcAngle = arcAngle;
+        buildLayout();
+        markChanged();
+    }
+    
+    /**
+     * Make the text follow a path, such as the outline of a custom shape
+     * @param path The path, in any coordinates; the element box is fitted around the text
+     */
+    public void setTextPath(Path path) {
+        // Stored as points along the path so it can be written to a Parcel
+        PathMeasure measure = new PathMeasure(path, false);
+        float length = measure.getLength();
+        int steps = Math.max(1, (int) Math.ceil(length / PATH_SAMPLE_STEP));
+        float[] points = new float[(steps + 1) * 2];
+        float[] position = new float[2];
+        for (int i = 0; i <= steps; i++) {
+            measure.getPosTan(length * i / steps, position, null);
+            points[i * 2] = position[0];
+            points[i * 2 + 1] = position[1];
+        }
+        
+        customPathPoints = points;
+        textPathMode = PATH_CUSTOM;
+        buildLayout();
+        markChanged();
     }
     
     /**
@@ -258,22 +556,155 @@ public class TextElement extends LogoElement {
         textPaint.setAlpha(opacity);
         textPaint.setTextSize(textSize);
         
-        int style = Typeface.NORMAL;
+        // Styled typefaces are shared by all text elements
+        textPaint.setTypeface(FontCache.getTypeface(typeface, getTypefaceStyle()));
+        textPaint.setUnderlineText(isUnderlined);
+        textPaint.setHinting(Paint.HINTING_ON);
+    }
+    
+    /**
+     * Get the Typeface style matching the bold and italic flags
+     */
+    private int getTypefaceStyle() {
         if (isBold && isItalic) {
-            style = Typeface.BOLD_ITALIC;
+            return Typeface.BOLD_ITALIC;
         } else if (isBold) {
-            style = Typeface.BOLD;
+            return Typeface.BOLD;
         } else if (isItalic) {
-            style = Typeface.ITALIC;
+            return Typeface.ITALIC;
+        }
+        return Typeface.NORMAL;
+    }
+    
+    /**
+     * Lay out the text. Only called when the text, its size, typeface or the
+     * line settings change; moving or rotating the element keeps the layout.
+     */
+    @SuppressWarnings("deprecation")
+    private void buildLayout() {
+        if (textPathMode != PATH_NONE) {
+            layout = null;
+            placeGlyphsOnPath();
+            invalidateTransform();
+            return;
         }
         
-        textPaint.setTypeface(Typeface.create(typeface, style));
+        // Without a wrap width the box is as wide as the longest line
+        float desiredWidth = wrapWidth > 0 ? wrapWidth
+                : FontCache.getDesiredWidth(textPaint, text, getTypefaceStyle());
+        int layoutWidth = Math.max(1, (int) Math.ceil(desiredWidth));
+        
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            layout = StaticLayout.Builder.obtain(text, 0, text.length(), textPaint, layoutWidth)
+                    .setAlignment(alignment)
+                    .setLineSpacing(0, lineSpacing)
+                    .setIncludePad(true)
+                    .build();
+        } else {
+            layout = new StaticLayout(text, textPaint, layoutWidth, alignment, lineSpacing, 0, true);
+        }
+        
+        // Width and height follow the layout, so the transform must be rebuilt
+        invalidateTransform();
     }
     
     /**
-     * Measure the text bounds
+     * Compute the position and angle of every glyph along the text path.
+     * Drawing then only reads these arrays, so curved text costs no path
+     * measuring per frame.
      */
-    private void measureText() {
-        textPaint.getTextBounds(text, 0, text.length(), textBounds);
+    private void placeGlyphsOnPath() {
+        int length = text.length();
+        float[] charAdvances = new float[length];
+        textPaint.getTextWidths(text, charAdvances);
+        if (glyphStarts.length < length) {
+            glyphStarts = new int[length];
+            glyphEnds = new int[length];
+            glyphX = new float[length];
+            glyphY = new float[length];
+            glyphAngles = new float[length];
+            glyphAdvances = new float[length];
+        }
+        
+        // One glyph per code point, so surrogate pairs stay together
+        glyphCount = 0;
+        float totalAdvance = 0;
+        for (int i = 0; i < length; ) {
+            int end = i + Character.charCount(text.codePointAt(i));
+            float advance = 0;
+            for (int j = i; j < end; j++) {
+                advance += charAdvances[j];
+            }
+            glyphStarts[glyphCount] = i;
+            glyphEnds[glyphCount] = end;
+            glyphAdvances[glyphCount] = advance;
+            glyphCount++;
+            totalAdvance += advance;
+            i = end;
+        }
+        
+        Path path = buildTextPath(totalAdvance);
+        PathMeasure measure = new PathMeasure(path, false);
+        float pathLength = measure.getLength();
+        
+        // Center the text on the path
+        float distance = Math.max(0, (pathLength - totalAdvance) / 2);
+        float[] position = new float[2];
+        float[] tangent = new float[2];
+        for (int i = 0; i < glyphCount; i++) {
+            float center = Math.min(distance + glyphAdvances[i] / 2, pathLength);
+            measure.getPosTan(center, position, tangent);
+            glyphX[i] = position[0];
+            glyphY[i] = position[1];
+            glyphAngles[i] = (float) Math.toDegrees(Math.atan2(tangent[1], tangent[0]));
+            distance += glyphAdvances[i];
+        }
+        
+        // Fit the element box around the glyphs, which reach about a text size from their point
+        RectF box = new RectF();
+        for (int i = 0; i < glyphCount; i++) {
+            float extent = Math.max(textSize, glyphAdvances[i] / 2);
+            if (i == 0) {
+                box.set(glyphX[i] - extent, glyphY[i] - extent, glyphX[i] + extent, glyphY[i] + extent);
+            } else {
+                box.union(glyphX[i] - extent, glyphY[i] - extent, glyphX[i] + extent, glyphY[i] + extent);
+            }
+        }
+        for (int i = 0; i < glyphCount; i++) {
+            glyphX[i] -= box.left;
+            glyphY[i] -= box.top;
+        }
+        pathBoxWidth = Math.max(1, box.width());
+        pathBoxHeight = Math.max(1, box.height());
+    }
+    
+    /**
+     * Build the path the text follows
+     * @param totalAdvance Length of the text along its baseline
+     */
+    private Path buildTextPath(float totalAdvance) {
+        Path path = new Path();
+        if (textPathMode == PATH_CUSTOM) {
+            if (customPathPoints != null && customPathPoints.length >= 2) {
+                path.moveTo(customPathPoints[0], customPathPoints[1]);
+                for (int i = 2; i < customPathPoints.length; i += 2) {
+                    path.lineTo(customPathPoints[i], customPathPoints[i + 1]);
+                }
+            }
+            return path;
+        }
+        
+        // Arcs are sized so the text spans exactly the requested angle
+        float angle = textPathMode == PATH_CIRCLE ? 360f : Math.max(1f, Math.min(360f, Math.abs(arcAngle)));
+        float radius = Math.max(1f, totalAdvance / (float) Math.toRadians(angle));
+        RectF oval = new RectF(-radius, -radius, radius, radius);
+        if (textPathMode == PATH_ARC && arcAngle < 0) {
+            // Along the bottom of the circle, still reading left to right
+            path.addArc(oval, 90 + angle / 2, -angle);
+        } else {
+            // Along the top of the circle, centered at the top
+            path.addArc(oval, -90 - angle / 2, angle);
+        }
+        return path;
     }
-} 
\ No newline at end of file
+}
@@ -0,0 +1,344 @@
+package com.logomaker.app.render;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.RectF;
+
+import com.logomaker.app.model.Logo;
+import com.logomaker.app.model.LogoElement;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+/**
+ * A logo compiled into flat arrays: one recorded {@link Segment} per element
+ * plus its transform and painted bounds. Replaying it draws the logo without
+ * walking the element model, and {@link #update(Logo)} only re-records the
+ * elements whose content changed since the last update.
+ * <p>
+ * A display list is not thread-safe. The one a logo keeps is updated from
+ * the element model, so it belongs to the main thread, which edits the
+ * model. To render on another thread, take a {@link #snapshot()} on the main
+ * thread and hand only the snapshot over.
+ */
+public class DisplayList {
+
+    private int count;
+    private int logoWidth;
+    private int logoHeight;
+    private int backgroundColor;
+    private LogoElement[] elements = new LogoElement[0];
+    private long[] contentVersions = new long[0];
+    private long[] transformVersions = new long[0];
+
+    // Recorded content, per element
+    String[] ids = new String[0];
+    Segment[] segments = new Segment[0];
+    float[] widths = new float[0];
+    float[] heights = new float[0];
+    float[] paddings = new float[0];
+
+    // Placement, per element: 9 matrix values, scale and painted bounds as left, top, right, bottom
+    float[] matrices = new float[0];
+    float[] scales = new float[0];
+    private float[] bounds = new float[0];
+
+    // Created on first use, snapshots never record
+    private DisplayListRecorder recorder;
+    private final Segment.Scratch scratch = new Segment.Scratch();
+    private final Matrix placeMatrix = new Matrix();
+    private final RectF placeBounds = new RectF();
+
+    /**
+     * Bring the display list up to date with a logo
+     * @param logo The logo
+     */
+    public void update(Logo logo) {
+        logoWidth = logo.getWidth();
+        logoHeight = logo.getHeight();
+        backgroundColor = logo.getBackgroundColor();
+        
+        List<LogoElement> source = logo.getElements();
+        if (!hasSameElements(source)) {
+            rebuild(source);
+        }
+
+        for (int i = 0; i < count; i++) {
+            LogoElement element = elements[i];
+            if (element.getVersion() != contentVersions[i]) {
+                record(i, element);
+                // The painted area depends on the content
+                place(i, element);
+            } else if (element.getTransformVersion() != transformVersions[i]) {
+                place(i, element);
+            }
+        }
+    }
+
+    /**
+     * Copy the current state, so it can be replayed on another thread while
+     * this list keeps being updated. Recorded segments are immutable and shared.
+     * @return A display list that stays unchanged
+     */
+    public DisplayList snapshot() {
+        DisplayList copy = new DisplayList();
+        copy.count = count;
+        copy.logoWidth = logoWidth;
+        copy.logoHeight = logoHeight;
+        copy.backgroundColor = backgroundColor;
+        copy.elements = elements.clone();
+        copy.contentVersions = contentVersions.clone();
+        copy.transformVersions = transformVersions.clone();
+        copy.ids = ids.clone();
+        copy.segments = segments.clone();
+        copy.widths = widths.clone();
+        copy.heights = heights.clone();
+        copy.paddings = paddings.clone();
+        copy.matrices = matrices.clone();
+        copy.scales = scales.clone();
+        copy.bounds = bounds.clone();
+        return copy;
+    }
+
+    /**
+     * Get the number of elements in the list
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Get the width of the logo at the last update
+     */
+    public int getLogoWidth() {
+        return logoWidth;
+    }
+
+    /**
+     * Get the height of the logo at the last update
+     */
+    public int getLogoHeight() {
+        return logoHeight;
+    }
+
+    /**
+     * Get the background color of the logo at the last update
+     */
+    public int getBackgroundColor() {
+        return backgroundColor;
+    }
+
+    /**
+     * Render the logo to a bitmap at its own size
+     */
+    public Bitmap render() {
+        Bitmap bitmap = Bitmap.createBitmap(logoWidth, logoHeight, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(bitmap);
+        canvas.drawColor(backgroundColor);
+        
+        // Layers are sized for the editor and resampled when drawn, so exports draw vectors
+        replay(canvas, 1f, null, null);
+        return bitmap;
+    }
+
+    /**
+     * Render the logo at any output size in tiles of any shape, so memory use
+     * depends on the tile size rather than the output size. Tiles are produced
+     * row by row, left to right; tiles as wide as the output become strips,
+     * which is what row-based encoders need. Elements are replayed without
+     * cached layers, so large outputs stay sharp.
+     * @param outputWidth Width of the full output in pixels
+     * @param outputHeight Height of the full output in pixels
+     * @param tileWidth Width of the tiles in pixels
+     * @param tileHeight Height of the tiles in pixels
+     * @param consumer Receives each tile as it is finished
+     */
+    public void renderTiles(int outputWidth, int outputHeight, int tileWidth, int tileHeight,
+                            Logo.TileConsumer consumer) {
+        float scaleX = (float) outputWidth / logoWidth;
+        float scaleY = (float) outputHeight / logoHeight;
+        
+        // A single tile bitmap is reused for the whole output
+        Bitmap tile = Bitmap.createBitmap(Math.min(tileWidth, outputWidth),
+                Math.min(tileHeight, outputHeight), Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(tile);
+        float contentScale = Math.min(scaleX, scaleY);
+        RectF tileArea = new RectF();
+        
+        try {
+            for (int top = 0; top < outputHeight; top += tile.getHeight()) {
+                int visibleHeight = Math.min(tile.getHeight(), outputHeight - top);
+                for (int left = 0; left < outputWidth; left += tile.getWidth()) {
+                    int visibleWidth = Math.min(tile.getWidth(), outputWidth - left);
+                    
+                    // Area under this tile in logo units, elements outside it are skipped
+                    tileArea.set(left / scaleX, top / scaleY,
+                            (left + visibleWidth) / scaleX, (top + visibleHeight) / scaleY);
+                    
+                    tile.eraseColor(backgroundColor);
+                    canvas.save();
+                    canvas.clipRect(0, 0, visibleWidth, visibleHeight);
+                    canvas.translate(-left, -top);
+                    canvas.scale(scaleX, scaleY);
+                    replay(canvas, contentScale, tileArea, null);
+                    canvas.restore();
+                    
+                    consumer.onTile(tile, left, top, visibleWidth, visibleHeight);
+                }
+            }
+        } finally {
+            tile.recycle();
+        }
+    }
+
+    /**
+     * Render a thumbnail of the logo straight at the target size
+     * @param targetWidth The width of the thumbnail
+     */
+    public Bitmap renderThumbnail(int targetWidth) {
+        float scale = (float) targetWidth / logoWidth;
+        int targetHeight = Math.max(1, (int) (logoHeight * scale));
+        
+        Bitmap thumbnail = Bitmap.createBitmap(targetWidth, targetHeight, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(thumbnail);
+        canvas.drawColor(backgroundColor);
+        canvas.scale(scale, scale);
+        
+        // Layers are sized for the editor, so elements are replayed directly here
+        replay(canvas, scale, null, null);
+        return thumbnail;
+    }
+
+    /**
+     * Draw the logo elements
+     * @param canvas Canvas to draw on, already scaled to logo units
+     * @param contentScale Device pixels per logo unit on this canvas
+     * @param clip Area in logo units to draw, or null to draw every element
+     * @param layers Cache to draw unchanged elements from, or null to replay every element
+     */
+    public void replay(Canvas canvas, float contentScale, RectF clip, ElementLayerCache layers) {
+        for (int i = 0; i < count; i++) {
+            int b = i * 4;
+            if (clip != null && (bounds[b] >= clip.right || bounds[b + 2] <= clip.left
+                    || bounds[b + 1] >= clip.bottom || bounds[b + 3] <= clip.top)) {
+                continue;
+            }
+
+            canvas.save();
+            System.arraycopy(matrices, i * 9, scratch.values, 0, 9);
+            scratch.matrix.setValues(scratch.values);
+            canvas.concat(scratch.matrix);
+            if (layers == null || !layers.draw(canvas, this, i, contentScale, scratch)) {
+                segments[i].replay(canvas, contentScale * scales[i], scratch);
+            }
+            canvas.restore();
+        }
+    }
+
+    /**
+     * Check whether the list still holds exactly these elements in this order
+     */
+    private boolean hasSameElements(List<LogoElement> source) {
+        if (source.size() != count) {
+            return false;
+        }
+        for (int i = 0; i < count; i++) {
+            if (source.get(i) != elements[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Lay the arrays out for a new set or order of elements, keeping the
+     * recorded content of elements that were already in the list
+     */
+    private void rebuild(List<LogoElement> source) {
+        IdentityHashMap<LogoElement, Integer> previous = new IdentityHashMap<>();
+        for (int i = 0; i < count; i++) {
+            previous.put(elements[i], i);
+        }
+
+        int newCount = source.size();
+        LogoElement[] newElements = new LogoElement[newCount];
+        long[] newContentVersions = new long[newCount];
+        String[] newIds = new String[newCount];
+        Segment[] newSegments = new Segment[newCount];
+        float[] newWidths = new float[newCount];
+        float[] newHeights = new float[newCount];
+        float[] newPaddings = new float[newCount];
+
+        for (int i = 0; i < newCount; i++) {
+            LogoElement element = source.get(i);
+            newElements[i] = element;
+            Integer old = previous.get(element);
+            if (old != null) {
+                newContentVersions[i] = contentVersions[old];
+                newIds[i] = ids[old];
+                newSegments[i] = segments[old];
+                newWidths[i] = widths[old];
+                newHeights[i] = heights[old];
+                newPaddings[i] = paddings[old];
+            } else {
+                // Forces the element to be recorded by update
+                newContentVersions[i] = -1;
+                newSegments[i] = Segment.EMPTY;
+            }
+        }
+
+        count = newCount;
+        elements = newElements;
+        contentVersions = newContentVersions;
+        ids = newIds;
+        segments = newSegments;
+        widths = newWidths;
+        heights = newHeights;
+        paddings = newPaddings;
+
+        // Placement is cheap to recompute, so every element is placed again
+        transformVersions = new long[newCount];
+        Arrays.fill(transformVersions, -1);
+        matrices = new float[newCount * 9];
+        scales = new float[newCount];
+        bounds = new float[newCount * 4];
+    }
+
+    /**
+     * Record the content of an element
+     */
+    private void record(int i, LogoElement element) {
+        if (recorder == null) {
+            recorder = new DisplayListRecorder();
+        }
+        recorder.begin();
+        // Stroke widening and hinting depend on the output scale, so they are applied on replay
+        element.drawContent(recorder, Float.POSITIVE_INFINITY);
+        segments[i] = recorder.finish();
+        contentVersions[i] = element.getVersion();
+        ids[i] = element.getId();
+        widths[i] = element.getWidth();
+        heights[i] = element.getHeight();
+        paddings[i] = element.getPaintOutset() + 1;
+    }
+
+    /**
+     * Store the transform and painted bounds of an element
+     */
+    private void place(int i, LogoElement element) {
+        element.getTransformMatrix(placeMatrix);
+        placeMatrix.getValues(scratch.values);
+        System.arraycopy(scratch.values, 0, matrices, i * 9, 9);
+        scales[i] = element.getScale();
+
+        element.getDrawBounds(placeBounds);
+        int b = i * 4;
+        bounds[b] = placeBounds.left;
+        bounds[b + 1] = placeBounds.top;
+        bounds[b + 2] = placeBounds.right;
+        bounds[b + 3] = placeBounds.bottom;
+        transformVersions[i] = element.getTransformVersion();
+    }
+}
@@ -0,0 +1,328 @@
+package com.logomaker.app.render;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.Rect;
+import android.graphics.RectF;
+
+import java.util.Arrays;
+
+/**
+ * Canvas that records the drawing calls made by element content into a
+ * {@link Segment} instead of rasterizing them. It covers the calls elements
+ * and text layouts make; any other call falls through to a canvas without a
+ * bitmap and is dropped.
+ */
+public class DisplayListRecorder extends Canvas {
+
+    private int[] ops = new int[16];
+    private int opCount;
+    private int[] ints = new int[32];
+    private int intCount;
+    private float[] floats = new float[64];
+    private int floatCount;
+    private Object[] objects = new Object[8];
+    private int objectCount;
+    private Paint[] paints = new Paint[8];
+    private int paintCount;
+
+    private final float[] matrixValues = new float[9];
+
+    /**
+     * Start recording a new segment, discarding anything recorded so far
+     */
+    public void begin() {
+        opCount = 0;
+        intCount = 0;
+        floatCount = 0;
+        objectCount = 0;
+        paintCount = 0;
+        restoreToCount(1);
+    }
+
+    /**
+     * Finish recording
+     * @return The recorded commands
+     */
+    public Segment finish() {
+        int[] recordedOps = new int[opCount];
+        System.arraycopy(ops, 0, recordedOps, 0, opCount);
+        int[] recordedInts = new int[intCount];
+        System.arraycopy(ints, 0, recordedInts, 0, intCount);
+        float[] recordedFloats = new float[floatCount];
+        System.arraycopy(floats, 0, recordedFloats, 0, floatCount);
+        Object[] recordedObjects = new Object[objectCount];
+        System.arraycopy(objects, 0, recordedObjects, 0, objectCount);
+        Paint[] recordedPaints = new Paint[paintCount];
+        System.arraycopy(paints, 0, recordedPaints, 0, paintCount);
+
+        // Drop references so recorded content can be collected
+        Arrays.fill(objects, 0, objectCount, null);
+        Arrays.fill(paints, 0, paintCount, null);
+
+        return new Segment(recordedOps, recordedInts, recordedFloats, recordedObjects, recordedPaints);
+    }
+
+    // State
+
+    @Override
+    public int save() {
+        op(Segment.OP_SAVE);
+        return super.save();
+    }
+
+    @Override
+    public void restore() {
+        op(Segment.OP_RESTORE);
+        super.restore();
+    }
+
+    @Override
+    public void restoreToCount(int saveCount) {
+        while (getSaveCount() > Math.max(1, saveCount)) {
+            restore();
+        }
+    }
+
+    @Override
+    public void translate(float dx, float dy) {
+        op(Segment.OP_TRANSLATE);
+        floats(dx, dy);
+        super.translate(dx, dy);
+    }
+
+    @Override
+    public void scale(float sx, float sy) {
+        op(Segment.OP_SCALE);
+        floats(sx, sy);
+        super.scale(sx, sy);
+    }
+
+    @Override
+    public void rotate(float degrees) {
+        op(Segment.OP_ROTATE);
+        floats(degrees);
+        super.rotate(degrees);
+    }
+
+    @Override
+    public void concat(Matrix matrix) {
+        if (matrix == null) {
+            return;
+        }
+        matrix.getValues(matrixValues);
+        op(Segment.OP_CONCAT);
+        for (float value : matrixValues) {
+            floats(value);
+        }
+        super.concat(matrix);
+    }
+
+    // Text layouts skip lines outside the clip, so report an unbounded clip
+
+    @Override
+    public boolean getClipBounds(Rect bounds) {
+        bounds.set(Integer.MIN_VALUE / 2, Integer.MIN_VALUE / 2, Integer.MAX_VALUE / 2, Integer.MAX_VALUE / 2);
+        return true;
+    }
+
+    @Override
+    public boolean quickReject(RectF rect, EdgeType type) {
+        return false;
+    }
+
+    @Override
+    public boolean quickReject(Path path, EdgeType type) {
+        return false;
+    }
+
+    @Override
+    public boolean quickReject(float left, float top, float right, float bottom, EdgeType type) {
+        return false;
+    }
+
+    // Drawing
+
+    @Override
+    public void drawColor(int color) {
+        op(Segment.OP_COLOR);
+        ints(color);
+    }
+
+    @Override
+    public void drawRect(RectF rect, Paint paint) {
+        drawRect(rect.left, rect.top, rect.right, rect.bottom, paint);
+    }
+
+    @Override
+    public void drawRect(Rect rect, Paint paint) {
+        drawRect(rect.left, rect.top, rect.right, rect.bottom, paint);
+    }
+
+    @Override
+    public void drawRect(float left, float top, float right, float bottom, Paint paint) {
+        op(Segment.OP_RECT);
+        floats(left, top, right, bottom);
+        ints(paint(paint));
+    }
+
+    @Override
+    public void drawOval(RectF oval, Paint paint) {
+        op(Segment.OP_OVAL);
+        floats(oval.left, oval.top, oval.right, oval.bottom);
+        ints(paint(paint));
+    }
+
+    @Override
+    public void drawCircle(float cx, float cy, float radius, Paint paint) {
+        op(Segment.OP_CIRCLE);
+        floats(cx, cy, radius);
+        ints(paint(paint));
+    }
+
+    @Override
+    public void drawRoundRect(RectF rect, float rx, float ry, Paint paint) {
+        op(Segment.OP_ROUND_RECT);
+        floats(rect.left, rect.top, rect.right, rect.bottom, rx, ry);
+        ints(paint(paint));
+    }
+
+    @Override
+    public void drawLine(float startX, float startY, float stopX, float stopY, Paint paint) {
+        op(Segment.OP_LINE);
+        floats(startX, startY, stopX, stopY);
+        ints(paint(paint));
+    }
+
+    @Override
+    public void drawPath(Path path, Paint paint) {
+        op(Segment.OP_PATH);
+        // Callers may change their path later, while snapshots replay it on another thread
+        object(new Path(path));
+        ints(paint(paint));
+    }
+
+    @Override
+    public void drawText(String text, float x, float y, Paint paint) {
+        recordText(text, 0, text.length(), x, y, paint);
+    }
+
+    @Override
+    public void drawText(String text, int start, int end, float x, float y, Paint paint) {
+        recordText(text, start, end, x, y, paint);
+    }
+
+    @Override
+    public void drawText(CharSequence text, int start, int end, float x, float y, Paint paint) {
+        // Spanned and builder text may change later, so keep a plain copy
+        recordText(text.subSequence(start, end).toString(), 0, end - start, x, y, paint);
+    }
+
+    @Override
+    public void drawText(char[] text, int index, int count, float x, float y, Paint paint) {
+        recordText(new String(text, index, count), 0, count, x, y, paint);
+    }
+
+    @Override
+    public void drawTextRun(CharSequence text, int start, int end, int contextStart, int contextEnd,
+                            float x, float y, boolean isRtl, Paint paint) {
+        String context = text.subSequence(contextStart, contextEnd).toString();
+        op(Segment.OP_TEXT_RUN);
+        object(context);
+        ints(start - contextStart, end - contextStart, 0, contextEnd - contextStart, isRtl ? 1 : 0, paint(paint));
+        floats(x, y);
+    }
+
+    @Override
+    public void drawTextRun(char[] text, int index, int count, int contextIndex, int contextCount,
+                            float x, float y, boolean isRtl, Paint paint) {
+        String context = new String(text, contextIndex, contextCount);
+        int start = index - contextIndex;
+        op(Segment.OP_TEXT_RUN);
+        object(context);
+        ints(start, start + count, 0, contextCount, isRtl ? 1 : 0, paint(paint));
+        floats(x, y);
+    }
+
+    @Override
+    public void drawBitmap(Bitmap bitmap, Rect src, RectF dst, Paint paint) {
+        op(Segment.OP_BITMAP);
+        object(bitmap);
+        if (src != null) {
+            ints(1, src.left, src.top, src.right, src.bottom);
+        } else {
+            ints(0);
+        }
+        ints(paint == null ? Segment.NO_PAINT : paint(paint));
+        floats(dst.left, dst.top, dst.right, dst.bottom);
+    }
+
+    @Override
+    public void drawBitmap(Bitmap bitmap, float left, float top, Paint paint) {
+        drawBitmap(bitmap, null, new RectF(left, top, left + bitmap.getWidth(), top + bitmap.getHeight()), paint);
+    }
+
+    private void recordText(String text, int start, int end, float x, float y, Paint paint) {
+        op(Segment.OP_TEXT);
+        object(text);
+        ints(start, end, paint(paint));
+        floats(x, y);
+    }
+
+    // Buffers
+
+    private void op(int op) {
+        if (opCount == ops.length) {
+            int[] grown = new int[opCount * 2];
+            System.arraycopy(ops, 0, grown, 0, opCount);
+            ops = grown;
+        }
+        ops[opCount++] = op;
+    }
+
+    private void ints(int... values) {
+        if (intCount + values.length > ints.length) {
+            int[] grown = new int[Math.max(ints.length * 2, intCount + values.length)];
+            System.arraycopy(ints, 0, grown, 0, intCount);
+            ints = grown;
+        }
+        System.arraycopy(values, 0, ints, intCount, values.length);
+        intCount += values.length;
+    }
+
+    private void floats(float... values) {
+        if (floatCount + values.length > floats.length) {
+            float[] grown = new float[Math.max(floats.length * 2, floatCount + values.length)];
+            System.arraycopy(floats, 0, grown, 0, floatCount);
+            floats = grown;
+        }
+        System.arraycopy(values, 0, floats, floatCount, values.length);
+        floatCount += values.length;
+    }
+
+    private void object(Object value) {
+        if (objectCount == objects.length) {
+            Object[] grown = new Object[objectCount * 2];
+            System.arraycopy(objects, 0, grown, 0, objectCount);
+            objects = grown;
+        }
+        objects[objectCount++] = value;
+    }
+
+    /**
+     * Store a copy of the paint, since elements and layouts keep changing theirs
+     * @return Index of the copy
+     */
+    private int paint(Paint paint) {
+        if (paintCount == paints.length) {
+            Paint[] grown = new Paint[paintCount * 2];
+            System.arraycopy(paints, 0, grown, 0, paintCount);
+            paints = grown;
+        }
+        paints[paintCount] = new Paint(paint);
+        return paintCount++;
+    }
+}
@@ -0,0 +1,141 @@
+package com.logomaker.app.render;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.util.LruCache;
+
+import com.logomaker.app.model.LogoElement;
+
+/**
+ * Caches a rasterized layer per logo element, so elements whose content has
+ * not changed are drawn as a single bitmap instead of being replayed. A layer
+ * stays valid as long as the element's recorded {@link Segment} is the same.
+ */
+public class ElementLayerCache {
+
+    // Layers larger than this share of the budget are not worth caching
+    private static final int MAX_LAYER_FRACTION = 4;
+
+    private static ElementLayerCache instance;
+
+    private final LruCache<String, Layer> layers;
+    private final int maxLayerBytes;
+    private final Paint layerPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+    /**
+     * Create a layer cache
+     * @param maxBytes Memory budget for all cached layers
+     */
+    public ElementLayerCache(int maxBytes) {
+        this.maxLayerBytes = maxBytes / MAX_LAYER_FRACTION;
+        this.layers = new LruCache<String, Layer>(maxBytes) {
+            @Override
+            protected int sizeOf(String key, Layer layer) {
+                return layer.bitmap.getAllocationByteCount();
+            }
+        };
+    }
+
+    /**
+     * Get the shared layer cache, using an eighth of the available heap
+     */
+    public static synchronized ElementLayerCache getInstance() {
+        if (instance == null) {
+            instance = new ElementLayerCache((int) (Runtime.getRuntime().maxMemory() / 8));
+        }
+        return instance;
+    }
+
+    /**
+     * Draw an element of a display list from its cached layer, painting the
+     * layer first if the element content or scale changed
+     * @param canvas Canvas to draw on, already transformed into the element box
+     * @param list Display list holding the element
+     * @param index Position of the element in the list
+     * @param contentScale Scale of the canvas relative to logo units
+     * @param scratch Objects reused while replaying
+     * @return False if the element is not cached and must be replayed directly
+     */
+    boolean draw(Canvas canvas, DisplayList list, int index, float contentScale, Segment.Scratch scratch) {
+        float rasterScale = list.scales[index] * contentScale;
+        String key = list.ids[index];
+        Segment segment = list.segments[index];
+        Layer layer = layers.get(key);
+        if (layer == null || layer.segment != segment || layer.scale != rasterScale) {
+            layer = rasterize(list, index, rasterScale, scratch);
+            if (layer == null) {
+                // Too small or too large to cache
+                return false;
+            }
+            layers.put(key, layer);
+        }
+
+        canvas.save();
+        canvas.translate(-layer.padding, -layer.padding);
+        canvas.scale(1 / rasterScale, 1 / rasterScale);
+        canvas.drawBitmap(layer.bitmap, 0, 0, layerPaint);
+        canvas.restore();
+        return true;
+    }
+
+    /**
+     * Drop the cached layer of an element
+     * @param element The element
+     */
+    public void remove(LogoElement element) {
+        layers.remove(element.getId());
+    }
+
+    /**
+     * Drop all cached layers
+     */
+    public void clear() {
+        layers.evictAll();
+    }
+
+    /**
+     * Paint the recorded element content into a new bitmap at the given scale
+     * @return The layer, or null if the element should not be cached
+     */
+    private Layer rasterize(DisplayList list, int index, float rasterScale, Segment.Scratch scratch) {
+        float width = list.widths[index];
+        float height = list.heights[index];
+        if (rasterScale <= 0 || width <= 0 || height <= 0) {
+            return null;
+        }
+
+        float padding = list.paddings[index];
+        int bitmapWidth = (int) Math.ceil((width + 2 * padding) * rasterScale);
+        int bitmapHeight = (int) Math.ceil((height + 2 * padding) * rasterScale);
+        if ((long) bitmapWidth * bitmapHeight * 4 > maxLayerBytes) {
+            return null;
+        }
+
+        Bitmap bitmap = Bitmap.createBitmap(bitmapWidth, bitmapHeight, Bitmap.Config.ARGB_8888);
+        Canvas layerCanvas = new Canvas(bitmap);
+        layerCanvas.scale(rasterScale, rasterScale);
+        layerCanvas.translate(padding, padding);
+        Segment segment = list.segments[index];
+        segment.replay(layerCanvas, rasterScale, scratch);
+
+        return new Layer(bitmap, segment, rasterScale, padding);
+    }
+
+    /**
+     * A rasterized element and the recording it was painted from
+     */
+    private static class Layer {
+        final Bitmap bitmap;
+        final Segment segment;
+        final float scale;
+        final float padding;
+
+        Layer(Bitmap bitmap, Segment segment, float scale, float padding) {
+            this.bitmap = bitmap;
+            this.segment = segment;
+            this.scale = scale;
+            this.padding = padding;
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package com.logomaker.app.render;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.os.Build;
+
+/**
+ * Immutable list of drawing commands recorded from one element's content.
+ * Commands are stored as flat arrays: an opcode per command, with integer,
+ * float and object arguments read in order from their own arrays.
+ */
+public final class Segment {
+
+    // Opcodes and the arguments each one reads
+    static final int OP_SAVE = 0;          // -
+    static final int OP_RESTORE = 1;       // -
+    static final int OP_TRANSLATE = 2;     // floats: dx, dy
+    static final int OP_SCALE = 3;         // floats: sx, sy
+    static final int OP_ROTATE = 4;        // floats: degrees
+    static final int OP_CONCAT = 5;        // floats: 9 matrix values
+    static final int OP_COLOR = 6;         // ints: color
+    static final int OP_RECT = 7;          // floats: l, t, r, b; ints: paint
+    static final int OP_OVAL = 8;          // floats: l, t, r, b; ints: paint
+    static final int OP_CIRCLE = 9;        // floats: cx, cy, radius; ints: paint
+    static final int OP_ROUND_RECT = 10;   // floats: l, t, r, b, rx, ry; ints: paint
+    static final int OP_LINE = 11;         // floats: x0, y0, x1, y1; ints: paint
+    static final int OP_PATH = 12;         // objects: path; ints: paint
+    static final int OP_TEXT = 13;         // objects: text; ints: start, end, paint; floats: x, y
+    static final int OP_TEXT_RUN = 14;     // objects: text; ints: start, end, contextStart, contextEnd, rtl, paint; floats: x, y
+    static final int OP_BITMAP = 15;       // objects: bitmap; ints: hasSrc, [src l, t, r, b], paint; floats: dst l, t, r, b
+
+    // Paint index used for commands drawn without a paint
+    static final int NO_PAINT = -1;
+
+    static final Segment EMPTY = new Segment(new int[0], new int[0], new float[0], new Object[0], new Paint[0]);
+
+    private final int[] ops;
+    private final int[] ints;
+    private final float[] floats;
+    private final Object[] objects;
+    private final Paint[] paints;
+
+    Segment(int[] ops, int[] ints, float[] floats, Object[] objects, Paint[] paints) {
+        this.ops = ops;
+        this.ints = ints;
+        this.floats = floats;
+        this.objects = objects;
+        this.paints = paints;
+    }
+
+    /**
+     * Get the number of recorded commands
+     */
+    public int size() {
+        return ops.length;
+    }
+
+    /**
+     * Run the recorded commands against a canvas
+     * @param canvas Canvas to draw on
+     * @param deviceScale Device pixels per element unit, used to keep thin
+     *                    strokes visible and turn off hinting when scaled down
+     * @param scratch Objects reused while replaying, owned by the calling thread
+     */
+    public void replay(Canvas canvas, float deviceScale, Scratch scratch) {
+        int i = 0;
+        int f = 0;
+        int o = 0;
+        for (int op : ops) {
+            switch (op) {
+                case OP_SAVE:
+                    canvas.save();
+                    break;
+                case OP_RESTORE:
+                    canvas.restore();
+                    break;
+                case OP_TRANSLATE:
+                    canvas.translate(floats[f], floats[f + 1]);
+                    f += 2;
+                    break;
+                case OP_SCALE:
+                    canvas.scale(floats[f], floats[f + 1]);
+                    f += 2;
+                    break;
+                case OP_ROTATE:
+                    canvas.rotate(floats[f]);
+                    f += 1;
+                    break;
+                case OP_CONCAT:
+                    System.arraycopy(floats, f, scratch.values, 0, 9);
+                    scratch.matrix.setValues(scratch.values);
+                    canvas.concat(scratch.matrix);
+                    f += 9;
+                    break;
+                case OP_COLOR:
+                    canvas.drawColor(ints[i]);
+                    i += 1;
+                    break;
+                case OP_RECT:
+                    canvas.drawRect(floats[f], floats[f + 1], floats[f + 2], floats[f + 3],
+                            strokePaint(ints[i], deviceScale, scratch));
+                    f += 4;
+                    i += 1;
+                    break;
+                case OP_OVAL:
+                    scratch.rect.set(floats[f], floats[f + 1], floats[f + 2], floats[f + 3]);
+                    canvas.drawOval(scratch.rect, strokePaint(ints[i], deviceScale, scratch));
+                    f += 4;
+                    i += 1;
+                    break;
+                case OP_CIRCLE:
+                    canvas.drawCircle(floats[f], floats[f + 1], floats[f + 2],
+                            strokePaint(ints[i], deviceScale, scratch));
+                    f += 3;
+                    i += 1;
+                    break;
+                case OP_ROUND_RECT:
+                    scratch.rect.set(floats[f], floats[f + 1], floats[f + 2], floats[f + 3]);
+                    canvas.drawRoundRect(scratch.rect, floats[f + 4], floats[f + 5],
+                            strokePaint(ints[i], deviceScale, scratch));
+                    f += 6;
+                    i += 1;
+                    break;
+                case OP_LINE:
+                    canvas.drawLine(floats[f], floats[f + 1], floats[f + 2], floats[f + 3],
+                            strokePaint(ints[i], deviceScale, scratch));
+                    f += 4;
+                    i += 1;
+                    break;
+                case OP_PATH:
+                    canvas.drawPath((Path) objects[o], strokePaint(ints[i], deviceScale, scratch));
+                    o += 1;
+                    i += 1;
+                    break;
+                case OP_TEXT:
+                    canvas.drawText((CharSequence) objects[o], ints[i], ints[i + 1],
+                            floats[f], floats[f + 1], textPaint(ints[i + 2], deviceScale, scratch));
+                    o += 1;
+                    i += 3;
+                    f += 2;
+                    break;
+                case OP_TEXT_RUN:
+                    drawTextRun(canvas, (CharSequence) objects[o], i, floats[f], floats[f + 1],
+                            textPaint(ints[i + 5], deviceScale, scratch));
+                    o += 1;
+                    i += 6;
+                    f += 2;
+                    break;
+                case OP_BITMAP: {
+                    Rect src = null;
+                    if (ints[i] != 0) {
+                        scratch.bitmapSrc.set(ints[i + 1], ints[i + 2], ints[i + 3], ints[i + 4]);
+                        src = scratch.bitmapSrc;
+                        i += 4;
+                    }
+                    scratch.rect.set(floats[f], floats[f + 1], floats[f + 2], floats[f + 3]);
+                    int paintIndex = ints[i + 1];
+                    canvas.drawBitmap((Bitmap) objects[o], src, scratch.rect,
+                            paintIndex == NO_PAINT ? null : paints[paintIndex]);
+                    o += 1;
+                    i += 2;
+                    f += 4;
+                    break;
+                }
+            }
+        }
+    }
+
+    private void drawTextRun(Canvas canvas, CharSequence text, int i, float x, float y, Paint paint) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+            canvas.drawTextRun(text, ints[i], ints[i + 1], ints[i + 2], ints[i + 3], x, y,
+                    ints[i + 4] != 0, paint);
+        } else {
+            canvas.drawText(text, ints[i], ints[i + 1], x, y, paint);
+        }
+    }
+
+    /**
+     * Get the paint for a shape command, widening strokes that would drop
+     * below one device pixel
+     */
+    private Paint strokePaint(int index, float deviceScale, Scratch scratch) {
+        Paint paint = paints[index];
+        float strokeWidth = paint.getStrokeWidth();
+        // A stroke width of 0 is already drawn as a one pixel hairline
+        if (paint.getStyle() == Paint.Style.FILL || strokeWidth == 0
+                || strokeWidth * deviceScale >= 1) {
+            return paint;
+        }
+        scratch.paint.set(paint);
+        scratch.paint.setStrokeWidth(1 / deviceScale);
+        return scratch.paint;
+    }
+
+    /**
+     * Get the paint for a text command, turning hinting off when scaled down
+     */
+    private Paint textPaint(int index, float deviceScale, Scratch scratch) {
+        Paint paint = paints[index];
+        if (deviceScale >= 1) {
+            return paint;
+        }
+        scratch.paint.set(paint);
+        scratch.paint.setHinting(Paint.HINTING_OFF);
+        return scratch.paint;
+    }
+
+    /**
+     * Objects reused while replaying segments. Each thread that replays needs its own.
+     */
+    public static final class Scratch {
+        final Paint paint = new Paint();
+        final Matrix matrix = new Matrix();
+        final float[] values = new float[9];
+        final RectF rect = new RectF();
+        final Rect bitmapSrc = new Rect();
+    }
+}
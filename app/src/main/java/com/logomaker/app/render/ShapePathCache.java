@@ -0,0 +1,160 @@
+package com.logomaker.app.render;
+
+import android.graphics.Path;
+import android.util.LruCache;
+
+import com.logomaker.app.model.ShapeElement;
+
+/**
+ * Shared outlines for triangle, star and polygon shapes. Logos that repeat
+ * the same shape at the same size share a single Path.
+ */
+public final class ShapePathCache {
+
+    private static final int MAX_PATHS = 256;
+
+    // Star geometry
+    private static final int STAR_POINTS = 5;
+    private static final float STAR_INNER_RATIO = 0.4f;
+
+    private static final LruCache<Key, Path> paths = new LruCache<>(MAX_PATHS);
+
+    private ShapePathCache() {
+    }
+
+    /**
+     * Get the outline of a shape in its box (0, 0, width, height).
+     * The returned Path is shared and must not be modified.
+     * @param shapeType SHAPE_TRIANGLE, SHAPE_STAR or SHAPE_POLYGON
+     * @param sides Number of sides, only used for polygons
+     * @param width Shape width
+     * @param height Shape height
+     * @return The outline, or null for shape types without a cached outline
+     */
+    public static Path get(int shapeType, int sides, float width, float height) {
+        if (!hasOutline(shapeType)) {
+            return null;
+        }
+
+        Key key = new Key(shapeType, shapeType == ShapeElement.SHAPE_POLYGON ? sides : 0, width, height);
+        Path path = paths.get(key);
+        if (path == null) {
+            path = buildPath(buildVertices(shapeType, sides, width, height));
+            paths.put(key, path);
+        }
+        return path;
+    }
+
+    /**
+     * Check whether a shape type is drawn from a cached outline
+     * @param shapeType The shape type
+     * @return True for triangles, stars and polygons
+     */
+    public static boolean hasOutline(int shapeType) {
+        return shapeType == ShapeElement.SHAPE_TRIANGLE
+                || shapeType == ShapeElement.SHAPE_STAR
+                || shapeType == ShapeElement.SHAPE_POLYGON;
+    }
+
+    /**
+     * Compute the corner points of a shape in its box (0, 0, width, height)
+     * @return Interleaved x and y coordinates
+     */
+    public static float[] buildVertices(int shapeType, int sides, float width, float height) {
+        float centerX = width / 2;
+        float centerY = height / 2;
+
+        switch (shapeType) {
+            case ShapeElement.SHAPE_TRIANGLE:
+                return new float[] {
+                        centerX, centerY - height / 2,
+                        centerX + width / 2, centerY + height / 2,
+                        centerX - width / 2, centerY + height / 2
+                };
+            case ShapeElement.SHAPE_STAR: {
+                float outerRadius = Math.min(width, height) / 2;
+                float innerRadius = outerRadius * STAR_INNER_RATIO;
+                float angleStep = (float) (Math.PI / STAR_POINTS);
+                float[] points = new float[STAR_POINTS * 4];
+                for (int i = 0; i < STAR_POINTS * 2; i++) {
+                    float radius = (i % 2 == 0) ? outerRadius : innerRadius;
+                    float angle = i * angleStep - (float) Math.PI / 2;
+                    points[i * 2] = centerX + (float) (radius * Math.cos(angle));
+                    points[i * 2 + 1] = centerY + (float) (radius * Math.sin(angle));
+                }
+                return points;
+            }
+            case ShapeElement.SHAPE_POLYGON: {
+                double angle = 2.0 * Math.PI / sides;
+                float radius = Math.min(width, height) / 2;
+                float[] points = new float[sides * 2];
+                for (int i = 0; i < sides; i++) {
+                    double theta = i * angle - Math.PI / 2;
+                    points[i * 2] = centerX + (float) (radius * Math.cos(theta));
+                    points[i * 2 + 1] = centerY + (float) (radius * Math.sin(theta));
+                }
+                return points;
+            }
+            default:
+                return new float[0];
+        }
+    }
+
+    /**
+     * Drop all cached outlines
+     */
+    public static void clear() {
+        paths.evictAll();
+    }
+
+    private static Path buildPath(float[] points) {
+        Path path = new Path();
+        if (points.length == 0) {
+            return path;
+        }
+
+        path.moveTo(points[0], points[1]);
+        for (int i = 2; i < points.length; i += 2) {
+            path.lineTo(points[i], points[i + 1]);
+        }
+        path.close();
+        return path;
+    }
+
+    /**
+     * The parameters an outline depends on
+     */
+    private static final class Key {
+        final int shapeType;
+        final int sides;
+        final float width;
+        final float height;
+
+        Key(int shapeType, int sides, float width, float height) {
+            this.shapeType = shapeType;
+            this.sides = sides;
+            this.width = width;
+            this.height = height;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return shapeType == other.shapeType
+                    && sides == other.sides
+                    && Float.compare(width, other.width) == 0
+                    && Float.compare(height, other.height) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = shapeType;
+            result = 31 * result + sides;
+            result = 31 * result + Float.floatToIntBits(width);
+            result = 31 * result + Float.floatToIntBits(height);
+            return result;
+        }
+    }
+}
@@ -3,18 +3,25 @@ package com.logomaker.app.util;
 import android.content.Context;
 import android.content.SharedPreferences;
 import android.graphics.Bitmap;
-import android.graphics.Color;
-import android.graphics.PointF;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
 
 import com.logomaker.app.model.Logo;
+import com.logomaker.app.model.LogoCodec;
+import com.logomaker.app.model.LogoSummary;
 import com.logomaker.app.model.LogoTemplate;
-import com.logomaker.app.model.ShapeElement;
-import com.logomaker.app.model.TextElement;
+import com.logomaker.app.render.DisplayList;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.stream.Collectors;
 
 /**
@@ -23,16 +30,38 @@ import java.util.stream.Collectors;
 public class DataManager {
     
     private static final String PREFS_NAME = "LogoMakerPreferences";
+    private static final String KEY_RENDER_THREAD = "editor_render_thread";
+    private static final int THUMBNAIL_SIZE = 300;
     private static DataManager instance;
     
     private final Context context;
     private final SharedPreferences preferences;
-    private final List<Logo> savedLogos = new ArrayList<>();
+    
+    private final RecencyIndex savedLogos = new RecencyIndex();
     private final List<LogoTemplate> templates = new ArrayList<>();
+    private final LogoStore store;
+    
+    // Model writes and deletes run in order on one thread, thumbnails after them on another,
+    // and logos opened for editing are read on a third
+    private final ExecutorService saveExecutor = Executors.newSingleThreadExecutor();
+    private final ExecutorService thumbnailExecutor = Executors.newSingleThreadExecutor(task ->
+            new Thread(() -> {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                task.run();
+            }, "ThumbnailWriter"));
+    private final ExecutorService loadExecutor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    
+    // Saves and thumbnails queued but not started, by logo id; later requests replace their logo
+    private final Map<String, PendingSave> pendingSaves = new HashMap<>();
+    private final Map<String, DisplayList> pendingThumbnails = new HashMap<>();
+    
+    private final List<OnLogosChangedListener> changeListeners = new CopyOnWriteArrayList<>();
     
     private DataManager(Context context) {
         this.context = context.getApplicationContext();
         this.preferences = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        this.store = openStore(new File(context.getFilesDir(), "store"));
         
         // Load saved data
         loadSavedLogos();
@@ -50,15 +79,43 @@ public class DataManager {
      * Get a list of recent logos
      * @param limit Maximum number of logos to return
      */
-    public List<Logo> getRecentLogos(int limit) {
-        // Sort by last modified (newest first)
-        Collections.sort(savedLogos, (logo1, logo2) -> 
-                Long.compare(logo2.getLastModified(), logo1.getLastModified()));
-        
-        // Return up to the limit
-        return savedLogos.stream()
-                .limit(limit)
-                .collect(Collectors.toList());
+    public List<LogoSummary> getRecentLogos(int limit) {
+        return savedLogos.getNewest(limit);
+    }
+    
+    /**
+     * Load a saved logo with all its elements
+     * @param id Id of the logo
+     * @return The logo, or null if it doesn't exist or can't be read
+     */
+    public Logo loadLogo(String id) {
+        LogoCodec.CapturedLogo pending = null;
+        synchronized (pendingSaves) {
+            // A queued save is newer than what is stored
+            PendingSave save = pendingSaves.get(id);
+            if (save != null) {
+                pending = save.copy;
+            }
+        }
+        try {
+            return pending != null ? LogoCodec.decode(pending) : store.load(id);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+    
+    /**
+     * Load a saved logo with all its elements in the background
+     * @param id Id of the logo
+     * @param listener Receives the logo on the main thread, or null if it
+     *                 doesn't exist or can't be read
+     */
+    public void loadLogo(String id, OnLoadListener listener) {
+        loadExecutor.execute(() -> {
+            Logo logo = loadLogo(id);
+            mainHandler.post(() -> listener.onLoaded(logo));
+        });
     }
     
     /**
@@ -78,81 +135,252 @@ public class DataManager {
     }
     
     /**
-     * Save a logo
+     * Be told when saved logos or their thumbnails change
+     */
+    public void addOnLogosChangedListener(OnLogosChangedListener listener) {
+        changeListeners.add(listener);
+    }
+    
+    public void removeOnLogosChangedListener(OnLogosChangedListener listener) {
+        changeListeners.remove(listener);
+    }
+    
+    /**
+     * Whether the editor draws the logo on a render thread instead of the main thread
+     */
+    public boolean isRenderThreadEnabled() {
+        return preferences.getBoolean(KEY_RENDER_THREAD, false);
+    }
+    
+    public void setRenderThreadEnabled(boolean enabled) {
+        preferences.edit().putBoolean(KEY_RENDER_THREAD, enabled).apply();
+    }
+    
+    /**
+     * Save a logo in the background
      */
     public void saveLogo(Logo logo) {
-        // Check if this logo already exists
-        int existingIndex = -1;
-        for (int i = 0; i < savedLogos.size(); i++) {
-            if (savedLogos.get(i).getId().equals(logo.getId())) {
-                existingIndex = i;
-                break;
+        saveLogo(logo, null);
+    }
+    
+    /**
+     * Save a logo in the background. Call this on the main thread. The logo
+     * is captured here, so it can be edited again right away. Saves of the same
+     * logo that are still queued are merged into one write of the latest
+     * copy, and the thumbnail is rendered after the write.
+     * @param logo Logo to save
+     * @param listener Told on the main thread when the logo is stored, may be null
+     */
+    public void saveLogo(Logo logo, OnSaveListener listener) {
+        logo.setThumbnailPath(ImageUtil.getSavedBitmapFile(context, thumbnailName(logo.getId())).getAbsolutePath());
+        LogoCodec.CapturedLogo copy = LogoCodec.capture(logo);
+        DisplayList thumbnail = logo.getDisplayList().snapshot();
+        
+        synchronized (pendingSaves) {
+            PendingSave pending = pendingSaves.get(logo.getId());
+            if (pending == null) {
+                pending = new PendingSave(logo.getId());
+                pendingSaves.put(logo.getId(), pending);
+                PendingSave queued = pending;
+                saveExecutor.execute(() -> writeLogo(queued));
+            }
+            pending.copy = copy;
+            pending.thumbnail = thumbnail;
+            if (listener != null) {
+                pending.listeners.add(listener);
             }
         }
+    }
+    
+    /**
+     * Delete a logo. Saves queued before this are written first, then removed.
+     */
+    public void deleteLogo(LogoSummary logo) {
+        String id = logo.getId();
+        synchronized (pendingSaves) {
+            // Saves queued after this must not merge into a save queued before it
+            pendingSaves.remove(id);
+        }
+        synchronized (pendingThumbnails) {
+            pendingThumbnails.remove(id);
+        }
         
-        // Generate a thumbnail for the logo
-        Bitmap thumbnail = logo.renderThumbnail(300);
-        String thumbnailPath = ImageUtil.saveBitmapToFile(
-                context, 
-                thumbnail, 
-                "thumbnail_" + logo.getId() + ".png");
-        logo.setThumbnailPath(thumbnailPath);
+        // Remove from list
+        removeSavedLogo(id);
+        notifyLogosChanged();
         
-        if (existingIndex >= 0) {
-            // Update existing logo
-            savedLogos.set(existingIndex, logo);
-        } else {
-            // Add new logo
-            savedLogos.add(logo);
+        saveExecutor.execute(() -> {
+            try {
+                store.delete(id);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            removeSavedLogo(id);
+            synchronized (pendingThumbnails) {
+                pendingThumbnails.remove(id);
+            }
+            
+            // Delete thumbnail file
+            if (logo.getThumbnailPath() != null) {
+                File thumbnailFile = new File(logo.getThumbnailPath());
+                if (thumbnailFile.exists()) {
+                    thumbnailFile.delete();
+                }
+            }
+        });
+    }
+    
+    /**
+     * Store the latest copy of a queued save, called on the save thread
+     */
+    private void writeLogo(PendingSave pending) {
+        String id = pending.logoId;
+        LogoCodec.CapturedLogo copy;
+        DisplayList thumbnail;
+        List<OnSaveListener> listeners;
+        synchronized (pendingSaves) {
+            // Saves from here on queue a new write
+            copy = pending.copy;
+            thumbnail = pending.thumbnail;
+            if (pendingSaves.get(id) == pending) {
+                pendingSaves.remove(id);
+            }
+            listeners = new ArrayList<>(pending.listeners);
+        }
+        
+        IOException failure = null;
+        LogoSummary summary = null;
+        try {
+            store.save(copy);
+            summary = store.getSummary(id);
+        } catch (IOException e) {
+            e.printStackTrace();
+            failure = e;
+        }
+        
+        if (summary != null) {
+            // Replace the summary of this logo, or add one for a new logo
+            putSavedLogo(summary);
+            notifyLogosChanged();
+            queueThumbnail(id, thumbnail);
         }
         
-        // TODO: In a real app, we would persist this data to disk
+        IOException error = failure;
+        LogoSummary saved = summary;
+        for (OnSaveListener listener : listeners) {
+            mainHandler.post(() -> {
+                if (error == null) {
+                    listener.onSaved(saved);
+                } else {
+                    listener.onSaveFailed(error);
+                }
+            });
+        }
+    }
+    
+    private void putSavedLogo(LogoSummary summary) {
+        savedLogos.put(summary);
+    }
+    
+    private void removeSavedLogo(String id) {
+        savedLogos.remove(id);
     }
     
     /**
-     * Delete a logo
+     * Render a thumbnail from a display list snapshot taken with the save
      */
-    public void deleteLogo(Logo logo) {
-        // Remove from list
-        savedLogos.removeIf(l -> l.getId().equals(logo.getId()));
-        
-        // Delete thumbnail file
-        if (logo.getThumbnailPath() != null) {
-            File thumbnailFile = new File(logo.getThumbnailPath());
-            if (thumbnailFile.exists()) {
-                thumbnailFile.delete();
+    private void queueThumbnail(String id, DisplayList commands) {
+        synchronized (pendingThumbnails) {
+            if (pendingThumbnails.put(id, commands) != null) {
+                return;
             }
         }
+        thumbnailExecutor.execute(() -> {
+            DisplayList latest;
+            synchronized (pendingThumbnails) {
+                latest = pendingThumbnails.remove(id);
+            }
+            if (latest == null) {
+                // Deleted meanwhile
+                return;
+            }
+            Bitmap thumbnail = latest.renderThumbnail(THUMBNAIL_SIZE);
+            ImageUtil.saveBitmapToFile(context, thumbnail, thumbnailName(id));
+            thumbnail.recycle();
+            notifyLogosChanged();
+        });
+    }
+    
+    private void notifyLogosChanged() {
+        mainHandler.post(() -> {
+            for (OnLogosChangedListener listener : changeListeners) {
+                listener.onLogosChanged();
+            }
+        });
+    }
+    
+    private static String thumbnailName(String logoId) {
+        return "thumbnail_" + logoId + ".png";
     }
     
     /**
-     * Load saved logos from storage (in a real app)
+     * Receives the outcome of a save, on the main thread
+     */
+    public interface OnSaveListener {
+        /**
+         * Called once the logo is on disk. Its thumbnail may still be rendering.
+         * @param summary Summary of the stored logo
+         */
+        void onSaved(LogoSummary summary);
+        
+        void onSaveFailed(IOException error);
+    }
+    
+    /**
+     * Told on the main thread when saved logos change
+     */
+    public interface OnLogosChangedListener {
+        /**
+         * Called after a logo is saved or deleted, and after a thumbnail is written
+         */
+        void onLogosChanged();
+    }
+    
+    /**
+     * Receives a logo loaded in the background, on the main thread
+     */
+    public interface OnLoadListener {
+        void onLoaded(Logo logo);
+    }
+    
+    /**
+     * A queued save and everyone waiting for it
+     */
+    private static class PendingSave {
+        final String logoId;
+        LogoCodec.CapturedLogo copy;
+        DisplayList thumbnail;
+        final List<OnSaveListener> listeners = new ArrayList<>();
+        
+        PendingSave(String logoId) {
+            this.logoId = logoId;
+        }
+    }
+    
+    private static LogoStore openStore(File directory) {
+        try {
+            return new LogoStore(directory);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not open the logo store", e);
+        }
+    }
+    
+    /**
+     * Load the summaries of saved logos; their elements are read when a logo is opened
      */
     private void loadSavedLogos() {
-        // For this demo, we'll create some sample logos
-        for (int i = 1; i <= 5; i++) {
-            Logo logo = new Logo();
-            logo.setName("Sample Logo " + i);
-            logo.setBackgroundColor(Color.WHITE);
-            
-            // Add a shape
-            ShapeElement shape = new ShapeElement();
-            shape.setShapeType(i % 2 == 0 ? ShapeElement.ShapeType.CIRCLE : ShapeElement.ShapeType.STAR);
-            shape.setPosition(new PointF(500, 300));
-            shape.setFillColor(Color.rgb(255, 50 * i, 50 * i));
-            logo.addElement(shape);
-            
-            // Add text
-            TextElement text = new TextElement();
-            text.setText("LOGO " + i);
-            text.setPosition(new PointF(500, 500));
-            text.setTextColor(Color.BLACK);
-            logo.addElement(text);
-            
-            // Set creation time staggered in the past
-            logo.setLastModified(System.currentTimeMillis() - (i * 60000));
-            
-            savedLogos.add(logo);
+        for (LogoSummary summary : store.getSummaries()) {
+            putSavedLogo(summary);
         }
     }
     
@@ -0,0 +1,175 @@
+package com.logomaker.app.util;
+
+import android.graphics.Typeface;
+import android.text.Layout;
+import android.text.TextPaint;
+import android.util.LruCache;
+
+/**
+ * Process-wide cache of styled typefaces and measured text widths, shared by
+ * all text elements. Many elements using the same font then resolve and
+ * measure it once.
+ */
+public final class FontCache {
+
+    private static final int MAX_TYPEFACES = 64;
+    private static final int MAX_TEXT_WIDTHS = 512;
+
+    private static final LruCache<TypefaceKey, Typeface> typefaces = new LruCache<>(MAX_TYPEFACES);
+    private static final LruCache<WidthKey, Float> textWidths = new LruCache<>(MAX_TEXT_WIDTHS);
+
+    private FontCache() {
+    }
+
+    /**
+     * Get a typeface in the given style
+     * @param family Base typeface, or null for the default
+     * @param style Typeface.NORMAL, BOLD, ITALIC or BOLD_ITALIC
+     * @return The styled typeface
+     */
+    public static Typeface getTypeface(Typeface family, int style) {
+        TypefaceKey key = new TypefaceKey(family, style);
+        Typeface typeface = typefaces.get(key);
+        if (typeface == null) {
+            typeface = Typeface.create(family, style);
+            typefaces.put(key, typeface);
+        }
+        return typeface;
+    }
+
+    /**
+     * Get a typeface by family name in the given style
+     * @param familyName Font family, such as "serif"; unknown names give the default
+     * @param style Typeface.NORMAL, BOLD, ITALIC or BOLD_ITALIC
+     * @return The styled typeface
+     */
+    public static Typeface getTypeface(String familyName, int style) {
+        TypefaceKey key = new TypefaceKey(familyName, style);
+        Typeface typeface = typefaces.get(key);
+        if (typeface == null) {
+            typeface = Typeface.create(familyName, style);
+            typefaces.put(key, typeface);
+        }
+        return typeface;
+    }
+
+    /**
+     * Get the width of the widest line of a text as laid out with a paint's
+     * typeface and size
+     * @param paint Paint holding the typeface and text size, used to measure on a miss
+     * @param text The text, lines separated by newlines
+     * @param style Style the typeface was created with
+     * @return Width of the widest line
+     */
+    public static float getDesiredWidth(TextPaint paint, String text, int style) {
+        WidthKey key = new WidthKey(text, paint.getTypeface(), paint.getTextSize(), style);
+        Float width = textWidths.get(key);
+        if (width == null) {
+            width = Layout.getDesiredWidth(text, paint);
+            textWidths.put(key, width);
+        }
+        return width;
+    }
+
+    /**
+     * Get the number of typeface lookups served from the cache
+     */
+    public static int getTypefaceHitCount() {
+        return typefaces.hitCount();
+    }
+
+    /**
+     * Get the number of typeface lookups that had to create a typeface
+     */
+    public static int getTypefaceMissCount() {
+        return typefaces.missCount();
+    }
+
+    /**
+     * Get the number of text width lookups served from the cache
+     */
+    public static int getTextWidthHitCount() {
+        return textWidths.hitCount();
+    }
+
+    /**
+     * Get the number of text width lookups that had to measure the text
+     */
+    public static int getTextWidthMissCount() {
+        return textWidths.missCount();
+    }
+
+    /**
+     * Drop all cached typefaces and text widths
+     */
+    public static void clear() {
+        typefaces.evictAll();
+        textWidths.evictAll();
+    }
+
+    /**
+     * A base typeface or family name and a style
+     */
+    private static final class TypefaceKey {
+        final Object family;
+        final int style;
+
+        TypefaceKey(Object family, int style) {
+            this.family = family;
+            this.style = style;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof TypefaceKey)) return false;
+            TypefaceKey other = (TypefaceKey) o;
+            return style == other.style
+                    && (family == null ? other.family == null : family.equals(other.family));
+        }
+
+        @Override
+        public int hashCode() {
+            int result = family != null ? family.hashCode() : 0;
+            result = 31 * result + style;
+            return result;
+        }
+    }
+
+    /**
+     * The parameters a measured text width depends on
+     */
+    private static final class WidthKey {
+        final String text;
+        final Typeface typeface;
+        final float textSize;
+        final int style;
+
+        WidthKey(String text, Typeface typeface, float textSize, int style) {
+            this.text = text;
+            this.typeface = typeface;
+            this.textSize = textSize;
+            this.style = style;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof WidthKey)) return false;
+            WidthKey other = (WidthKey) o;
+            return style == other.style
+                    && Float.compare(textSize, other.textSize) == 0
+                    && text.equals(other.text)
+                    && (typeface == null ? other.typeface == null : typeface.equals(other.typeface));
+        }
+
+        @Override
+        public int hashCode() {
+            int result = text.hashCode();
+            result = 31 * result + (typeface != null ? typeface.hashCode() : 0);
+            result = 31 * result + Float.floatToIntBits(textSize);
+            result = 31 * result + style;
+            return result;
+        }
+    }
+}
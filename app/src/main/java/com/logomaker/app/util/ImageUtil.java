@@ -6,23 +6,44 @@ import android.graphics.BitmapFactory;
 import android.widget.ImageView;
 
 import com.bumptech.glide.Glide;
+import com.bumptech.glide.signature.ObjectKey;
 import com.logomaker.app.R;
+import com.logomaker.app.export.IndexedPngWriter;
+import com.logomaker.app.export.PdfExporter;
+import com.logomaker.app.export.PngStreamWriter;
+import com.logomaker.app.export.SvgWriter;
+import com.logomaker.app.export.TargetSizeEncoder;
+import com.logomaker.app.model.Logo;
+import com.logomaker.app.model.LogoCodec;
+import com.logomaker.app.render.DisplayList;
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
 
 /**
  * Utility methods for handling images in the app
  */
 public class ImageUtil {
+    
+    // Pixels per strip when streaming exports, about 4 MB of ARGB
+    private static final int STREAM_STRIP_PIXELS = 1024 * 1024;
 
     /**
      * Load an image from a file path into an ImageView
      */
     public static void loadImageFromFile(ImageView imageView, String filePath) {
+        File file = new File(filePath);
         Glide.with(imageView.getContext())
-                .load(new File(filePath))
+                .load(file)
+                // Files such as thumbnails are rewritten under the same name
+                .signature(new ObjectKey(file.lastModified()))
                 .placeholder(R.drawable.placeholder_image)
                 .error(R.drawable.error_image)
                 .into(imageView);
@@ -39,17 +60,24 @@ public class ImageUtil {
                 .into(imageView);
     }
     
+    /**
+     * Get the file {@link #saveBitmapToFile} writes a bitmap to
+     */
+    public static File getSavedBitmapFile(Context context, String filename) {
+        return new File(new File(context.getFilesDir(), "logos"), filename);
+    }
+    
     /**
      * Save a bitmap to the app's files directory
      * @return The path to the saved file
      */
     public static String saveBitmapToFile(Context context, Bitmap bitmap, String filename) {
-        File directory = new File(context.getFilesDir(), "logos");
+        File file = getSavedBitmapFile(context, filename);
+        File directory = file.getParentFile();
         if (!directory.exists()) {
             directory.mkdirs();
         }
         
-        File file = new File(directory, filename);
         try (FileOutputStream out = new FileOutputStream(file)) {
             bitmap.compress(Bitmap.CompressFormat.PNG, 100, out);
             return file.getAbsolutePath();
@@ -65,11 +93,6 @@ public class ImageUtil {
      */
     public static String exportBitmap(Context context, Bitmap bitmap, String filename, 
                                      Bitmap.CompressFormat format, int quality) {
-        File directory = new File(context.getExternalFilesDir(null), "LogoMaker");
-        if (!directory.exists()) {
-            directory.mkdirs();
-        }
-        
         // Add proper extension
         String extension;
         switch (format) {
@@ -87,20 +110,196 @@ public class ImageUtil {
                 break;
         }
         
-        if (!filename.endsWith(extension)) {
-            filename += extension;
+        File file = outputFile(context, filename, extension);
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            bitmap.compress(format, quality, out);
+            return file.getAbsolutePath();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+    
+    /**
+     * Export a bitmap as the smallest file under a size limit, choosing the
+     * format and quality automatically
+     * @param maxBytes Largest acceptable file size
+     * @param minPsnr Lowest acceptable quality as PSNR in dB, about 40 is visually lossless
+     * @return The path to the exported file, or null if no encoding fits the limit
+     */
+    public static String exportBitmapUnderSize(Context context, Bitmap bitmap, String filename,
+                                               long maxBytes, double minPsnr) {
+        TargetSizeEncoder.Result result;
+        try {
+            result = TargetSizeEncoder.encode(bitmap, maxBytes, minPsnr);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        if (!result.isFound()) {
+            return null;
         }
         
-        File file = new File(directory, filename);
+        String extension = result.getFormat() == Bitmap.CompressFormat.JPEG ? ".jpg"
+                : result.getFormat() == Bitmap.CompressFormat.PNG ? ".png" : ".webp";
+        File file = outputFile(context, filename, extension);
         try (FileOutputStream out = new FileOutputStream(file)) {
-            bitmap.compress(format, quality, out);
+            out.write(result.getData());
+            return file.getAbsolutePath();
+        } catch (IOException e) {
+            e.printStackTrace();
+            file.delete();
+            return null;
+        }
+    }
+    
+    /**
+     * Export a logo as PNG at any size without holding the whole image in
+     * memory. The logo is rendered in full-width strips that are encoded as
+     * they are finished, so memory use stays the same for any output height.
+     * @param commands Snapshot of the logo's display list, taken on the main
+     *                 thread so this can run on any thread
+     * @return The path to the exported file
+     * @throws IllegalArgumentException If the output size is not positive
+     */
+    public static String exportLogoPng(Context context, DisplayList commands, String filename,
+                                       int outputWidth, int outputHeight) {
+        checkOutputSize(outputWidth, outputHeight);
+        File file = outputFile(context, filename, ".png");
+        int stripHeight = Math.max(1, STREAM_STRIP_PIXELS / outputWidth);
+        try (FileOutputStream out = new FileOutputStream(file);
+             PngStreamWriter writer = new PngStreamWriter(out.getChannel(), outputWidth, outputHeight)) {
+            // The tile callback can't throw, so the first failure is kept and rethrown
+            IOException[] failure = new IOException[1];
+            commands.renderTiles(outputWidth, outputHeight, outputWidth, stripHeight,
+                    (strip, left, top, width, height) -> {
+                        if (failure[0] != null) return;
+                        try {
+                            writer.writeRows(strip, height);
+                        } catch (IOException e) {
+                            failure[0] = e;
+                        }
+                    });
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+            writer.finish();
+            return file.getAbsolutePath();
+        } catch (IOException e) {
+            e.printStackTrace();
+            file.delete();
+            return null;
+        }
+    }
+    
+    /**
+     * Export a logo as a palette-based PNG, which is several times smaller
+     * than RGBA for logos with few colors. Logos with more than 256 colors
+     * are quantized as long as no pixel changes by more than the tolerance;
+     * otherwise the logo is exported as a regular PNG.
+     * @param tolerance Largest change allowed on any color channel, 0 to only
+     *                  use a palette when the colors fit exactly
+     * @param commands Snapshot of the logo's display list, taken on the main
+     *                 thread so this can run on any thread
+     * @return The path to the exported file
+     * @throws IllegalArgumentException If the output size is not positive
+     */
+    public static String exportLogoIndexedPng(Context context, DisplayList commands, String filename,
+                                              int outputWidth, int outputHeight, int tolerance) {
+        checkOutputSize(outputWidth, outputHeight);
+        File file = outputFile(context, filename, ".png");
+        int stripHeight = Math.max(1, STREAM_STRIP_PIXELS / outputWidth);
+        boolean written;
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            written = IndexedPngWriter.writeLogo(commands, out.getChannel(), outputWidth, outputHeight,
+                    stripHeight, tolerance);
+        } catch (IOException e) {
+            e.printStackTrace();
+            file.delete();
+            return null;
+        }
+        
+        // Too many colors for a palette within the tolerance
+        if (!written) {
+            return exportLogoPng(context, commands, filename, outputWidth, outputHeight);
+        }
+        return file.getAbsolutePath();
+    }
+    
+    /**
+     * Export a logo as SVG. The file is written from the element model, so it
+     * stays sharp at any size and its cost does not grow with the output size.
+     * @param logo Logo captured with {@link LogoCodec#capture(Logo)} on the main
+     *             thread; it is written from a copy, so this can run on any thread
+     * @param embedImages True to embed image elements in the file, false to link to them
+     * @return The path to the exported file
+     */
+    public static String exportLogoSvg(Context context, LogoCodec.CapturedLogo logo, String filename,
+                                       int outputWidth, int outputHeight, boolean embedImages) {
+        File file = outputFile(context, filename, ".svg");
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(file), Charset.forName("UTF-8")))) {
+            new SvgWriter(out, embedImages).write(LogoCodec.decode(logo), outputWidth, outputHeight);
             return file.getAbsolutePath();
         } catch (IOException e) {
             e.printStackTrace();
+            file.delete();
             return null;
         }
     }
     
+    /**
+     * Export a logo as a single page PDF for print. The logo is scaled to fit
+     * the page and kept as vector drawing, so large formats such as A0 cost
+     * no more memory than small ones.
+     * @param logo Logo captured with {@link LogoCodec#capture(Logo)} on the main
+     *             thread; it is drawn from a copy, so this can run on any thread
+     * @param pageWidthMm Page width in millimeters
+     * @param pageHeightMm Page height in millimeters
+     * @return The path to the exported file
+     */
+    public static String exportLogoPdf(Context context, LogoCodec.CapturedLogo logo, String filename,
+                                       float pageWidthMm, float pageHeightMm) {
+        File file = outputFile(context, filename, ".pdf");
+        try (PdfExporter exporter = new PdfExporter();
+             OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+            exporter.addPage(LogoCodec.decode(logo), pageWidthMm * PdfExporter.POINTS_PER_MM,
+                    pageHeightMm * PdfExporter.POINTS_PER_MM);
+            exporter.writeTo(out);
+            return file.getAbsolutePath();
+        } catch (IOException e) {
+            e.printStackTrace();
+            file.delete();
+            return null;
+        }
+    }
+    
+    /**
+     * Get the file an export is written to, creating the export directory
+     * @param extension Extension including the dot, added unless the name already ends with it
+     */
+    private static File outputFile(Context context, String filename, String extension) {
+        File directory = new File(context.getExternalFilesDir(null), "LogoMaker");
+        if (!directory.exists()) {
+            directory.mkdirs();
+        }
+        
+        if (!filename.endsWith(extension)) {
+            filename += extension;
+        }
+        return new File(directory, filename);
+    }
+    
+    /**
+     * Check the pixel size of a streamed export before its strip height is
+     * derived from the width
+     */
+    private static void checkOutputSize(int outputWidth, int outputHeight) {
+        if (outputWidth <= 0 || outputHeight <= 0) {
+            throw new IllegalArgumentException("Output size must be positive: " + outputWidth + "x" + outputHeight);
+        }
+    }
+    
     /**
      * Load a bitmap from a file path
      */
@@ -0,0 +1,964 @@
+package com.logomaker.app.util;
+
+import com.logomaker.app.model.Logo;
+import com.logomaker.app.model.LogoCodec;
+import com.logomaker.app.model.LogoElement;
+import com.logomaker.app.model.LogoSummary;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps saved logos on disk as snapshots plus an append-only journal.
+ * <p>
+ * Each logo has a snapshot file in the {@link LogoCodec} format. Saves don't
+ * rewrite it; they compare the logo with what was last stored and append
+ * only the changes to the journal: the logo fields and element order, each
+ * added or changed element, and each removed element. Unchanged elements are
+ * recognized by their version stamps without encoding them, and by a CRC of
+ * their encoding otherwise, so a save costs about as much as the elements it
+ * changed.
+ * <p>
+ * A single writer thread appends the records of all saves waiting at that
+ * moment and forces them to disk once, so concurrent saves share one sync.
+ * Once the journal grows past a threshold it is set aside and folded into
+ * the snapshots in the background while a new journal takes the writes.
+ * On opening, records cut short by a crash are dropped from the journal tail.
+ * <p>
+ * Every save also journals a {@link LogoSummary} of the logo, and compaction
+ * writes all summaries to an index file, so listing logos reads the index and
+ * the journal but no snapshots.
+ */
+public class LogoStore implements Closeable {
+
+    private static final String EXTENSION = ".logo";
+    private static final String TEMP_EXTENSION = ".tmp";
+    private static final String JOURNAL_NAME = "journal";
+    private static final String OLD_JOURNAL_NAME = "journal.old";
+    private static final String INDEX_NAME = "index";
+
+    // Journal size at which it is folded into the snapshots
+    private static final long COMPACT_THRESHOLD = 4 * 1024 * 1024;
+
+    // Length and CRC in front of every journal record
+    private static final int RECORD_HEADER_SIZE = 8;
+
+    // Journal record types
+    private static final int OP_HEADER = 1;
+    private static final int OP_ELEMENT = 2;
+    private static final int OP_REMOVE = 3;
+    private static final int OP_DELETE = 4;
+    private static final int OP_SUMMARY = 5;
+
+    // Queued by close() to stop the writer thread
+    private static final Commit STOP = new Commit(null, new ArrayList<>());
+
+    private final File directory;
+
+    // Guards everything below, including which journal is current
+    private final Object lock = new Object();
+    private final Map<String, List<RecordRef>> journalIndex = new HashMap<>();
+    private final Map<String, Baseline> baselines = new HashMap<>();
+    private final Map<String, LogoSummary> summaries = new HashMap<>();
+    private Journal journal;
+    private Journal oldJournal;
+
+    private final LinkedBlockingQueue<Commit> commits = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor();
+
+    /**
+     * Open a store, recovering the journal left by the previous run
+     * @param directory Directory holding the store, created if missing
+     * @throws IOException If the journal can't be opened
+     */
+    public LogoStore(File directory) throws IOException {
+        this.directory = directory;
+        if (!directory.exists()) {
+            directory.mkdirs();
+        }
+
+        // Snapshots being written when the app stopped never replaced anything
+        Set<String> snapshotIds = new HashSet<>();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                if (name.endsWith(TEMP_EXTENSION)) {
+                    file.delete();
+                } else if (name.endsWith(EXTENSION)) {
+                    snapshotIds.add(name.substring(0, name.length() - EXTENSION.length()));
+                }
+            }
+        }
+        readIndex();
+
+        File oldFile = new File(directory, OLD_JOURNAL_NAME);
+        if (oldFile.exists()) {
+            oldJournal = Journal.open(oldFile);
+            recover(oldJournal);
+        }
+        journal = Journal.open(new File(directory, JOURNAL_NAME));
+        recover(journal);
+        reconcileSummaries(snapshotIds);
+        if (oldJournal != null) {
+            compactor.execute(this::compact);
+        }
+
+        writer = new Thread(this::runWriter, "LogoStoreWriter");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Store the changes of a logo since it was last saved or loaded. This
+     * blocks until the changes are on disk, so call it off the main thread.
+     * @param logo Logo to save, which must not be changed during the call
+     * @throws IOException If writing fails; the next save then stores the whole logo
+     */
+    public void save(Logo logo) throws IOException {
+        save(LogoCodec.capture(logo));
+    }
+
+    /**
+     * Store the changes of a captured logo since it was last saved or loaded.
+     * This blocks until the changes are on disk, so call it off the main thread.
+     * @param logo Logo captured by {@link LogoCodec#capture(Logo)}
+     * @throws IOException If writing fails; the next save then stores the whole logo
+     */
+    public void save(LogoCodec.CapturedLogo logo) throws IOException {
+        // Encoding, which compresses images, runs unlocked so other logos aren't held up
+        encodeChanges(logo);
+        Commit commit;
+        synchronized (lock) {
+            commit = new Commit(logo.getId(), diff(logo));
+            if (commit.payloads.isEmpty()) {
+                return;
+            }
+            // Queued while locked, so the journal order matches the order of the diffs
+            commits.add(commit);
+        }
+        commit.await();
+    }
+
+    /**
+     * Read a stored logo
+     * @param id Id of the logo
+     * @return The logo, or null if there is no logo with this id
+     * @throws IOException If the logo can't be read
+     */
+    public Logo load(String id) throws IOException {
+        synchronized (lock) {
+            return materialize(id);
+        }
+    }
+
+    /**
+     * List the stored logos without reading them
+     * @return A summary of every stored logo, in no particular order
+     */
+    public List<LogoSummary> getSummaries() {
+        synchronized (lock) {
+            return new ArrayList<>(summaries.values());
+        }
+    }
+
+    /**
+     * Get the summary of a stored logo
+     * @param id Id of the logo
+     * @return The summary, or null if there is no logo with this id
+     */
+    public LogoSummary getSummary(String id) {
+        synchronized (lock) {
+            return summaries.get(id);
+        }
+    }
+
+    /**
+     * Read every stored logo. Logos that can't be read are skipped.
+     * @return The stored logos, in no particular order
+     */
+    public List<Logo> loadAll() {
+        List<Logo> logos = new ArrayList<>();
+        synchronized (lock) {
+            Set<String> ids = new LinkedHashSet<>();
+            File[] files = directory.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    String name = file.getName();
+                    if (name.endsWith(EXTENSION)) {
+                        ids.add(name.substring(0, name.length() - EXTENSION.length()));
+                    }
+                }
+            }
+            ids.addAll(journalIndex.keySet());
+
+            for (String id : ids) {
+                try {
+                    Logo logo = materialize(id);
+                    if (logo != null) {
+                        logos.add(logo);
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+        return logos;
+    }
+
+    /**
+     * Remove a stored logo. This blocks until the removal is on disk.
+     * @param id Id of the logo
+     * @throws IOException If writing fails
+     */
+    public void delete(String id) throws IOException {
+        Commit commit;
+        synchronized (lock) {
+            baselines.remove(id);
+            summaries.remove(id);
+            LogoCodec.Output out = record(OP_DELETE, id);
+            List<byte[]> payloads = new ArrayList<>();
+            payloads.add(out.toByteArray());
+            commit = new Commit(id, payloads);
+            commits.add(commit);
+        }
+        commit.await();
+    }
+
+    /**
+     * Finish pending saves and compaction and stop the background threads,
+     * so the directory can be opened again right away
+     */
+    @Override
+    public void close() {
+        commits.add(STOP);
+        try {
+            writer.join();
+            compactor.shutdown();
+            compactor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            compactor.shutdown();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Finish encoding every element the baseline doesn't show to be unchanged.
+     * Called without the lock held.
+     */
+    private void encodeChanges(LogoCodec.CapturedLogo logo) {
+        Map<String, ElementBaseline> stored;
+        synchronized (lock) {
+            // Saves replace a baseline's element map instead of changing it, so it can be read unlocked
+            Baseline baseline = baselines.get(logo.getId());
+            stored = baseline != null ? baseline.elements : Collections.emptyMap();
+        }
+
+        for (LogoCodec.CapturedElement element : logo.getElements()) {
+            ElementBaseline previous = stored.get(element.getId());
+            if (previous == null || !previous.matches(element)) {
+                element.getData();
+            }
+        }
+    }
+
+    /**
+     * Compare a logo with its baseline, update the baseline and build the
+     * journal records for the differences. Called with the lock held.
+     */
+    private List<byte[]> diff(LogoCodec.CapturedLogo logo) {
+        String id = logo.getId();
+        List<byte[]> payloads = new ArrayList<>();
+        Baseline baseline = baselines.get(id);
+        boolean known = baseline != null;
+        if (!known) {
+            baseline = new Baseline();
+            baselines.put(id, baseline);
+        }
+
+        List<LogoCodec.CapturedElement> elements = logo.getElements();
+        String[] order = new String[elements.size()];
+        boolean orderChanged = !known || baseline.order.length != order.length;
+        for (int i = 0; i < order.length; i++) {
+            order[i] = elements.get(i).getId();
+            orderChanged |= !orderChanged && !order[i].equals(baseline.order[i]);
+        }
+
+        byte[] header = logo.getHeader();
+        long headerCrc = crc(header);
+        if (orderChanged || headerCrc != baseline.headerCrc) {
+            LogoCodec.Output out = record(OP_HEADER, id);
+            out.writeBytes(header);
+            out.writeVarInt(order.length);
+            for (String elementId : order) {
+                out.writeString(elementId);
+            }
+            payloads.add(out.toByteArray());
+        }
+
+        long byteSize = header.length;
+        Map<String, ElementBaseline> current = new HashMap<>(elements.size() * 2);
+        for (LogoCodec.CapturedElement element : elements) {
+            ElementBaseline stored = baseline.elements.get(element.getId());
+            if (stored != null && stored.matches(element)) {
+                current.put(element.getId(), stored);
+                byteSize += stored.size;
+                continue;
+            }
+
+            // Changed or stamped differently, the encoding decides. It was made
+            // unlocked unless another save of this logo changed the baseline since.
+            byte[] data = element.getData();
+            long elementCrc = crc(data);
+            if (!known || stored == null || stored.crc != elementCrc) {
+                LogoCodec.Output out = record(OP_ELEMENT, id);
+                out.writeBytes(data);
+                payloads.add(out.toByteArray());
+            }
+            current.put(element.getId(), new ElementBaseline(element.getVersion(),
+                    element.getTransformVersion(), element.isLocked(), elementCrc, data.length));
+            byteSize += data.length;
+        }
+
+        for (String elementId : baseline.elements.keySet()) {
+            if (!current.containsKey(elementId)) {
+                LogoCodec.Output out = record(OP_REMOVE, id);
+                out.writeString(elementId);
+                payloads.add(out.toByteArray());
+            }
+        }
+
+        baseline.order = order;
+        baseline.headerCrc = headerCrc;
+        baseline.elements = current;
+
+        if (!payloads.isEmpty()) {
+            LogoSummary summary = LogoCodec.summarize(header, order.length, byteSize);
+            summaries.put(id, summary);
+            LogoCodec.Output out = record(OP_SUMMARY, id);
+            out.writeBytes(LogoCodec.encodeSummary(summary));
+            payloads.add(out.toByteArray());
+        }
+        return payloads;
+    }
+
+    private static LogoCodec.Output record(int op, String logoId) {
+        LogoCodec.Output out = new LogoCodec.Output();
+        out.writeByte(op);
+        out.writeString(logoId);
+        return out;
+    }
+
+    /**
+     * Append waiting commits in batches, one sync per batch
+     */
+    private void runWriter() {
+        List<Commit> batch = new ArrayList<>();
+        while (true) {
+            batch.clear();
+            try {
+                batch.add(commits.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            commits.drainTo(batch);
+
+            boolean stop = batch.remove(STOP);
+            if (!batch.isEmpty()) {
+                writeBatch(batch);
+            }
+            if (stop) {
+                return;
+            }
+        }
+    }
+
+    private void writeBatch(List<Commit> batch) {
+        // Only this thread switches journals, so the current one can be used unlocked
+        Journal target;
+        synchronized (lock) {
+            target = journal;
+        }
+
+        int total = 0;
+        for (Commit commit : batch) {
+            for (byte[] payload : commit.payloads) {
+                total += RECORD_HEADER_SIZE + payload.length;
+            }
+        }
+        ByteBuffer data = ByteBuffer.allocate(total);
+        for (Commit commit : batch) {
+            for (byte[] payload : commit.payloads) {
+                data.putInt(payload.length);
+                data.putInt((int) crc(payload));
+                data.put(payload);
+            }
+        }
+        data.flip();
+
+        IOException failure = null;
+        long start = target.size;
+        try {
+            long position = start;
+            while (data.hasRemaining()) {
+                position += target.channel.write(data, position);
+            }
+            target.channel.force(false);
+        } catch (IOException e) {
+            failure = e;
+        }
+
+        synchronized (lock) {
+            if (failure == null) {
+                long position = start;
+                for (Commit commit : batch) {
+                    for (byte[] payload : commit.payloads) {
+                        addRef(commit.logoId, new RecordRef(target, position + RECORD_HEADER_SIZE, payload.length));
+                        position += RECORD_HEADER_SIZE + payload.length;
+                    }
+                }
+                target.size = position;
+            } else {
+                // The baselines already include these changes; forget them so the next save is complete
+                for (Commit commit : batch) {
+                    baselines.remove(commit.logoId);
+                }
+            }
+        }
+
+        for (Commit commit : batch) {
+            commit.complete(failure);
+        }
+
+        if (failure == null && target.size > COMPACT_THRESHOLD) {
+            rotate();
+        }
+    }
+
+    /**
+     * Set the full journal aside for compaction and start a new one, called on the writer thread
+     */
+    private void rotate() {
+        synchronized (lock) {
+            if (oldJournal != null) {
+                return;
+            }
+            File oldFile = new File(directory, OLD_JOURNAL_NAME);
+            try {
+                Journal next = Journal.open(new File(directory, JOURNAL_NAME + TEMP_EXTENSION));
+                if (!journal.file.renameTo(oldFile)) {
+                    next.close();
+                    return;
+                }
+                journal.file = oldFile;
+                if (!next.file.renameTo(new File(directory, JOURNAL_NAME))) {
+                    throw new IOException("Could not start a new journal");
+                }
+                next.file = new File(directory, JOURNAL_NAME);
+                oldJournal = journal;
+                journal = next;
+            } catch (IOException e) {
+                e.printStackTrace();
+                return;
+            }
+        }
+        compactor.execute(this::compact);
+    }
+
+    /**
+     * Fold the old journal into the snapshots, called on the compactor thread.
+     * Replaying a journal onto a snapshot it was already folded into gives the
+     * same logo again, so a crash at any point here loses nothing.
+     */
+    private void compact() {
+        Journal source;
+        List<String> ids = new ArrayList<>();
+        synchronized (lock) {
+            source = oldJournal;
+            for (Map.Entry<String, List<RecordRef>> entry : journalIndex.entrySet()) {
+                for (RecordRef ref : entry.getValue()) {
+                    if (ref.journal == source) {
+                        ids.add(entry.getKey());
+                        break;
+                    }
+                }
+            }
+        }
+
+        try {
+            for (String id : ids) {
+                List<RecordRef> refs = new ArrayList<>();
+                synchronized (lock) {
+                    for (RecordRef ref : journalIndex.get(id)) {
+                        if (ref.journal == source) {
+                            refs.add(ref);
+                        }
+                    }
+                }
+
+                // Only this thread replaces snapshots, so they can be read unlocked
+                Folded folded = fold(id, refs);
+                File temp = null;
+                if (folded.exists) {
+                    temp = new File(directory, id + TEMP_EXTENSION);
+                    writeFile(temp, LogoCodec.assemble(folded.header, folded.orderedElements()));
+                }
+
+                synchronized (lock) {
+                    File snapshot = getFile(id);
+                    if (temp == null) {
+                        snapshot.delete();
+                    } else if (!temp.renameTo(snapshot)) {
+                        throw new IOException("Could not replace " + snapshot.getName());
+                    }
+                    List<RecordRef> remaining = journalIndex.get(id);
+                    remaining.removeAll(refs);
+                    if (remaining.isEmpty()) {
+                        journalIndex.remove(id);
+                    }
+                }
+            }
+
+            // The index must cover the old journal before it goes away
+            List<LogoSummary> current;
+            synchronized (lock) {
+                current = new ArrayList<>(summaries.values());
+            }
+            writeIndex(current);
+
+            synchronized (lock) {
+                source.close();
+                source.file.delete();
+                oldJournal = null;
+            }
+        } catch (IOException e) {
+            // The old journal stays and is compacted again on the next start
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Read a logo from its snapshot and journal records and make it the
+     * baseline for the next save. Called with the lock held.
+     */
+    private Logo materialize(String id) throws IOException {
+        List<RecordRef> refs = journalIndex.get(id);
+        Folded folded = fold(id, refs != null ? refs : new ArrayList<>());
+        if (!folded.exists) {
+            return null;
+        }
+
+        List<byte[]> encoded = folded.orderedElements();
+        Logo logo = LogoCodec.decode(LogoCodec.assemble(folded.header, encoded));
+
+        Baseline baseline = new Baseline();
+        baseline.headerCrc = crc(folded.header);
+        List<LogoElement> elements = logo.getElements();
+        baseline.order = new String[elements.size()];
+        for (int i = 0; i < elements.size(); i++) {
+            LogoElement element = elements.get(i);
+            baseline.order[i] = element.getId();
+            byte[] data = encoded.get(i);
+            baseline.elements.put(element.getId(), new ElementBaseline(element.getVersion(),
+                    element.getTransformVersion(), element.isLocked(), crc(data), data.length));
+        }
+        baselines.put(id, baseline);
+        return logo;
+    }
+
+    /**
+     * Apply journal records to the snapshot of a logo
+     */
+    private Folded fold(String id, List<RecordRef> refs) throws IOException {
+        Folded folded = new Folded();
+        File snapshot = getFile(id);
+        if (snapshot.exists()) {
+            LogoCodec.Parts parts = LogoCodec.split(map(snapshot));
+            folded.exists = true;
+            folded.header = parts.getHeader();
+            for (byte[] element : parts.getElements()) {
+                String elementId = LogoCodec.getElementId(element);
+                folded.order.add(elementId);
+                folded.elements.put(elementId, element);
+            }
+        }
+
+        for (RecordRef ref : refs) {
+            LogoCodec.Input in = new LogoCodec.Input(ref.read());
+            int op = in.readByte();
+            in.readString();
+            switch (op) {
+                case OP_HEADER: {
+                    folded.exists = true;
+                    folded.header = in.readBytes();
+                    folded.order.clear();
+                    int count = in.readVarInt();
+                    for (int i = 0; i < count; i++) {
+                        folded.order.add(in.readString());
+                    }
+                    break;
+                }
+                case OP_ELEMENT: {
+                    byte[] element = in.readBytes();
+                    folded.elements.put(LogoCodec.getElementId(element), element);
+                    break;
+                }
+                case OP_REMOVE:
+                    folded.elements.remove(in.readString());
+                    break;
+                case OP_DELETE:
+                    folded.exists = false;
+                    folded.header = null;
+                    folded.order.clear();
+                    folded.elements.clear();
+                    break;
+            }
+        }
+        return folded;
+    }
+
+    /**
+     * Index the valid records of a journal and cut off a torn tail. Called
+     * before the writer thread starts.
+     */
+    private void recover(Journal journal) throws IOException {
+        long fileSize = journal.channel.size();
+        long position = 0;
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        while (position + RECORD_HEADER_SIZE <= fileSize) {
+            header.clear();
+            readFully(journal.channel, header, position);
+            header.flip();
+            int length = header.getInt();
+            int crc = header.getInt();
+            if (length <= 0 || position + RECORD_HEADER_SIZE + length > fileSize) {
+                break;
+            }
+
+            RecordRef ref = new RecordRef(journal, position + RECORD_HEADER_SIZE, length);
+            ByteBuffer payload = ref.read();
+            if ((int) crc(payload.array()) != crc) {
+                break;
+            }
+            LogoCodec.Input in = new LogoCodec.Input(payload);
+            int op = in.readByte();
+            String logoId = in.readString();
+            addRef(logoId, ref);
+            if (op == OP_SUMMARY) {
+                try {
+                    summaries.put(logoId, LogoCodec.decodeSummary(in.readBytes()));
+                } catch (IOException e) {
+                    // Summarized from the logo itself once the journals are read
+                    summaries.remove(logoId);
+                }
+            } else if (op == OP_DELETE) {
+                summaries.remove(logoId);
+            }
+            position += RECORD_HEADER_SIZE + length;
+        }
+
+        journal.size = position;
+        if (position < fileSize) {
+            journal.channel.truncate(position);
+            journal.channel.force(false);
+        }
+    }
+
+    /**
+     * Load the summaries written by the last compaction. A missing or damaged
+     * index is left empty and rebuilt by {@link #reconcileSummaries(Set)}.
+     */
+    private void readIndex() {
+        File file = new File(directory, INDEX_NAME);
+        if (!file.exists()) {
+            return;
+        }
+        try {
+            ByteBuffer data = map(file);
+            int crc = data.getInt();
+            byte[] payload = new byte[data.remaining()];
+            data.get(payload);
+            if ((int) crc(payload) != crc) {
+                return;
+            }
+            LogoCodec.Input in = new LogoCodec.Input(ByteBuffer.wrap(payload));
+            int count = in.readVarInt();
+            for (int i = 0; i < count; i++) {
+                LogoSummary summary = LogoCodec.decodeSummary(in.readBytes());
+                summaries.put(summary.getId(), summary);
+            }
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+            summaries.clear();
+        }
+    }
+
+    /**
+     * Drop summaries of logos that are gone and summarize logos the index and
+     * journal didn't cover, such as those stored before summaries existed.
+     * Called before the writer thread starts.
+     */
+    private void reconcileSummaries(Set<String> snapshotIds) {
+        Set<String> ids = new HashSet<>(snapshotIds);
+        ids.addAll(journalIndex.keySet());
+        boolean changed = summaries.keySet().retainAll(ids);
+
+        for (String id : ids) {
+            if (summaries.containsKey(id)) {
+                continue;
+            }
+            try {
+                List<RecordRef> refs = journalIndex.get(id);
+                Folded folded = fold(id, refs != null ? refs : new ArrayList<>());
+                if (!folded.exists) {
+                    continue;
+                }
+                List<byte[]> elements = folded.orderedElements();
+                long byteSize = folded.header.length;
+                for (byte[] element : elements) {
+                    byteSize += element.length;
+                }
+                summaries.put(id, LogoCodec.summarize(folded.header, elements.size(), byteSize));
+                changed = true;
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        if (changed) {
+            try {
+                writeIndex(new ArrayList<>(summaries.values()));
+            } catch (IOException e) {
+                // Rebuilt again on the next start
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Replace the index file. The journals are replayed over it on opening, so
+     * it may hold changes that are also in a journal.
+     */
+    private void writeIndex(List<LogoSummary> current) throws IOException {
+        LogoCodec.Output out = new LogoCodec.Output();
+        out.writeVarInt(current.size());
+        for (LogoSummary summary : current) {
+            out.writeBytes(LogoCodec.encodeSummary(summary));
+        }
+        byte[] payload = out.toByteArray();
+
+        ByteBuffer data = ByteBuffer.allocate(4 + payload.length);
+        data.putInt((int) crc(payload));
+        data.put(payload);
+        data.flip();
+
+        File temp = new File(directory, INDEX_NAME + TEMP_EXTENSION);
+        writeFile(temp, data);
+        if (!temp.renameTo(new File(directory, INDEX_NAME))) {
+            throw new IOException("Could not replace the index");
+        }
+    }
+
+    private void addRef(String logoId, RecordRef ref) {
+        List<RecordRef> refs = journalIndex.get(logoId);
+        if (refs == null) {
+            refs = new ArrayList<>();
+            journalIndex.put(logoId, refs);
+        }
+        refs.add(ref);
+    }
+
+    private File getFile(String id) {
+        return new File(directory, id + EXTENSION);
+    }
+
+    private static MappedByteBuffer map(File file) throws IOException {
+        try (FileInputStream in = new FileInputStream(file)) {
+            FileChannel channel = in.getChannel();
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    private static void writeFile(File file, ByteBuffer data) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            FileChannel channel = out.getChannel();
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+            channel.force(false);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of journal");
+            }
+            position += read;
+        }
+    }
+
+    private static long crc(byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length);
+        return crc.getValue();
+    }
+
+    /**
+     * A journal file and the length of its valid records
+     */
+    private static class Journal {
+        File file;
+        final FileChannel channel;
+        long size;
+
+        private Journal(File file, FileChannel channel) {
+            this.file = file;
+            this.channel = channel;
+        }
+
+        static Journal open(File file) throws IOException {
+            return new Journal(file, new RandomAccessFile(file, "rw").getChannel());
+        }
+
+        void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    /**
+     * Where the payload of one journal record is
+     */
+    private static class RecordRef {
+        final Journal journal;
+        final long position;
+        final int length;
+
+        RecordRef(Journal journal, long position, int length) {
+            this.journal = journal;
+            this.position = position;
+            this.length = length;
+        }
+
+        ByteBuffer read() throws IOException {
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            readFully(journal.channel, payload, position);
+            payload.flip();
+            return payload;
+        }
+    }
+
+    /**
+     * Records of one save, waiting to be written
+     */
+    private static class Commit {
+        final String logoId;
+        final List<byte[]> payloads;
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile IOException failure;
+
+        Commit(String logoId, List<byte[]> payloads) {
+            this.logoId = logoId;
+            this.payloads = payloads;
+        }
+
+        void complete(IOException failure) {
+            this.failure = failure;
+            done.countDown();
+        }
+
+        void await() throws IOException {
+            try {
+                done.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while saving", e);
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    /**
+     * What was last stored for a logo, to find what a save changes
+     */
+    private static class Baseline {
+        long headerCrc;
+        String[] order = new String[0];
+        Map<String, ElementBaseline> elements = new HashMap<>();
+    }
+
+    /**
+     * What was last stored for an element
+     */
+    private static class ElementBaseline {
+        final long version;
+        final long transformVersion;
+        final boolean locked;
+        final long crc;
+        final int size;
+
+        ElementBaseline(long version, long transformVersion, boolean locked, long crc, int size) {
+            this.version = version;
+            this.transformVersion = transformVersion;
+            this.locked = locked;
+            this.crc = crc;
+            this.size = size;
+        }
+
+        /**
+         * Check if an element is unchanged since it was stored. Versions are
+         * unique across elements, so an equal version means the same object.
+         * Locking doesn't change the version, so it is compared separately.
+         */
+        boolean matches(LogoCodec.CapturedElement other) {
+            return other.getVersion() == version && other.getTransformVersion() == transformVersion
+                    && other.isLocked() == locked;
+        }
+    }
+
+    /**
+     * A logo being put together from its snapshot and journal records
+     */
+    private static class Folded {
+        boolean exists;
+        byte[] header;
+        final List<String> order = new ArrayList<>();
+        final Map<String, byte[]> elements = new HashMap<>();
+
+        List<byte[]> orderedElements() {
+            List<byte[]> result = new ArrayList<>(order.size());
+            for (String id : order) {
+                byte[] element = elements.get(id);
+                if (element != null) {
+                    result.add(element);
+                }
+            }
+            return result;
+        }
+    }
+}
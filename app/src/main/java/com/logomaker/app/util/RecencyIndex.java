@@ -0,0 +1,66 @@
+package com.logomaker.app.util;
+
+import com.logomaker.app.model.LogoSummary;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Saved logo summaries ordered newest first, kept up to date one save or
+ * delete at a time so reading the newest few never sorts. Safe on any thread.
+ */
+class RecencyIndex {
+
+    // Newest first; ids break ties so logos saved in the same millisecond are all kept
+    private static final Comparator<LogoSummary> NEWEST_FIRST = (logo1, logo2) -> {
+        int order = Long.compare(logo2.getLastModified(), logo1.getLastModified());
+        return order != 0 ? order : logo1.getId().compareTo(logo2.getId());
+    };
+
+    // Ordered by recency, and the same summaries by id to find their entry; guarded by this
+    private final TreeSet<LogoSummary> ordered = new TreeSet<>(NEWEST_FIRST);
+    private final Map<String, LogoSummary> byId = new HashMap<>();
+
+    /**
+     * Add a summary, replacing the one with the same id
+     */
+    synchronized void put(LogoSummary summary) {
+        LogoSummary previous = byId.put(summary.getId(), summary);
+        if (previous != null) {
+            ordered.remove(previous);
+        }
+        ordered.add(summary);
+    }
+
+    synchronized void remove(String id) {
+        LogoSummary previous = byId.remove(id);
+        if (previous != null) {
+            ordered.remove(previous);
+        }
+    }
+
+    /**
+     * Get the most recently modified logos
+     * @param limit Maximum number of logos to return
+     * @return A new list, newest first
+     */
+    synchronized List<LogoSummary> getNewest(int limit) {
+        List<LogoSummary> newest = new ArrayList<>(Math.min(limit, ordered.size()));
+        // Already newest first, so only the returned logos are visited
+        for (LogoSummary logo : ordered) {
+            if (newest.size() >= limit) {
+                break;
+            }
+            newest.add(logo);
+        }
+        return newest;
+    }
+
+    synchronized int size() {
+        return ordered.size();
+    }
+}
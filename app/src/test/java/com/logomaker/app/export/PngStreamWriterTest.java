@@ -0,0 +1,229 @@
+package com.logomaker.app.export;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.Inflater;
+
+/**
+ * Writes images with {@link PngStreamWriter} and decodes them again with a
+ * minimal PNG reader, checking the file structure and every pixel
+ */
+public class PngStreamWriterTest {
+
+    private static final byte[] SIGNATURE = {(byte) 137, 'P', 'N', 'G', '\r', '\n', 26, '\n'};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void gradientRoundTrips() throws Exception {
+        int width = 37;
+        int height = 23;
+        int[] pixels = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int alpha = 255 - (x * 3 + y) % 256;
+                pixels[y * width + x] = alpha << 24 | (x * 7 % 256) << 16 | (y * 11 % 256) << 8 | ((x ^ y) & 0xff);
+            }
+        }
+        assertArrayEquals(pixels, decode(write(pixels, width, height), width, height));
+    }
+
+    @Test
+    public void noiseSpanningSeveralDataChunksRoundTrips() throws Exception {
+        // Random pixels barely compress, so the data is split over several IDAT chunks
+        int width = 200;
+        int height = 150;
+        int[] pixels = new int[width * height];
+        Random random = new Random(42);
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = random.nextInt();
+        }
+        byte[] png = write(pixels, width, height);
+        assertTrue("Expected several IDAT chunks", countChunks(png, "IDAT") > 1);
+        assertArrayEquals(pixels, decode(png, width, height));
+    }
+
+    @Test
+    public void singleRowRoundTrips() throws Exception {
+        int[] pixels = {0x00000000, 0xffffffff, 0x80ff0000, 0x4000ff00, 0xff0000ff};
+        assertArrayEquals(pixels, decode(write(pixels, pixels.length, 1), pixels.length, 1));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void finishingEarlyFails() throws Exception {
+        File file = folder.newFile();
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw");
+             PngStreamWriter writer = new PngStreamWriter(out.getChannel(), 2, 2)) {
+            writer.writeRow(new int[2], 0);
+            writer.finish();
+        }
+    }
+
+    private byte[] write(int[] pixels, int width, int height) throws Exception {
+        File file = folder.newFile();
+        try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+            FileChannel channel = out.getChannel();
+            try (PngStreamWriter writer = new PngStreamWriter(channel, width, height)) {
+                for (int y = 0; y < height; y++) {
+                    writer.writeRow(pixels, y * width);
+                }
+                writer.finish();
+            }
+        }
+        return Files.readAllBytes(file.toPath());
+    }
+
+    private static int countChunks(byte[] png, String type) {
+        int count = 0;
+        ByteBuffer in = ByteBuffer.wrap(png, SIGNATURE.length, png.length - SIGNATURE.length);
+        while (in.hasRemaining()) {
+            int length = in.getInt();
+            byte[] chunkType = new byte[4];
+            in.get(chunkType);
+            if (new String(chunkType).equals(type)) {
+                count++;
+            }
+            in.position(in.position() + length + 4);
+        }
+        return count;
+    }
+
+    /**
+     * Check the signature, the chunk order and CRCs and the header, then
+     * inflate and unfilter the image data into ARGB colors
+     */
+    private static int[] decode(byte[] png, int width, int height) throws Exception {
+        byte[] signature = new byte[SIGNATURE.length];
+        System.arraycopy(png, 0, signature, 0, signature.length);
+        assertArrayEquals(SIGNATURE, signature);
+
+        ByteBuffer in = ByteBuffer.wrap(png, SIGNATURE.length, png.length - SIGNATURE.length);
+        ByteArrayOutputStream idat = new ByteArrayOutputStream();
+        boolean sawHeader = false;
+        boolean sawEnd = false;
+        while (in.hasRemaining()) {
+            assertTrue("Data after IEND", !sawEnd);
+            int length = in.getInt();
+            byte[] type = new byte[4];
+            in.get(type);
+            byte[] data = new byte[length];
+            in.get(data);
+            int storedCrc = in.getInt();
+
+            CRC32 crc = new CRC32();
+            crc.update(type);
+            crc.update(data);
+            String name = new String(type, "US-ASCII");
+            assertEquals("CRC of " + name, (int) crc.getValue(), storedCrc);
+
+            switch (name) {
+                case "IHDR":
+                    assertTrue("IHDR must come first", !sawHeader && idat.size() == 0);
+                    ByteBuffer header = ByteBuffer.wrap(data);
+                    assertEquals(13, length);
+                    assertEquals(width, header.getInt());
+                    assertEquals(height, header.getInt());
+                    assertEquals(8, header.get());
+                    assertEquals(PngStreamWriter.COLOR_TYPE_RGBA, header.get());
+                    assertEquals(0, header.get());
+                    assertEquals(0, header.get());
+                    assertEquals(0, header.get());
+                    sawHeader = true;
+                    break;
+                case "IDAT":
+                    assertTrue("IDAT before IHDR", sawHeader);
+                    idat.write(data);
+                    break;
+                case "IEND":
+                    assertEquals(0, length);
+                    sawEnd = true;
+                    break;
+                default:
+                    break;
+            }
+        }
+        assertTrue("Missing IEND", sawEnd);
+
+        int rowBytes = width * 4;
+        byte[] raw = new byte[(rowBytes + 1) * height];
+        Inflater inflater = new Inflater();
+        inflater.setInput(idat.toByteArray());
+        int inflated = 0;
+        while (inflated < raw.length && !inflater.finished()) {
+            inflated += inflater.inflate(raw, inflated, raw.length - inflated);
+        }
+        byte[] extra = new byte[1];
+        assertEquals("Inflated size", raw.length, inflated);
+        assertEquals("Bytes after the last row", 0, inflater.inflate(extra));
+        assertTrue("Deflate stream not finished", inflater.finished());
+        inflater.end();
+
+        int[] pixels = new int[width * height];
+        byte[] previous = new byte[rowBytes];
+        byte[] row = new byte[rowBytes];
+        for (int y = 0; y < height; y++) {
+            int start = y * (rowBytes + 1);
+            int filter = raw[start];
+            for (int i = 0; i < rowBytes; i++) {
+                int value = raw[start + 1 + i] & 0xff;
+                int left = i >= 4 ? row[i - 4] & 0xff : 0;
+                int above = previous[i] & 0xff;
+                int aboveLeft = i >= 4 ? previous[i - 4] & 0xff : 0;
+                switch (filter) {
+                    case 0:
+                        break;
+                    case 1:
+                        value += left;
+                        break;
+                    case 2:
+                        value += above;
+                        break;
+                    case 3:
+                        value += (left + above) >> 1;
+                        break;
+                    case 4:
+                        value += paeth(left, above, aboveLeft);
+                        break;
+                    default:
+                        throw new AssertionError("Unknown filter " + filter + " on row " + y);
+                }
+                row[i] = (byte) value;
+            }
+            for (int x = 0; x < width; x++) {
+                int i = x * 4;
+                pixels[y * width + x] = (row[i + 3] & 0xff) << 24 | (row[i] & 0xff) << 16
+                        | (row[i + 1] & 0xff) << 8 | (row[i + 2] & 0xff);
+            }
+            byte[] swap = previous;
+            previous = row;
+            row = swap;
+        }
+        return pixels;
+    }
+
+    private static int paeth(int left, int above, int aboveLeft) {
+        int estimate = left + above - aboveLeft;
+        int distanceLeft = Math.abs(estimate - left);
+        int distanceAbove = Math.abs(estimate - above);
+        int distanceAboveLeft = Math.abs(estimate - aboveLeft);
+        if (distanceLeft <= distanceAbove && distanceLeft <= distanceAboveLeft) {
+            return left;
+        }
+        return distanceAbove <= distanceAboveLeft ? above : aboveLeft;
+    }
+}
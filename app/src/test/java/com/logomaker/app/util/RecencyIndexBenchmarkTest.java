@@ -0,0 +1,102 @@
+package com.logomaker.app.util;
+
+import static org.junit.Assert.assertEquals;
+
+import com.logomaker.app.model.LogoSummary;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Compares reading the newest logos from {@link RecencyIndex} with sorting
+ * the whole list on every read, as getRecentLogos used to, for a library
+ * of 50k logos. Timings are printed; the test fails only on wrong results.
+ */
+public class RecencyIndexBenchmarkTest {
+
+    private static final int LOGO_COUNT = 50000;
+    private static final int LIMIT = 10;
+    private static final int READS = 200;
+    private static final int SAVES = 10000;
+
+    @Test
+    public void newestLogosAtFiftyThousand() {
+        Random random = new Random(42);
+        List<LogoSummary> logos = new ArrayList<>(LOGO_COUNT);
+        for (int i = 0; i < LOGO_COUNT; i++) {
+            logos.add(summary("logo" + i, random.nextInt(LOGO_COUNT)));
+        }
+
+        long start = System.nanoTime();
+        RecencyIndex index = new RecencyIndex();
+        for (LogoSummary logo : logos) {
+            index.put(logo);
+        }
+        long buildNanos = System.nanoTime() - start;
+
+        // Saves move a logo to the front; timestamps grow past every existing one
+        start = System.nanoTime();
+        for (int i = 0; i < SAVES; i++) {
+            int position = random.nextInt(LOGO_COUNT);
+            LogoSummary saved = summary("logo" + position, LOGO_COUNT + i);
+            logos.set(position, saved);
+            index.put(saved);
+        }
+        long saveNanos = System.nanoTime() - start;
+
+        List<LogoSummary> newest = null;
+        start = System.nanoTime();
+        for (int i = 0; i < READS; i++) {
+            newest = index.getNewest(LIMIT);
+        }
+        long indexNanos = System.nanoTime() - start;
+
+        List<LogoSummary> sorted = null;
+        start = System.nanoTime();
+        for (int i = 0; i < READS; i++) {
+            sorted = sortAndTake(logos, LIMIT);
+        }
+        long sortNanos = System.nanoTime() - start;
+
+        assertEquals(LOGO_COUNT, index.size());
+        assertEquals(sorted, newest);
+
+        System.out.println(String.format(Locale.US, "%d logos: build %.1f ms, save %.2f us, newest %d: index %.2f us, sort %.2f us",
+                LOGO_COUNT, buildNanos / 1e6, saveNanos / 1e3 / SAVES,
+                LIMIT, indexNanos / 1e3 / READS, sortNanos / 1e3 / READS));
+    }
+
+    @Test
+    public void removedLogosAreNotReturned() {
+        RecencyIndex index = new RecencyIndex();
+        index.put(summary("a", 1));
+        index.put(summary("b", 3));
+        index.put(summary("c", 2));
+        index.remove("b");
+        index.put(summary("a", 4));
+
+        List<LogoSummary> newest = index.getNewest(LIMIT);
+        assertEquals(2, newest.size());
+        assertEquals("a", newest.get(0).getId());
+        assertEquals("c", newest.get(1).getId());
+    }
+
+    /**
+     * What getRecentLogos did before the index: sort a copy of every logo
+     */
+    private static List<LogoSummary> sortAndTake(List<LogoSummary> logos, int limit) {
+        List<LogoSummary> copy = new ArrayList<>(logos);
+        copy.sort(Comparator.comparingLong(LogoSummary::getLastModified).reversed()
+                .thenComparing(LogoSummary::getId));
+        return new ArrayList<>(copy.subList(0, Math.min(limit, copy.size())));
+    }
+
+    private static LogoSummary summary(String id, long lastModified) {
+        return new LogoSummary(id, id, lastModified, null, 0, 0);
+    }
+}